@@ -0,0 +1,80 @@
+package com.company.mendix.n8n;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * End-to-end benchmarks of webhook calls against an in-process stub server
+ * 
+ * Measures the full client path (request building, connection reuse, response
+ * handling and extraction) with request and response bodies of payloadSize bytes.
+ * executeBatch runs concurrency calls at once to show how throughput and latency
+ * scale under parallel load.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class N8nActionBenchmark {
+    
+    private static final String API_KEY = "benchmark-key";
+    private static final String SESSION_ID = "benchmark-session";
+    
+    @State(Scope.Benchmark)
+    public static class Webhook {
+        
+        @Param({"100", "10240", "1048576", "52428800"})
+        public int payloadSize;
+        
+        N8nStubWebhookServer server;
+        String url;
+        String payload;
+        
+        @Setup(Level.Trial)
+        public void start() throws Exception {
+            server = new N8nStubWebhookServer(payloadSize);
+            url = server.getUrl();
+            payload = N8nBenchmarkData.jsonRequest(payloadSize);
+        }
+        
+        @TearDown(Level.Trial)
+        public void stop() {
+            server.close();
+        }
+    }
+    
+    @State(Scope.Benchmark)
+    public static class Load {
+        
+        @Param({"1", "8", "32"})
+        public int concurrency;
+    }
+    
+    @Benchmark
+    public String executeAction(Webhook webhook) throws Exception {
+        return new N8nAction(API_KEY, webhook.url, webhook.payload, SESSION_ID).executeAction();
+    }
+    
+    @Benchmark
+    public String executeActionAsync(Webhook webhook) throws Exception {
+        return new N8nAction(API_KEY, webhook.url, webhook.payload, SESSION_ID).executeActionAsync().get();
+    }
+    
+    @Benchmark
+    public List<N8nBatchResult> executeBatch(Webhook webhook, Load load) {
+        List<N8nBatchItem> items = new ArrayList<>(load.concurrency);
+        for (int i = 0; i < load.concurrency; i++) {
+            items.add(new N8nBatchItem(webhook.payload, SESSION_ID + "-" + i));
+        }
+        return N8nAction.executeBatch(API_KEY, webhook.url, items, load.concurrency);
+    }
+}
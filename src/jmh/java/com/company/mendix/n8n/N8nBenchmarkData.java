@@ -0,0 +1,44 @@
+package com.company.mendix.n8n;
+
+/**
+ * Deterministic payloads for the benchmarks
+ */
+final class N8nBenchmarkData {
+    
+    private static final String SENTENCE = "The quick brown fox said \"hello\" to the lazy dog.\n";
+    
+    private N8nBenchmarkData() {
+    }
+    
+    /**
+     * @return Plain text of exactly size characters, with quotes and line breaks to escape
+     */
+    static String plainText(int size) {
+        StringBuilder sb = new StringBuilder(size + SENTENCE.length());
+        while (sb.length() < size) {
+            sb.append(SENTENCE);
+        }
+        sb.setLength(size);
+        return sb.toString();
+    }
+    
+    /**
+     * @return A JSON request object of about size characters
+     */
+    static String jsonRequest(int size) {
+        return "{\"action\": \"process\", \"text\": \"" + escape(plainText(size)) + "\"}";
+    }
+    
+    /**
+     * @return An n8n-style response of about size characters whose "result" value comes
+     *         after some metadata, so the scanner has to skip other strings first
+     */
+    static String resultResponse(int size) {
+        return "{\"status\": \"ok\", \"meta\": {\"workflow\": \"benchmark\", \"executionId\": \"12345\"}, "
+            + "\"result\": \"" + escape(plainText(size)) + "\"}";
+    }
+    
+    private static String escape(String text) {
+        return text.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
@@ -0,0 +1,194 @@
+package com.company.mendix.n8n;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.SocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.eclipse.jetty.alpn.server.ALPNServerConnectionFactory;
+import org.eclipse.jetty.http2.HTTP2Cipher;
+import org.eclipse.jetty.http2.server.HTTP2CServerConnectionFactory;
+import org.eclipse.jetty.http2.server.HTTP2ServerConnectionFactory;
+import org.eclipse.jetty.io.Connection;
+import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.server.HttpConnectionFactory;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.SecureRequestCustomizer;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.SslConnectionFactory;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.eclipse.jetty.util.ssl.SslContextFactory;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+
+/**
+ * In-process webhook stand-in that speaks both HTTP/1.1 and HTTP/2, used by
+ * N8nProtocolBenchmark
+ * 
+ * Serves /webhook/benchmark like N8nStubWebhookServer on two connectors: plain
+ * text (HTTP/1.1 with h2c upgrade) and TLS (HTTP/2 or HTTP/1.1 negotiated with
+ * ALPN, using a throw-away self-signed certificate). Open client connections are
+ * tracked, so the benchmark can report connections next to throughput.
+ */
+final class N8nHttp2StubServer implements AutoCloseable {
+    
+    private static final String KEYSTORE_PASSWORD = "benchmark";
+    
+    private final Server server;
+    private final ServerConnector plainConnector;
+    private final ServerConnector tlsConnector;
+    private final Path keyStore;
+    private final byte[] response;
+    private final Map<SocketAddress, Integer> clientConnections = new ConcurrentHashMap<>();
+    
+    /**
+     * @param responseSize Approximate size of the response body in bytes
+     */
+    N8nHttp2StubServer(int responseSize) throws Exception {
+        this.response = N8nBenchmarkData.resultResponse(responseSize).getBytes(StandardCharsets.UTF_8);
+        this.keyStore = createKeyStore();
+        
+        QueuedThreadPool threads = new QueuedThreadPool(200);
+        threads.setDaemon(true);
+        threads.setName("n8n-h2-stub");
+        this.server = new Server(threads);
+        
+        HttpConfiguration http = new HttpConfiguration();
+        this.plainConnector = new ServerConnector(server,
+            new HttpConnectionFactory(http), new HTTP2CServerConnectionFactory(http));
+        
+        HttpConfiguration https = new HttpConfiguration(http);
+        https.addCustomizer(new SecureRequestCustomizer());
+        SslContextFactory.Server ssl = new SslContextFactory.Server();
+        ssl.setKeyStorePath(keyStore.toString());
+        ssl.setKeyStorePassword(KEYSTORE_PASSWORD);
+        ssl.setKeyStoreType("PKCS12");
+        ssl.setCipherComparator(HTTP2Cipher.COMPARATOR);
+        ALPNServerConnectionFactory alpn = new ALPNServerConnectionFactory();
+        alpn.setDefaultProtocol("http/1.1");
+        this.tlsConnector = new ServerConnector(server,
+            new SslConnectionFactory(ssl, alpn.getProtocol()), alpn,
+            new HTTP2ServerConnectionFactory(https), new HttpConnectionFactory(https));
+        
+        for (ServerConnector connector : new ServerConnector[] {plainConnector, tlsConnector}) {
+            connector.setHost("127.0.0.1");
+            connector.setPort(0);
+            connector.addBean(new ConnectionCounter());
+            server.addConnector(connector);
+        }
+        server.setHandler(new WebhookHandler());
+        server.start();
+    }
+    
+    /**
+     * @param tls Whether to use the TLS connector
+     * @return The webhook URL of the stub server
+     */
+    String getUrl(boolean tls) {
+        return tls
+            ? "https://localhost:" + tlsConnector.getLocalPort() + N8nStubWebhookServer.PATH
+            : "http://127.0.0.1:" + plainConnector.getLocalPort() + N8nStubWebhookServer.PATH;
+    }
+    
+    /**
+     * @return The trust store (PKCS12) holding the self-signed server certificate
+     */
+    Path getTrustStore() {
+        return keyStore;
+    }
+    
+    static String getTrustStorePassword() {
+        return KEYSTORE_PASSWORD;
+    }
+    
+    /**
+     * @return Number of TCP connections clients currently hold open
+     */
+    int getOpenConnectionCount() {
+        return clientConnections.size();
+    }
+    
+    @Override
+    public void close() {
+        try {
+            server.stop();
+            Files.deleteIfExists(keyStore);
+        } catch (Exception e) {
+            // Nothing to clean up beyond this point
+        }
+    }
+    
+    /**
+     * Generate a self-signed certificate for localhost with the JDK keytool
+     */
+    private static Path createKeyStore() throws IOException, InterruptedException {
+        Path file = Files.createTempFile("n8n-benchmark-", ".p12");
+        Files.delete(file);
+        Path keytool = Paths.get(System.getProperty("java.home"), "bin", "keytool");
+        Process process = new ProcessBuilder(keytool.toString(), "-genkeypair",
+                "-alias", "n8n-benchmark", "-keyalg", "RSA", "-keysize", "2048", "-validity", "2",
+                "-dname", "CN=localhost", "-ext", "SAN=dns:localhost,ip:127.0.0.1",
+                "-storetype", "PKCS12", "-keystore", file.toString(),
+                "-storepass", KEYSTORE_PASSWORD, "-keypass", KEYSTORE_PASSWORD)
+            .redirectErrorStream(true)
+            .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+            .start();
+        if (!process.waitFor(60, TimeUnit.SECONDS) || process.exitValue() != 0) {
+            throw new IOException("keytool could not create the benchmark certificate");
+        }
+        return file;
+    }
+    
+    /**
+     * Tracks connections by client address: an h2c upgrade or a TLS handshake opens
+     * another connection object on the same socket, which is not a new connection
+     */
+    private final class ConnectionCounter implements Connection.Listener {
+        @Override
+        public void onOpened(Connection connection) {
+            SocketAddress remote = connection.getEndPoint().getRemoteSocketAddress();
+            if (remote != null) {
+                clientConnections.merge(remote, 1, Integer::sum);
+            }
+        }
+        
+        @Override
+        public void onClosed(Connection connection) {
+            SocketAddress remote = connection.getEndPoint().getRemoteSocketAddress();
+            if (remote != null) {
+                clientConnections.computeIfPresent(remote, (address, count) -> count > 1 ? count - 1 : null);
+            }
+        }
+    }
+    
+    private final class WebhookHandler extends AbstractHandler {
+        @Override
+        public void handle(String target, Request baseRequest, HttpServletRequest request,
+                HttpServletResponse servletResponse) throws IOException {
+            if (!N8nStubWebhookServer.PATH.equals(target)) {
+                return;
+            }
+            try (InputStream in = request.getInputStream()) {
+                byte[] buffer = new byte[8192];
+                while (in.read(buffer) != -1) {
+                    // Discard the request body
+                }
+            }
+            servletResponse.setStatus(200);
+            servletResponse.setContentType("application/json");
+            servletResponse.setContentLength(response.length);
+            try (OutputStream out = servletResponse.getOutputStream()) {
+                out.write(response);
+            }
+            baseRequest.setHandled(true);
+        }
+    }
+}
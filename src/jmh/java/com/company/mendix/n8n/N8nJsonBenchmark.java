@@ -0,0 +1,68 @@
+package com.company.mendix.n8n;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks of the request and response JSON handling
+ * 
+ * Run with the gc profiler (enabled in build.gradle) to see the allocation rate
+ * next to the time per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class N8nJsonBenchmark {
+    
+    private static final String[] RESPONSE_FIELDS = {"result", "data", "message", "response"};
+    
+    @Param({"100", "10240", "1048576", "52428800"})
+    public int payloadSize;
+    
+    private String plainText;
+    private String jsonRequest;
+    private String response;
+    private int valueStart;
+    private int valueEnd;
+    
+    @Setup
+    public void setUp() {
+        plainText = N8nBenchmarkData.plainText(payloadSize);
+        jsonRequest = N8nBenchmarkData.jsonRequest(payloadSize);
+        response = N8nBenchmarkData.resultResponse(payloadSize);
+        valueStart = response.indexOf("\"result\": \"") + "\"result\": \"".length();
+        valueEnd = N8nJsonScanner.findStringEnd(response, valueStart);
+    }
+    
+    @Benchmark
+    public String ensureJsonFormatPlainText() {
+        return N8nAction.ensureJsonFormat(plainText);
+    }
+    
+    @Benchmark
+    public String ensureJsonFormatJson() {
+        return N8nAction.ensureJsonFormat(jsonRequest);
+    }
+    
+    @Benchmark
+    public String findResponseValue() {
+        return N8nJsonScanner.findFirstStringValue(response, RESPONSE_FIELDS);
+    }
+    
+    @Benchmark
+    public int findStringEnd() {
+        return N8nJsonScanner.findStringEnd(response, valueStart);
+    }
+    
+    @Benchmark
+    public String unescape() {
+        return N8nJsonScanner.unescape(response, valueStart, valueEnd);
+    }
+}
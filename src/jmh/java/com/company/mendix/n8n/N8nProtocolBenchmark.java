@@ -0,0 +1,94 @@
+package com.company.mendix.n8n;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Compares HTTP/1.1 and HTTP/2 (N8nProtocolMode) against an in-process server
+ * 
+ * Runs batches of concurrency calls over plain text (h2c upgrade) and TLS (ALPN)
+ * and reports batch throughput together with the number of TCP connections open
+ * after each batch ("connections" counter): HTTP/1.1 keeps a connection per
+ * concurrent call, HTTP/2 multiplexes them over one.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class N8nProtocolBenchmark {
+    
+    private static final String API_KEY = "benchmark-key";
+    private static final String SESSION_ID = "benchmark-session";
+    
+    @State(Scope.Benchmark)
+    public static class Webhook {
+        
+        @Param({"HTTP_1_1", "HTTP_2"})
+        public N8nProtocolMode protocol;
+        
+        @Param({"false", "true"})
+        public boolean tls;
+        
+        @Param({"1", "16", "64"})
+        public int concurrency;
+        
+        @Param({"1024"})
+        public int payloadSize;
+        
+        N8nHttp2StubServer server;
+        String url;
+        List<N8nBatchItem> items;
+        
+        @Setup(Level.Trial)
+        public void start() throws Exception {
+            server = new N8nHttp2StubServer(payloadSize);
+            // Trust the self-signed certificate; set before the first TLS client is created
+            System.setProperty("javax.net.ssl.trustStore", server.getTrustStore().toString());
+            System.setProperty("javax.net.ssl.trustStorePassword", N8nHttp2StubServer.getTrustStorePassword());
+            System.setProperty("javax.net.ssl.trustStoreType", "PKCS12");
+            url = server.getUrl(tls);
+            N8nHttpClientPool.clear();
+            N8nHttpClientPool.setProtocolMode(url, protocol);
+            
+            String payload = N8nBenchmarkData.jsonRequest(payloadSize);
+            items = new ArrayList<>(concurrency);
+            for (int i = 0; i < concurrency; i++) {
+                items.add(new N8nBatchItem(payload, SESSION_ID + "-" + i));
+            }
+        }
+        
+        @TearDown(Level.Trial)
+        public void stop() {
+            N8nHttpClientPool.setProtocolMode(url, null);
+            N8nHttpClientPool.clear();
+            server.close();
+        }
+    }
+    
+    /**
+     * Reports the open TCP connections as a secondary result
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Connections {
+        
+        public int connections;
+    }
+    
+    @Benchmark
+    public List<N8nBatchResult> executeBatch(Webhook webhook, Connections connections) {
+        List<N8nBatchResult> results = N8nAction.executeBatch(API_KEY, webhook.url, webhook.items, webhook.concurrency);
+        connections.connections = webhook.server.getOpenConnectionCount();
+        return results;
+    }
+}
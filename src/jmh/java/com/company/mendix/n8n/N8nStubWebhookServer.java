@@ -0,0 +1,67 @@
+package com.company.mendix.n8n;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * In-process stand-in for an n8n webhook, used by the benchmarks
+ * 
+ * Accepts POST requests on /webhook/benchmark, discards the request body and
+ * answers with a precomputed {"result": "..."} response of the configured size,
+ * so the benchmarks measure the client and not the server.
+ */
+final class N8nStubWebhookServer implements AutoCloseable {
+    
+    static final String PATH = "/webhook/benchmark";
+    
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final byte[] response;
+    
+    /**
+     * @param responseSize Approximate size of the response body in bytes
+     */
+    N8nStubWebhookServer(int responseSize) throws IOException {
+        this.response = N8nBenchmarkData.resultResponse(responseSize).getBytes(StandardCharsets.UTF_8);
+        this.executor = Executors.newFixedThreadPool(64, N8nExecutors.daemonThreadFactory("n8n-stub-"));
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 256);
+        server.createContext(PATH, this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+    
+    /**
+     * @return The webhook URL of the stub server
+     */
+    String getUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + PATH;
+    }
+    
+    private void handle(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] buffer = new byte[8192];
+            while (in.read(buffer) != -1) {
+                // Discard the request body
+            }
+        }
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, response.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(response);
+        }
+    }
+    
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
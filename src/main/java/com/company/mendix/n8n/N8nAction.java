@@ -1,10 +1,35 @@
 package com.company.mendix.n8n;
 
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 /**
  * Mendix Java Action for n8n Webhook integration
@@ -17,136 +42,1314 @@ import java.time.Duration;
  * - API key authentication (optional)
  * - Session ID support for n8n Simple Memory (required)
  * - Input/output parameter handling
- * - Error handling and logging
+ * - Error handling and level-controlled logging (see N8nLog)
+ * - Shared HTTP clients with keep-alive connection reuse (see N8nHttpClientPool)
+ * - Optional HTTP/2 (ALPN or h2c) with HTTP/1.1 fallback (see N8nProtocolMode)
+ * - Optional gzip request bodies and transparently inflated responses (see N8nCompression)
+ * - Load balancing over several n8n instances with passive health checks (see N8nEndpointGroup)
+ * - Non-blocking executeAsync(...) variants returning CompletableFuture
+ * - Batch execution of many inputs against one endpoint with bounded concurrency
+ * - Optional virtual-thread execution of async/batch calls on Java 21+ runtimes
+ * - Streaming of large responses to an OutputStream or file with constant memory
+ * - Incremental server-sent event and NDJSON responses with backpressure (see N8nStreamEvent)
+ * - Streaming request bodies from files and input streams
+ * - Per-endpoint metrics: latency, time-to-first-byte, bytes, status codes (see N8nMetrics)
+ * - Automatic retries of transient failures with backoff and jitter (see N8nRetryPolicy)
+ * - Per-endpoint circuit breaker that fails fast while n8n is down (see N8nCircuitBreaker)
+ * - Optional per-endpoint rate limits and concurrency bulkheads (see N8nEndpointLimits)
+ * - Opt-in response cache for idempotent lookup workflows (see N8nResponseCache)
+ * - Opt-in coalescing of identical concurrent calls into one n8n execution (see N8nRequestCoalescer)
+ * - Opt-in hedged requests to idempotent endpoints to cut tail latency (see N8nHedgingPolicy)
+ * - Opt-in micro-batching of small calls into one JSON array request (see N8nMicroBatchPolicy)
+ * - Submit/await jobs for long-running workflows, polled with adaptive backoff (see N8nJob)
+ * - Durable fire-and-forget calls through a disk-backed outbox (see N8nOutbox)
  * 
  * Note: This version uses only built-in Java libraries for maximum compatibility
  * Note: Session ID is mandatory for all operations to support n8n Simple Memory
  */
 public class N8nAction {
     
+    // Connection timeout: 60 seconds; also used by health probes, so they share the pooled clients
+    static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(60);
+    
+    // Cancelling a sendAsync future aborts the exchange only from Java 16 on; before, it keeps running
+    private static final boolean CANCEL_ABORTS_EXCHANGE = Runtime.version().feature() >= 16;
+    
+    // Response fields checked for the result value, in priority order
+    private static final String[] RESPONSE_FIELDS = {"result", "data", "message", "response"};
+    
+    // Accept header of calls whose response is consumed as events
+    private static final String EVENTS_ACCEPT = "text/event-stream, application/x-ndjson, application/json";
+    
     // Input parameters
     private final String apiKey;
     private final String webhookEndpoint;
-    private final String inputData;
+    private final N8nRequestBody requestBody;
     private final String sessionId;
     private final String contentType;
     private final int timeoutMinutes;
     
+    // Set for job submissions and status polls (see N8nJob)
+    private Map<String, String> extraHeaders = Collections.emptyMap();
+    private boolean rawResponse;
+    
+    /**
+     * Constructor for n8n Action with custom timeout and session ID
+     * 
+     * @param apiKey The n8n API key for authentication (optional, can be null)
+     * @param webhookEndpoint The complete n8n webhook URL
+     * @param inputData The data to send to n8n webhook
+     * @param sessionId The session ID for n8n Simple Memory (required)
+     * @param contentType The content type (default: "application/json")
+     * @param timeoutMinutes Timeout in minutes for API response (default: 10)
+     */
+    public N8nAction(String apiKey, String webhookEndpoint, String inputData, 
+                     String sessionId, String contentType, int timeoutMinutes) {
+        this(apiKey, webhookEndpoint, N8nRequestBody.ofText(inputData), sessionId, 
+             contentType, timeoutMinutes);
+    }
+    
+    /**
+     * Constructor for n8n Action that streams the request body from a file
+     * 
+     * @param apiKey The n8n API key for authentication (optional, can be null)
+     * @param webhookEndpoint The complete n8n webhook URL
+     * @param inputFile The file whose content is sent to n8n webhook
+     * @param sessionId The session ID for n8n Simple Memory (required)
+     * @param contentType The content type (default: "application/json")
+     * @param timeoutMinutes Timeout in minutes for API response (default: 10)
+     * @param wrapAsJson True to wrap plain text content as {"message": "..."} while streaming
+     */
+    public N8nAction(String apiKey, String webhookEndpoint, Path inputFile, String sessionId, 
+                     String contentType, int timeoutMinutes, boolean wrapAsJson) {
+        this(apiKey, webhookEndpoint, N8nRequestBody.ofFile(inputFile, wrapAsJson), sessionId, 
+             contentType, timeoutMinutes);
+    }
+    
+    /**
+     * Constructor for n8n Action that streams the request body from an input stream
+     * 
+     * The stream is read once, when the request is sent, and closed afterwards.
+     * 
+     * @param apiKey The n8n API key for authentication (optional, can be null)
+     * @param webhookEndpoint The complete n8n webhook URL
+     * @param inputStream The content to send to n8n webhook
+     * @param sessionId The session ID for n8n Simple Memory (required)
+     * @param contentType The content type (default: "application/json")
+     * @param timeoutMinutes Timeout in minutes for API response (default: 10)
+     * @param wrapAsJson True to wrap plain text content as {"message": "..."} while streaming
+     */
+    public N8nAction(String apiKey, String webhookEndpoint, InputStream inputStream, String sessionId, 
+                     String contentType, int timeoutMinutes, boolean wrapAsJson) {
+        this(apiKey, webhookEndpoint, N8nRequestBody.ofStream(inputStream, wrapAsJson), sessionId, 
+             contentType, timeoutMinutes);
+    }
+    
+    private N8nAction(String apiKey, String webhookEndpoint, N8nRequestBody requestBody, 
+                      String sessionId, String contentType, int timeoutMinutes) {
+        this.apiKey = apiKey;
+        this.webhookEndpoint = webhookEndpoint;
+        this.requestBody = requestBody;
+        this.sessionId = sessionId;
+        this.contentType = contentType != null ? contentType : "application/json";
+        this.timeoutMinutes = timeoutMinutes > 0 ? timeoutMinutes : 10;
+    }
+    
+    /**
+     * Constructor for n8n Action with session ID
+     * 
+     * @param apiKey The n8n API key for authentication (optional, can be null)
+     * @param webhookEndpoint The complete n8n webhook URL
+     * @param inputData The data to send to n8n webhook
+     * @param sessionId The session ID for n8n Simple Memory (required)
+     * @param contentType The content type (default: "application/json")
+     */
+    public N8nAction(String apiKey, String webhookEndpoint, String inputData, 
+                     String sessionId, String contentType) {
+        this(apiKey, webhookEndpoint, inputData, sessionId, contentType, 10);
+    }
+    
+    /**
+     * Simplified constructor with default content type
+     * 
+     * @param apiKey The n8n API key for authentication (optional, can be null)
+     * @param webhookEndpoint The complete n8n webhook URL
+     * @param inputData The data to send to n8n webhook
+     * @param sessionId The session ID for n8n Simple Memory (required)
+     */
+    public N8nAction(String apiKey, String webhookEndpoint, String inputData, String sessionId) {
+        this(apiKey, webhookEndpoint, inputData, sessionId, "application/json", 10);
+    }
+    
+    /**
+     * Add a request header, e.g. the job ID of a job submission or status poll
+     * 
+     * @return This action
+     */
+    N8nAction withHeader(String name, String value) {
+        if (extraHeaders.isEmpty()) {
+            extraHeaders = new LinkedHashMap<>();
+        }
+        extraHeaders.put(name, value);
+        return this;
+    }
+    
+    /**
+     * Return successful response bodies as received instead of extracting the result field
+     * 
+     * @return This action
+     */
+    N8nAction withRawResponse() {
+        rawResponse = true;
+        return this;
+    }
+    
+    /**
+     * Execute the n8n webhook call
+     * 
+     * @return The response from n8n webhook
+     * @throws Exception If the API call fails
+     */
+    public String executeAction() throws Exception {
+        String cacheKey = responseCacheKey();
+        if (cacheKey != null) {
+            String cached = N8nResponseCache.lookup(webhookEndpoint, cacheKey, () -> revalidate(cacheKey));
+            if (cached != null) {
+                N8nLog.debug(() -> "Returning cached n8n response for endpoint: " + webhookEndpoint);
+                return cached;
+            }
+        }
+        
+        String coalescingKey = coalescingKey();
+        String result = coalescingKey != null 
+            ? N8nRequestCoalescer.execute(webhookEndpoint, coalescingKey, this::executeBatched) 
+            : executeBatched();
+        if (cacheKey != null) {
+            N8nResponseCache.store(webhookEndpoint, cacheKey, result);
+        }
+        return result;
+    }
+    
+    /**
+     * Execute the webhook call as part of a micro-batch if the endpoint has a batch
+     * policy, or on its own otherwise
+     */
+    private String executeBatched() throws Exception {
+        if (microBatchPolicy() == null) {
+            return executeUncached();
+        }
+        try {
+            return executeBatchedAsync().get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : new Exception(cause);
+        }
+    }
+    
+    /**
+     * Execute the webhook call, bypassing the response cache and coalescing
+     */
+    String executeUncached() throws Exception {
+        N8nLog.debug(() -> "Executing n8n webhook call to endpoint: " + webhookEndpoint 
+                     + ", input data: " + requestBody.describe());
+        
+        // Validate inputs
+        validateInputs();
+        
+        if (hedgingPolicy() != null) {
+            return executeHedged();
+        }
+        
+        try {
+            // Reuse the shared client (and its keep-alive connections) for this endpoint
+            Target target = new Target();
+            
+            N8nLog.debug(() -> "API request sent, waiting for n8n response (timeout: " + timeoutMinutes + " minutes)...");
+            
+            // Execute request, retrying transient failures
+            N8nRetryPolicy retryPolicy = retryPolicy();
+            long firstAttemptNanos = System.nanoTime();
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    return handleResponse(send(target.pooledClient.awaitReady(), target.request, target.endpoint));
+                } catch (Exception e) {
+                    long delayMillis = retryPolicy.retryDelayMillis(attempt, e, firstAttemptNanos);
+                    if (delayMillis < 0) {
+                        throw e;
+                    }
+                    retryLater(target.endpoint, attempt, retryPolicy, delayMillis, e);
+                    Thread.sleep(delayMillis);
+                    target = target.next();
+                }
+            }
+            
+        } catch (Exception e) {
+            throw requestFailure(e);
+        }
+    }
+    
+    /**
+     * Execute a hedged webhook call and wait for it
+     * 
+     * Racing the requests of a hedged call needs their futures, so it always takes
+     * the asynchronous path.
+     */
+    private String executeHedged() throws Exception {
+        try {
+            return executeUncachedAsync().get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : new Exception(cause);
+        }
+    }
+    
+    /**
+     * Execute the n8n webhook call without blocking the calling thread
+     * 
+     * The request is sent with HttpClient.sendAsync and the response is processed on
+     * the shared bounded executor (see N8nExecutors). When virtual threads are enabled
+     * on a Java 21+ runtime, the blocking call runs on its own virtual thread instead.
+     * 
+     * @return A future completed with the response from n8n webhook, or completed
+     *         exceptionally if the API call fails
+     */
+    public CompletableFuture<String> executeActionAsync() {
+        String cacheKey = responseCacheKey();
+        if (cacheKey == null) {
+            return executeCoalescedAsync();
+        }
+        String cached = N8nResponseCache.lookup(webhookEndpoint, cacheKey, () -> revalidate(cacheKey));
+        if (cached != null) {
+            N8nLog.debug(() -> "Returning cached n8n response for endpoint: " + webhookEndpoint);
+            return CompletableFuture.completedFuture(cached);
+        }
+        return executeCoalescedAsync().thenApply(result -> {
+            N8nResponseCache.store(webhookEndpoint, cacheKey, result);
+            return result;
+        });
+    }
+    
+    /**
+     * Execute the webhook call asynchronously, joining an identical call in flight
+     * if coalescing is enabled for the endpoint
+     */
+    private CompletableFuture<String> executeCoalescedAsync() {
+        String coalescingKey = coalescingKey();
+        if (coalescingKey == null) {
+            return executeBatchedAsync();
+        }
+        return N8nRequestCoalescer.executeAsync(webhookEndpoint, coalescingKey, this::executeBatchedAsync);
+    }
+    
+    /**
+     * Execute the webhook call asynchronously as part of a micro-batch if the endpoint
+     * has a batch policy, or on its own otherwise
+     */
+    private CompletableFuture<String> executeBatchedAsync() {
+        N8nMicroBatchPolicy batchPolicy = microBatchPolicy();
+        if (batchPolicy == null) {
+            return executeUncachedAsync();
+        }
+        try {
+            // An invalid call must not fail the batch it would join
+            validateInputs();
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return batchPolicy.add(apiKey, webhookEndpoint, sessionId, contentType, timeoutMinutes, requestBody.getText())
+            .thenApply(element -> rawResponse ? element : processSuccessResponse(element));
+    }
+    
+    /**
+     * Compute the request coalescing key of this call
+     * 
+     * @return The key, or null if the call is not coalesced (coalescing disabled for
+     *         the endpoint, extra headers, or a streamed request body)
+     */
+    private String coalescingKey() {
+        if (requestBody.isStreamed() || !extraHeaders.isEmpty()) {
+            return null;
+        }
+        return N8nRequestCoalescer.keyFor(webhookEndpoint, apiKey, contentType, requestBody.getText(), sessionId);
+    }
+    
+    /**
+     * Compute the response cache key of this call
+     * 
+     * @return The key, or null if the call is not cached (caching disabled for the
+     *         endpoint, or a streamed request body)
+     */
+    private String responseCacheKey() {
+        if (requestBody.isStreamed()) {
+            return null;
+        }
+        return N8nResponseCache.keyFor(webhookEndpoint, apiKey, contentType, requestBody.getText(), sessionId);
+    }
+    
+    /**
+     * Refresh a stale cache entry in the background
+     */
+    private void revalidate(String cacheKey) {
+        executeUncachedAsync().whenComplete((result, error) -> {
+            if (error != null) {
+                N8nResponseCache.revalidationFailed(cacheKey);
+            } else {
+                N8nResponseCache.store(webhookEndpoint, cacheKey, result);
+            }
+        });
+    }
+    
+    /**
+     * Execute the webhook call asynchronously, bypassing the response cache and coalescing
+     */
+    CompletableFuture<String> executeUncachedAsync() {
+        N8nHedgingPolicy hedgingPolicy = hedgingPolicy();
+        Executor virtualThreads = N8nExecutors.virtualThreadExecutor();
+        if (virtualThreads != null && hedgingPolicy == null) {
+            return executeOnVirtualThread(virtualThreads);
+        }
+        
+        N8nLog.debug(() -> "Executing asynchronous n8n webhook call to endpoint: " + webhookEndpoint 
+                     + ", input data: " + requestBody.describe());
+        
+        Target target;
+        try {
+            validateInputs();
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        try {
+            target = new Target();
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(requestFailure(e));
+        }
+        
+        N8nLog.debug(() -> "Asynchronous API request sent (timeout: " + timeoutMinutes + " minutes)");
+        
+        AsyncCall call = new AsyncCall(target, retryPolicy(), hedgingPolicy);
+        call.attempt(1);
+        return call.result;
+    }
+    
+    /**
+     * State of an asynchronous webhook call across its attempts
+     * 
+     * Retries are scheduled with a delayed executor instead of sleeping, so no
+     * thread is blocked during the backoff.
+     */
+    private final class AsyncCall {
+        private final N8nRetryPolicy retryPolicy;
+        // Null if the call is not hedged
+        private final N8nHedgingPolicy hedgingPolicy;
+        private final long firstAttemptNanos = System.nanoTime();
+        private final CompletableFuture<String> result = new CompletableFuture<>();
+        // Replaced between attempts of calls to an endpoint group
+        private volatile Target target;
+        
+        AsyncCall(Target target, N8nRetryPolicy retryPolicy, N8nHedgingPolicy hedgingPolicy) {
+            this.target = target;
+            this.retryPolicy = retryPolicy;
+            this.hedgingPolicy = hedgingPolicy;
+            if (hedgingPolicy != null) {
+                hedgingPolicy.callStarted(webhookEndpoint);
+            }
+        }
+        
+        void attempt(int attempt) {
+            new Attempt(attempt, target).send(target, false);
+        }
+        
+        private void retryOrFail(int attempt, Exception e) {
+            long delayMillis = retryPolicy.retryDelayMillis(attempt, e, firstAttemptNanos);
+            if (delayMillis < 0) {
+                result.completeExceptionally(requestFailure(e));
+                return;
+            }
+            retryLater(target.endpoint, attempt, retryPolicy, delayMillis, e);
+            try {
+                CompletableFuture.delayedExecutor(delayMillis, TimeUnit.MILLISECONDS, N8nExecutors.asyncExecutor())
+                    .execute(() -> {
+                        try {
+                            target = target.next();
+                        } catch (Exception failure) {
+                            result.completeExceptionally(requestFailure(failure));
+                            return;
+                        }
+                        attempt(attempt + 1);
+                    });
+            } catch (RejectedExecutionException rejected) {
+                result.completeExceptionally(requestFailure(e));
+            }
+        }
+        
+        /**
+         * One attempt of the call: its first request and, for hedged calls, the
+         * duplicates sent while no response has arrived
+         * 
+         * The first successful response settles the attempt and cancels the other
+         * requests. The attempt fails (and may be retried) once every request sent
+         * has failed.
+         */
+        private final class Attempt {
+            private final int number;
+            private final Target first;
+            // Guarded by this
+            private final List<CompletableFuture<HttpResponse<String>>> exchanges = new ArrayList<>();
+            private int pending = 1;
+            private int hedges;
+            private Exception failure;
+            private volatile boolean settled;
+            
+            Attempt(int number, Target first) {
+                this.number = number;
+                this.first = first;
+            }
+            
+            void send(Target requestTarget, boolean hedge) {
+                Endpoint endpoint = requestTarget.endpoint;
+                // A new HTTP/2 client may still be opening its connection; wait without blocking
+                requestTarget.pooledClient.ready.thenCompose(ready -> endpoint.startAsync())
+                    .whenComplete((startNanos, error) -> {
+                        if (error != null) {
+                            failed(asException(error));
+                        } else {
+                            sendRequest(requestTarget, endpoint, startNanos, hedge);
+                        }
+                    });
+            }
+            
+            private void sendRequest(Target requestTarget, Endpoint endpoint, long startNanos, boolean hedge) {
+                if (hedge) {
+                    endpoint.metrics.hedgeSent();
+                }
+                CompletableFuture<HttpResponse<String>> exchange = requestTarget.pooledClient.client.sendAsync(
+                    requestTarget.request, endpoint.bodyHandler(HttpResponse.BodyHandlers.ofString(), startNanos));
+                exchange.whenCompleteAsync((response, error) -> {
+                    if (isCancellation(error)) {
+                        endpoint.abandoned(startNanos);
+                        failed(null);
+                        return;
+                    }
+                    endpoint.finish(startNanos, response != null ? response.statusCode() : -1, error);
+                    if (settled) {
+                        failed(null);
+                        return;
+                    }
+                    try {
+                        if (error != null) {
+                            throw asException(error);
+                        }
+                        succeeded(handleResponse(response), hedge ? endpoint : null);
+                    } catch (Exception e) {
+                        failed(e);
+                    }
+                }, N8nExecutors.asyncExecutor());
+                
+                boolean cancel;
+                synchronized (this) {
+                    cancel = settled;
+                    exchanges.add(exchange);
+                }
+                if (cancel) {
+                    abandon(exchange);
+                } else if (hedgingPolicy != null) {
+                    // The next hedge is due one delay after this request
+                    scheduleHedge();
+                }
+            }
+            
+            private void scheduleHedge() {
+                long delayMillis = hedgingPolicy.delayMillis(first.endpoint.metrics);
+                try {
+                    CompletableFuture.delayedExecutor(delayMillis, TimeUnit.MILLISECONDS, N8nExecutors.asyncExecutor())
+                        .execute(this::hedge);
+                } catch (RejectedExecutionException e) {
+                    // No hedge; the requests sent so far still answer
+                }
+            }
+            
+            private void hedge() {
+                int hedgeNumber;
+                synchronized (this) {
+                    if (settled || hedges >= hedgingPolicy.getMaxHedges()) {
+                        return;
+                    }
+                    if (!hedgingPolicy.tryHedge(webhookEndpoint)) {
+                        N8nLog.debug(() -> "Hedge budget of endpoint " + webhookEndpoint + " exhausted");
+                        return;
+                    }
+                    hedgeNumber = ++hedges;
+                    pending++;
+                }
+                Target hedgeTarget;
+                try {
+                    hedgeTarget = first.next();
+                } catch (Exception e) {
+                    failed(e);
+                    return;
+                }
+                N8nLog.debug(() -> "No n8n response within the hedging delay, sending hedge " + hedgeNumber 
+                             + " to " + hedgeTarget.request.uri());
+                send(hedgeTarget, true);
+            }
+            
+            private void succeeded(String response, Endpoint hedgeEndpoint) {
+                List<CompletableFuture<HttpResponse<String>>> losers;
+                synchronized (this) {
+                    pending--;
+                    if (settled) {
+                        return;
+                    }
+                    settled = true;
+                    losers = new ArrayList<>(exchanges);
+                }
+                if (hedgeEndpoint != null) {
+                    hedgeEndpoint.metrics.hedgeWon();
+                }
+                result.complete(response);
+                for (CompletableFuture<HttpResponse<String>> loser : losers) {
+                    abandon(loser);
+                }
+            }
+            
+            /**
+             * Stop a request whose answer is no longer needed
+             * 
+             * Where cancelling does not abort the exchange it is left to finish, so its
+             * limiter slot is only given back once it is really off the wire.
+             */
+            private void abandon(CompletableFuture<HttpResponse<String>> exchange) {
+                if (CANCEL_ABORTS_EXCHANGE) {
+                    exchange.cancel(true);
+                }
+            }
+            
+            /**
+             * @param e The failure of a request, or null for a request that ended after
+             *          the attempt was settled
+             */
+            private void failed(Exception e) {
+                synchronized (this) {
+                    pending--;
+                    if (e != null && !settled) {
+                        failure = e;
+                    }
+                    if (settled || pending > 0) {
+                        return;
+                    }
+                    // A hedge that is still scheduled is not waited for
+                    settled = true;
+                }
+                retryOrFail(number, failure);
+            }
+        }
+    }
+    
+    /**
+     * Execute the n8n webhook call and stream the raw response body to an output stream
+     * 
+     * The body is copied in small chunks and never held in memory as a whole, so
+     * large files or reports returned by n8n use constant heap.
+     * 
+     * @param out Receives the response body; it is flushed but not closed
+     * @return The number of bytes written
+     * @throws Exception If the API call fails
+     */
+    public long executeActionToStream(OutputStream out) throws Exception {
+        return executeActionToStream(out, null);
+    }
+    
+    /**
+     * Execute the n8n webhook call and stream one response field to an output stream
+     * 
+     * The JSON response is scanned while it arrives and only the decoded string value
+     * of resultField is written (UTF-8), without buffering the body.
+     * 
+     * @param out Receives the response; it is flushed but not closed
+     * @param resultField The JSON field whose string value is written, or null to
+     *                    write the raw response body
+     * @return The number of bytes written
+     * @throws Exception If the API call fails or the field is not in the response
+     */
+    public long executeActionToStream(OutputStream out, String resultField) throws Exception {
+        if (out == null) {
+            throw new Exception("Output stream is required for streaming responses");
+        }
+        return executeStreaming(body -> copyResponse(body, out, resultField));
+    }
+    
+    /**
+     * Execute the n8n webhook call and write the response to a file
+     * 
+     * @param target The file to write; it is replaced if it exists
+     * @param resultField The JSON field whose string value is written, or null to
+     *                    write the raw response body
+     * @return The number of bytes written
+     * @throws Exception If the API call fails or the field is not in the response
+     */
+    public long executeActionToFile(Path target, String resultField) throws Exception {
+        if (target == null) {
+            throw new Exception("Target file is required for streaming responses");
+        }
+        return executeStreaming(body -> {
+            // Only create the file once n8n has answered successfully
+            try (OutputStream out = Files.newOutputStream(target)) {
+                return copyResponse(body, out, resultField);
+            } catch (Exception e) {
+                Files.deleteIfExists(target);
+                throw e;
+            }
+        });
+    }
+    
+    /**
+     * Send the request and hand the body of a successful response to the handler
+     */
+    private long executeStreaming(StreamHandler handler) throws Exception {
+        N8nLog.debug(() -> "Executing streaming n8n webhook call to endpoint: " + webhookEndpoint 
+                     + ", input data: " + requestBody.describe());
+        
+        // Validate inputs
+        validateInputs();
+        
+        try {
+            Target target = new Target();
+            
+            N8nLog.debug(() -> "API request sent, waiting for n8n response (timeout: " + timeoutMinutes + " minutes)...");
+            
+            N8nRetryPolicy retryPolicy = retryPolicy();
+            long firstAttemptNanos = System.nanoTime();
+            for (int attempt = 1; ; attempt++) {
+                Endpoint endpoint = target.endpoint;
+                // Latency covers the whole transfer, so the call is finished after the body is consumed
+                long startNanos = endpoint.start();
+                int statusCode = -1;
+                Exception failure = null;
+                long delayMillis;
+                // Once the handler has consumed part of the body the call can no longer be retried
+                boolean bodyHandled = false;
+                try {
+                    HttpResponse<InputStream> response = target.pooledClient.awaitReady().send(target.request, 
+                        endpoint.bodyHandler(HttpResponse.BodyHandlers.ofInputStream(), startNanos));
+                    
+                    statusCode = response.statusCode();
+                    int status = statusCode;
+                    N8nLog.debug(() -> "Response status code: " + status);
+                    
+                    try (InputStream body = response.body()) {
+                        if (statusCode < 200 || statusCode >= 300) {
+                            N8nLog.warn("n8n webhook call failed with status code: " + statusCode);
+                            throw new N8nHttpException(statusCode, 
+                                N8nStreams.readPrefix(body, N8nStreams.MAX_ERROR_BODY_BYTES), 
+                                N8nRetryPolicy.retryAfter(response.headers()));
+                        }
+                        bodyHandled = true;
+                        long written = handler.handle(body);
+                        N8nLog.debug(() -> "n8n webhook call successful, streamed " + written + " bytes");
+                        return written;
+                    }
+                } catch (Exception e) {
+                    failure = e;
+                    delayMillis = bodyHandled ? -1 : retryPolicy.retryDelayMillis(attempt, e, firstAttemptNanos);
+                    if (delayMillis < 0) {
+                        throw e;
+                    }
+                } finally {
+                    endpoint.finish(startNanos, statusCode, failure);
+                }
+                retryLater(endpoint, attempt, retryPolicy, delayMillis, failure);
+                Thread.sleep(delayMillis);
+                target = target.next();
+            }
+            
+        } catch (Exception e) {
+            throw requestFailure(e);
+        }
+    }
+    
+    /**
+     * Copy the raw body, or only the decoded value of resultField, to the output stream
+     */
+    private static long copyResponse(InputStream body, OutputStream out, String resultField) throws Exception {
+        N8nStreams.CountingOutputStream counting = new N8nStreams.CountingOutputStream(out);
+        if (resultField == null || resultField.isEmpty()) {
+            body.transferTo(counting);
+            counting.flush();
+            return counting.getCount();
+        }
+        
+        Writer writer = new OutputStreamWriter(counting, StandardCharsets.UTF_8);
+        boolean found = N8nJsonScanner.copyStringValue(
+            new InputStreamReader(body, StandardCharsets.UTF_8), resultField, writer);
+        writer.flush();
+        if (!found) {
+            throw new Exception("Response does not contain a string field \"" + resultField + "\"");
+        }
+        return counting.getCount();
+    }
+    
+    /**
+     * Consumes the body of a successful streaming response
+     */
+    private interface StreamHandler {
+        long handle(InputStream body) throws Exception;
+    }
+    
+    /**
+     * Execute the n8n webhook call and deliver its response incrementally as events
+     * 
+     * text/event-stream responses are parsed as server-sent events, any other response
+     * as consecutive JSON values (NDJSON, e.g. n8n's streaming response mode). Every
+     * event goes to the subscriber as soon as its bytes have arrived, e.g. the first
+     * tokens of an AI agent, but only as many events as the subscriber has requested:
+     * the rest of the response is not read until it requests more. Attempts are
+     * retried like other calls until they have produced the first event.
+     * 
+     * The subscriber is called on HTTP client threads. Cancelling its subscription
+     * aborts the response.
+     * 
+     * @param subscriber Receives the events, then onComplete or onError
+     */
+    public void executeActionEvents(Flow.Subscriber<? super N8nStreamEvent> subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException("Subscriber is required for streamed events");
+        }
+        N8nLog.debug(() -> "Executing event-streaming n8n webhook call to endpoint: " + webhookEndpoint 
+                     + ", input data: " + requestBody.describe());
+        N8nEventStream stream = new N8nEventStream(subscriber);
+        stream.open();
+        try {
+            validateInputs();
+            withHeader("Accept", EVENTS_ACCEPT);
+            new EventCall(new Target(), retryPolicy(), stream).attempt(1);
+        } catch (Exception e) {
+            stream.fail(requestFailure(e));
+        }
+    }
+    
+    /**
+     * Execute the n8n webhook call and pass each event of its response to the listener
+     * as soon as it arrives
+     * 
+     * The next event is only read once the listener has returned. The listener runs on
+     * an HTTP client thread while this method waits.
+     * 
+     * @param listener Receives the events; an exception thrown by it aborts the call
+     * @return The number of events received
+     * @throws Exception If the API call or the listener fails
+     */
+    public long executeActionEvents(Consumer<N8nStreamEvent> listener) throws Exception {
+        if (listener == null) {
+            throw new Exception("Listener is required for streamed events");
+        }
+        ListenerSubscriber subscriber = new ListenerSubscriber(listener);
+        executeActionEvents(subscriber);
+        try {
+            return subscriber.result.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : new Exception(cause);
+        } catch (InterruptedException e) {
+            subscriber.cancel();
+            throw e;
+        }
+    }
+    
+    /**
+     * State of a call whose response is delivered as events, across its attempts
+     */
+    private final class EventCall {
+        private final N8nRetryPolicy retryPolicy;
+        private final N8nEventStream stream;
+        private final long firstAttemptNanos = System.nanoTime();
+        // Replaced between attempts of calls to an endpoint group
+        private volatile Target target;
+        
+        EventCall(Target target, N8nRetryPolicy retryPolicy, N8nEventStream stream) {
+            this.target = target;
+            this.retryPolicy = retryPolicy;
+            this.stream = stream;
+        }
+        
+        void attempt(int attempt) {
+            Target attemptTarget = target;
+            Endpoint endpoint = attemptTarget.endpoint;
+            attemptTarget.pooledClient.ready.thenCompose(ready -> endpoint.startAsync())
+                .whenComplete((startNanos, error) -> {
+                    if (error != null) {
+                        retryOrFail(attempt, asException(error));
+                    } else {
+                        send(attempt, attemptTarget, startNanos);
+                    }
+                });
+        }
+        
+        private void send(int attempt, Target attemptTarget, long startNanos) {
+            Endpoint endpoint = attemptTarget.endpoint;
+            // Error responses are read as text; only successful ones become events
+            HttpResponse.BodyHandler<String> handler = responseInfo -> {
+                int statusCode = responseInfo.statusCode();
+                if (statusCode < 200 || statusCode >= 300) {
+                    return HttpResponse.BodySubscribers.ofString(StandardCharsets.UTF_8);
+                }
+                String type = responseInfo.headers().firstValue("Content-Type").orElse("");
+                return stream.attempt(type.trim().toLowerCase(Locale.ROOT).startsWith("text/event-stream"));
+            };
+            CompletableFuture<HttpResponse<String>> exchange = attemptTarget.pooledClient.client.sendAsync(
+                attemptTarget.request, endpoint.bodyHandler(handler, startNanos));
+            stream.onCancel(() -> exchange.cancel(true));
+            exchange.whenComplete((response, error) -> {
+                if (error != null) {
+                    if (stream.isCancelled()) {
+                        endpoint.abandoned(startNanos);
+                        return;
+                    }
+                    endpoint.finish(startNanos, -1, error);
+                    retryOrFail(attempt, asException(error));
+                    return;
+                }
+                int statusCode = response.statusCode();
+                endpoint.finish(startNanos, statusCode, null);
+                if (statusCode >= 200 && statusCode < 300) {
+                    N8nLog.debug("n8n webhook call successful, event stream ended");
+                    stream.complete();
+                } else {
+                    N8nLog.warn("n8n webhook call failed with status code: " + statusCode);
+                    retryOrFail(attempt, new N8nHttpException(statusCode, response.body(), 
+                                                              N8nRetryPolicy.retryAfter(response.headers())));
+                }
+            });
+        }
+        
+        private void retryOrFail(int attempt, Exception e) {
+            if (stream.isCancelled()) {
+                return;
+            }
+            // Events already produced must not be delivered twice
+            long delayMillis = stream.hasProduced() ? -1 : retryPolicy.retryDelayMillis(attempt, e, firstAttemptNanos);
+            if (delayMillis < 0) {
+                stream.fail(requestFailure(e));
+                return;
+            }
+            retryLater(target.endpoint, attempt, retryPolicy, delayMillis, e);
+            try {
+                CompletableFuture.delayedExecutor(delayMillis, TimeUnit.MILLISECONDS, N8nExecutors.asyncExecutor())
+                    .execute(() -> {
+                        try {
+                            target = target.next();
+                        } catch (Exception failure) {
+                            stream.fail(requestFailure(failure));
+                            return;
+                        }
+                        attempt(attempt + 1);
+                    });
+            } catch (RejectedExecutionException rejected) {
+                stream.fail(requestFailure(e));
+            }
+        }
+    }
+    
+    /**
+     * Subscriber that passes events to a listener one at a time and counts them
+     */
+    private static final class ListenerSubscriber implements Flow.Subscriber<N8nStreamEvent> {
+        private final Consumer<N8nStreamEvent> listener;
+        private final CompletableFuture<Long> result = new CompletableFuture<>();
+        private volatile Flow.Subscription subscription;
+        private long count;
+        
+        ListenerSubscriber(Consumer<N8nStreamEvent> listener) {
+            this.listener = listener;
+        }
+        
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(1);
+        }
+        
+        @Override
+        public void onNext(N8nStreamEvent event) {
+            try {
+                listener.accept(event);
+            } catch (RuntimeException e) {
+                cancel();
+                result.completeExceptionally(e);
+                return;
+            }
+            count++;
+            subscription.request(1);
+        }
+        
+        @Override
+        public void onError(Throwable throwable) {
+            result.completeExceptionally(throwable);
+        }
+        
+        @Override
+        public void onComplete() {
+            result.complete(count);
+        }
+        
+        void cancel() {
+            subscription.cancel();
+        }
+    }
+    
+    /**
+     * Run the blocking webhook call on a virtual thread
+     */
+    private CompletableFuture<String> executeOnVirtualThread(Executor virtualThreads) {
+        CompletableFuture<String> result = new CompletableFuture<>();
+        try {
+            virtualThreads.execute(() -> {
+                try {
+                    result.complete(executeUncached());
+                } catch (Exception e) {
+                    result.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(requestFailure(e));
+        }
+        return result;
+    }
+    
+    /**
+     * Build the HTTP request for the webhook call
+     */
+    private HttpRequest buildRequest(URI endpointUri, Endpoint endpoint) throws Exception {
+        if (!requestBody.isStreamed()) {
+            N8nLog.payload("Request payload", requestBody.getText());
+        }
+        
+        // Create HTTP request with configurable timeout for n8n processing
+        HttpRequest.Builder requestBuilder = HttpRequest.newBuilder()
+            .uri(endpointUri)
+            .header("Content-Type", contentType)
+            .timeout(Duration.ofMinutes(timeoutMinutes));  // Use configurable timeout
+        
+        // Gzip large bodies if enabled for the endpoint; the metered bytes are the compressed ones
+        HttpRequest.BodyPublisher body;
+        if (requestBody.shouldCompress(N8nCompression.requestThreshold(webhookEndpoint))) {
+            body = requestBody.gzipPublisher(endpoint.metrics::requestCompressionSaved);
+            requestBuilder.header("Content-Encoding", "gzip");
+        } else {
+            body = requestBody.publisher();
+        }
+        requestBuilder.POST(endpoint.metrics.meter(body));
+        if (N8nCompression.isResponseDecompressionEnabled()) {
+            requestBuilder.header("Accept-Encoding", N8nCompression.ACCEPT_ENCODING);
+        }
+        
+        // Add API key header if provided
+        if (apiKey != null && !apiKey.trim().isEmpty()) {
+            requestBuilder.header("Authorization", "Bearer " + apiKey);
+        }
+        
+        // Add session ID header for n8n Simple Memory (required)
+        if (sessionId == null || sessionId.trim().isEmpty()) {
+            throw new Exception("Session ID is required for n8n Simple Memory functionality");
+        }
+        requestBuilder.header("x-session-id", sessionId);
+        N8nLog.debug(() -> "Session ID: " + sessionId);
+        
+        for (Map.Entry<String, String> header : extraHeaders.entrySet()) {
+            requestBuilder.header(header.getKey(), header.getValue());
+        }
+        
+        return requestBuilder.build();
+    }
+    
+    /**
+     * Send one attempt of the webhook call and record it for the endpoint
+     */
+    private static HttpResponse<String> send(HttpClient httpClient, HttpRequest request, 
+                                             Endpoint endpoint) throws Exception {
+        long startNanos = endpoint.start();
+        HttpResponse<String> response;
+        try {
+            response = httpClient.send(request, 
+                endpoint.bodyHandler(HttpResponse.BodyHandlers.ofString(), startNanos));
+        } catch (Exception e) {
+            endpoint.finish(startNanos, -1, e);
+            throw e;
+        }
+        endpoint.finish(startNanos, response.statusCode(), null);
+        return response;
+    }
+    
+    /**
+     * Where an attempt of the call goes: the shared client, the request and the
+     * endpoint state
+     * 
+     * Calls to an endpoint group pick an instance for every attempt, so a retry can
+     * go to another instance; other calls use one target for all attempts.
+     */
+    private final class Target {
+        final N8nHttpClientPool.PooledClient pooledClient;
+        final HttpRequest request;
+        final Endpoint endpoint;
+        
+        Target() throws Exception {
+            this(null);
+        }
+        
+        private Target(N8nEndpointGroup.Member previous) throws Exception {
+            N8nEndpointGroup.Member member = N8nEndpointGroup.isGroupUrl(webhookEndpoint)
+                ? N8nEndpointGroup.select(webhookEndpoint, sessionId, previous)
+                : null;
+            String url = member != null ? member.resolve(webhookEndpoint) : webhookEndpoint;
+            URI uri = URI.create(url);
+            this.pooledClient = N8nHttpClientPool.getClient(uri, CONNECT_TIMEOUT);
+            this.endpoint = new Endpoint(url, apiKey, member);
+            this.request = buildRequest(uri, endpoint);
+        }
+        
+        /**
+         * @return The target of the next attempt or of a hedge, on another instance of
+         *         an endpoint group if there is one
+         */
+        Target next() throws Exception {
+            return endpoint.member != null ? new Target(endpoint.member) : this;
+        }
+    }
+    
+    /**
+     * Per-endpoint state every attempt goes through: the rate and concurrency limits
+     * and the circuit breaker that may hold back or reject it, and the metrics that
+     * record it
+     */
+    private static final class Endpoint {
+        final N8nEndpointMetrics metrics;
+        final N8nCircuitBreaker circuitBreaker;
+        final N8nLimiter limiter;
+        // The endpoint group instance the attempt goes to, or null
+        final N8nEndpointGroup.Member member;
+        
+        Endpoint(String webhookEndpoint, String apiKey, N8nEndpointGroup.Member member) {
+            this.metrics = N8nMetrics.forEndpoint(webhookEndpoint);
+            this.circuitBreaker = N8nCircuitBreaker.forEndpoint(webhookEndpoint);
+            this.limiter = N8nEndpointLimits.limiterFor(webhookEndpoint, apiKey);
+            this.member = member;
+        }
+        
+        /**
+         * Start an attempt, waiting for the endpoint limits if needed
+         * 
+         * @return The start timestamp to pass to finish(...)
+         * @throws N8nRejectedException If the limits or the circuit breaker reject the call
+         */
+        long start() throws Exception {
+            if (limiter != null) {
+                checkCircuit();
+                try {
+                    limiter.acquire();
+                } catch (N8nRejectedException e) {
+                    metrics.requestRejected();
+                    throw e;
+                }
+            }
+            return admitted();
+        }
+        
+        /**
+         * Start an attempt without blocking while waiting for the endpoint limits
+         * 
+         * @return A future completed with the start timestamp to pass to finish(...)
+         */
+        CompletableFuture<Long> startAsync() {
+            if (limiter == null) {
+                try {
+                    return CompletableFuture.completedFuture(admitted());
+                } catch (N8nRejectedException e) {
+                    return CompletableFuture.failedFuture(e);
+                }
+            }
+            try {
+                checkCircuit();
+            } catch (N8nRejectedException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+            CompletableFuture<Long> started = new CompletableFuture<>();
+            limiter.acquireAsync().whenComplete((ignored, error) -> {
+                try {
+                    if (error != null) {
+                        metrics.requestRejected();
+                        throw asException(error);
+                    }
+                    started.complete(admitted());
+                } catch (Exception e) {
+                    started.completeExceptionally(e);
+                }
+            });
+            return started;
+        }
+        
+        /**
+         * Fail fast while the circuit breaker rejects calls, instead of first waiting for the limits
+         */
+        private void checkCircuit() throws N8nRejectedException {
+            try {
+                circuitBreaker.checkPermission();
+            } catch (N8nRejectedException e) {
+                metrics.requestRejected();
+                throw e;
+            }
+        }
+        
+        private long admitted() throws N8nRejectedException {
+            long startNanos;
+            try {
+                // The breaker's permit doubles as the start timestamp, see finish(...)
+                startNanos = circuitBreaker.acquirePermission();
+            } catch (N8nRejectedException e) {
+                if (limiter != null) {
+                    limiter.cancel();
+                }
+                metrics.requestRejected();
+                throw e;
+            }
+            if (member != null) {
+                member.callStarted();
+            }
+            metrics.requestStarted();
+            return startNanos;
+        }
+        
+        /**
+         * Wrap a body handler to inflate compressed responses and record response metrics
+         */
+        <T> HttpResponse.BodyHandler<T> bodyHandler(HttpResponse.BodyHandler<T> handler, long startNanos) {
+            return metrics.meter(N8nCompression.decoding(handler, metrics), startNanos);
+        }
+        
+        /**
+         * Finish an attempt abandoned without an outcome: cancelled because a hedged
+         * request of the call answered first, or because the caller cancelled it
+         * 
+         * Nothing is known about the instance's health, so neither the circuit breaker
+         * nor the group's ejection and latency average record the attempt; a half-open
+         * probe permit is given back.
+         */
+        void abandoned(long startNanos) {
+            metrics.requestCancelled();
+            circuitBreaker.onAbandoned(startNanos);
+            if (member != null) {
+                member.callAbandoned();
+            }
+            if (limiter != null) {
+                limiter.release();
+            }
+        }
+        
+        void finish(long startNanos, int statusCode, Throwable error) {
+            metrics.requestFinished(startNanos, statusCode, error);
+            circuitBreaker.onResult(startNanos, System.nanoTime() - startNanos, statusCode, error);
+            if (member != null) {
+                member.callFinished(System.nanoTime() - startNanos, statusCode, error);
+            }
+            if (limiter != null) {
+                limiter.release();
+            }
+        }
+    }
+    
     /**
-     * Constructor for n8n Action with custom timeout and session ID
-     * 
-     * @param apiKey The n8n API key for authentication (optional, can be null)
-     * @param webhookEndpoint The complete n8n webhook URL
-     * @param inputData The data to send to n8n webhook
-     * @param sessionId The session ID for n8n Simple Memory (required)
-     * @param contentType The content type (default: "application/json")
-     * @param timeoutMinutes Timeout in minutes for API response (default: 10)
+     * @return The retry policy for this call; bodies that cannot be replayed are never retried
      */
-    public N8nAction(String apiKey, String webhookEndpoint, String inputData, 
-                     String sessionId, String contentType, int timeoutMinutes) {
-        this.apiKey = apiKey;
-        this.webhookEndpoint = webhookEndpoint;
-        this.inputData = inputData;
-        this.sessionId = sessionId;
-        this.contentType = contentType != null ? contentType : "application/json";
-        this.timeoutMinutes = timeoutMinutes > 0 ? timeoutMinutes : 10;
+    private N8nRetryPolicy retryPolicy() {
+        return requestBody.isReplayable() ? N8nRetryPolicy.forEndpoint(webhookEndpoint) : N8nRetryPolicy.NONE;
     }
     
     /**
-     * Constructor for n8n Action with session ID
-     * 
-     * @param apiKey The n8n API key for authentication (optional, can be null)
-     * @param webhookEndpoint The complete n8n webhook URL
-     * @param inputData The data to send to n8n webhook
-     * @param sessionId The session ID for n8n Simple Memory (required)
-     * @param contentType The content type (default: "application/json")
+     * @return The hedging policy for this call, or null; bodies that cannot be replayed are never hedged
      */
-    public N8nAction(String apiKey, String webhookEndpoint, String inputData, 
-                     String sessionId, String contentType) {
-        this(apiKey, webhookEndpoint, inputData, sessionId, contentType, 10);
+    private N8nHedgingPolicy hedgingPolicy() {
+        return requestBody.isReplayable() ? N8nHedgingPolicy.forEndpoint(webhookEndpoint) : null;
     }
     
     /**
-     * Simplified constructor with default content type
-     * 
-     * @param apiKey The n8n API key for authentication (optional, can be null)
-     * @param webhookEndpoint The complete n8n webhook URL
-     * @param inputData The data to send to n8n webhook
-     * @param sessionId The session ID for n8n Simple Memory (required)
+     * @return The micro-batch policy for this call, or null if it is sent on its own
+     *         (no policy for the endpoint, extra headers, a streamed or non-JSON body)
      */
-    public N8nAction(String apiKey, String webhookEndpoint, String inputData, String sessionId) {
-        this(apiKey, webhookEndpoint, inputData, sessionId, "application/json", 10);
+    private N8nMicroBatchPolicy microBatchPolicy() {
+        N8nMicroBatchPolicy policy = N8nMicroBatchPolicy.forEndpoint(webhookEndpoint);
+        if (policy == null || requestBody.isStreamed() || !extraHeaders.isEmpty() || !isJsonContentType(contentType)) {
+            return null;
+        }
+        String body = requestBody.getText().trim();
+        return body.startsWith("{") || body.startsWith("[") ? policy : null;
     }
     
     /**
-     * Execute the n8n webhook call
-     * 
-     * @return The response from n8n webhook
-     * @throws Exception If the API call fails
+     * Log and count a retry of a failed attempt
      */
-    public String executeAction() throws Exception {
-        System.out.println("Executing n8n webhook call to endpoint: " + webhookEndpoint);
-        System.out.println("Input data length: " + (inputData != null ? inputData.length() : 0) + " characters");
+    private static void retryLater(Endpoint endpoint, int attempt, N8nRetryPolicy retryPolicy, 
+                                   long delayMillis, Exception failure) {
+        endpoint.metrics.retryScheduled();
+        N8nLog.warn("n8n webhook attempt " + attempt + " of " + retryPolicy.getMaxAttempts() 
+                    + " failed (" + N8nLog.truncate(failure.getMessage(), 200) + "), retrying in " + delayMillis + " ms");
+    }
+    
+    /**
+     * Check the response status and process the body of a successful call
+     */
+    private String handleResponse(HttpResponse<String> response) throws Exception {
+        int statusCode = response.statusCode();
+        N8nLog.debug(() -> "Response status code: " + statusCode);
         
-        // Validate inputs
-        validateInputs();
+        String responseBody = response.body();
         
-        try {
-            // Create HTTP client with extended timeouts for n8n processing
-            HttpClient httpClient = HttpClient.newBuilder()
-                .version(HttpClient.Version.HTTP_1_1)
-                .connectTimeout(Duration.ofSeconds(60))  // Connection timeout: 60 seconds
-                .build();
-            
-            System.out.println("Request payload: " + inputData);
-            
-            // Create HTTP request with configurable timeout for n8n processing
-            HttpRequest.Builder requestBuilder = HttpRequest.newBuilder()
-                .uri(URI.create(webhookEndpoint))
-                .header("Content-Type", contentType)
-                .timeout(Duration.ofMinutes(timeoutMinutes))  // Use configurable timeout
-                .POST(HttpRequest.BodyPublishers.ofString(inputData != null ? inputData : "{}"));
-            
-            // Add API key header if provided
-            if (apiKey != null && !apiKey.trim().isEmpty()) {
-                requestBuilder.header("Authorization", "Bearer " + apiKey);
-            }
-            
-            // Add session ID header for n8n Simple Memory (required)
-            if (sessionId == null || sessionId.trim().isEmpty()) {
-                throw new Exception("Session ID is required for n8n Simple Memory functionality");
-            }
-            requestBuilder.header("x-session-id", sessionId);
-            System.out.println("Session ID: " + sessionId);
-            
-            HttpRequest request = requestBuilder.build();
-            
-            System.out.println("API request sent, waiting for n8n response (timeout: " + timeoutMinutes + " minutes)...");
-            
-            // Execute request
-            HttpResponse<String> response = httpClient.send(request, 
-                HttpResponse.BodyHandlers.ofString());
-            
-            int statusCode = response.statusCode();
-            System.out.println("Response status code: " + statusCode);
-            
-            String responseBody = response.body();
-            
-            // Check if request was successful
-            if (statusCode >= 200 && statusCode < 300) {
-                System.out.println("n8n webhook call successful");
-                return processSuccessResponse(responseBody);
-            } else {
-                System.err.println("n8n webhook call failed with status code: " + statusCode);
-                throw new Exception("Webhook request failed with status code: " + statusCode + 
-                                  ". Response: " + responseBody);
+        // Check if request was successful
+        if (statusCode >= 200 && statusCode < 300) {
+            N8nLog.debug("n8n webhook call successful");
+            return rawResponse ? responseBody : processSuccessResponse(responseBody);
+        } else {
+            N8nLog.warn("n8n webhook call failed with status code: " + statusCode);
+            throw new N8nHttpException(statusCode, responseBody, 
+                                       N8nRetryPolicy.retryAfter(response.headers()));
+        }
+    }
+    
+    /**
+     * Log a failed webhook request and wrap the cause
+     */
+    private static Exception requestFailure(Exception e) {
+        if (e instanceof InterruptedException) {
+            Thread.currentThread().interrupt();
+        }
+        if (e instanceof N8nRejectedException) {
+            // Expected while an endpoint is unhealthy; no stack trace per rejected call
+            N8nLog.warn("n8n webhook request rejected: " + e.getMessage());
+        } else {
+            N8nLog.error("Error making n8n webhook request: " + e.getMessage(), e);
+        }
+        return new Exception("Error making webhook request: " + e.getMessage(), e);
+    }
+    
+    /**
+     * @return True if the failure is the cancellation of a request
+     */
+    private static boolean isCancellation(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof CancellationException) {
+                return true;
             }
-            
-        } catch (Exception e) {
-            System.err.println("Error making n8n webhook request: " + e.getMessage());
-            e.printStackTrace();
-            throw new Exception("Error making webhook request: " + e.getMessage(), e);
         }
+        return false;
+    }
+    
+    /**
+     * Unwrap a failure reported by a CompletableFuture stage
+     */
+    private static Exception asException(Throwable error) {
+        Throwable cause = error;
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException) 
+               && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause instanceof Exception ? (Exception) cause : new Exception(cause);
     }
     
     /**
@@ -158,114 +1361,44 @@ public class N8nAction {
         }
         
         // Validate URL format
-        if (!webhookEndpoint.startsWith("http://") && !webhookEndpoint.startsWith("https://")) {
+        if (!webhookEndpoint.startsWith("http://") && !webhookEndpoint.startsWith("https://")
+                && !N8nEndpointGroup.isGroupUrl(webhookEndpoint)) {
             throw new Exception("Webhook endpoint must be a valid URL starting with http:// or https://");
         }
+        
+        requestBody.validate();
     }
     
     /**
-     * Process successful API response using simple string parsing
+     * Process successful API response using a single-pass JSON scan
      */
-    private String processSuccessResponse(String responseBody) throws Exception {
+    static String processSuccessResponse(String responseBody) {
         try {
-            System.out.println("Processing response: " + responseBody);
+            N8nLog.payload("Processing response", responseBody);
             
             // For n8n webhooks, often the response is already in the desired format
-            // But we can still try to extract common response patterns
-            
-            // Try to extract text from "result": "value" pattern
-            String resultValue = extractJsonValue(responseBody, "result");
-            if (resultValue != null && !resultValue.isEmpty()) {
-                return unescapeJsonString(resultValue);
-            }
-            
-            // Try to extract from "data": "value" pattern
-            String dataValue = extractJsonValue(responseBody, "data");
-            if (dataValue != null && !dataValue.isEmpty()) {
-                return unescapeJsonString(dataValue);
-            }
-            
-            // Try to extract from "message": "value" pattern
-            String messageValue = extractJsonValue(responseBody, "message");
-            if (messageValue != null && !messageValue.isEmpty()) {
-                return unescapeJsonString(messageValue);
-            }
-            
-            // Try to extract from "response": "value" pattern
-            String responseValue = extractJsonValue(responseBody, "response");
-            if (responseValue != null && !responseValue.isEmpty()) {
-                return unescapeJsonString(responseValue);
+            // But we can still try to extract common response patterns, in priority
+            // order "result", "data", "message", "response"
+            String value = N8nJsonScanner.findFirstStringValue(responseBody, RESPONSE_FIELDS);
+            if (value != null) {
+                return value;
             }
             
             // If no specific patterns found, return the raw response
-            System.out.println("Returning raw response from n8n webhook");
+            N8nLog.debug("Returning raw response from n8n webhook");
             return responseBody;
             
         } catch (Exception e) {
-            System.out.println("Could not parse response, returning raw response: " + e.getMessage());
+            N8nLog.warn("Could not parse response, returning raw response: " + e.getMessage());
             return responseBody;
         }
     }
     
-    /**
-     * Extract value for a given JSON key using simple string parsing
-     */
-    private String extractJsonValue(String json, String key) {
-        String pattern = "\"" + key + "\":\"";
-        int start = json.indexOf(pattern);
-        if (start == -1) return null;
-        
-        start += pattern.length();
-        int end = findJsonStringEnd(json, start);
-        if (end == -1) return null;
-        
-        return json.substring(start, end);
-    }
-    
-    /**
-     * Find the end of a JSON string value, handling escaped quotes
-     */
-    private int findJsonStringEnd(String json, int start) {
-        int i = start;
-        while (i < json.length()) {
-            char c = json.charAt(i);
-            if (c == '"') {
-                // Check if it's escaped
-                int backslashCount = 0;
-                int j = i - 1;
-                while (j >= start && json.charAt(j) == '\\') {
-                    backslashCount++;
-                    j--;
-                }
-                // If even number of backslashes (including 0), the quote is not escaped
-                if (backslashCount % 2 == 0) {
-                    return i;
-                }
-            }
-            i++;
-        }
-        return -1;
-    }
-    
-    /**
-     * Unescape JSON string
-     */
-    private String unescapeJsonString(String str) {
-        if (str == null) return "";
-        return str.replace("\\\"", "\"")
-                  .replace("\\\\", "\\")
-                  .replace("\\n", "\n")
-                  .replace("\\r", "\r")
-                  .replace("\\t", "\t")
-                  .replace("\\b", "\b")
-                  .replace("\\f", "\f");
-    }
-    
     /**
      * Automatically wrap any text input in JSON format
      * This allows users to pass plain text which gets converted to {"message": "text"}
      */
-    private static String ensureJsonFormat(String inputData) {
+    static String ensureJsonFormat(String inputData) {
         if (inputData == null || inputData.trim().isEmpty()) {
             return "{\"message\": \"\"}";
         }
@@ -350,4 +1483,321 @@ public class N8nAction {
             return "Error executing n8n action: " + e.getMessage();
         }
     }
+    
+    /**
+     * Asynchronous variant of execute(apiKey, webhookEndpoint, inputData, sessionId)
+     * Does not block the calling thread; like execute(...), failures complete the
+     * future with an "Error executing n8n action: ..." message instead of an exception
+     */
+    public static CompletableFuture<String> executeAsync(String apiKey, String webhookEndpoint, 
+                                                         String inputData, String sessionId) {
+        String jsonData = ensureJsonFormat(inputData);
+        N8nAction action = new N8nAction(apiKey, webhookEndpoint, jsonData, sessionId);
+        return asResultString(action.executeActionAsync());
+    }
+    
+    /**
+     * Asynchronous variant of execute(apiKey, webhookEndpoint, inputData, sessionId, contentType)
+     */
+    public static CompletableFuture<String> executeAsync(String apiKey, String webhookEndpoint, 
+                                                         String inputData, String sessionId, 
+                                                         String contentType) {
+        String jsonData = ensureJsonFormat(inputData);
+        N8nAction action = new N8nAction(apiKey, webhookEndpoint, jsonData, 
+                                       sessionId, contentType);
+        return asResultString(action.executeActionAsync());
+    }
+    
+    /**
+     * Asynchronous variant of execute(apiKey, webhookEndpoint, inputData, sessionId, contentType, timeoutMinutes)
+     */
+    public static CompletableFuture<String> executeAsync(String apiKey, String webhookEndpoint, 
+                                                         String inputData, String sessionId, 
+                                                         String contentType, int timeoutMinutes) {
+        String jsonData = ensureJsonFormat(inputData);
+        N8nAction action = new N8nAction(apiKey, webhookEndpoint, jsonData, 
+                                       sessionId, contentType, timeoutMinutes);
+        return asResultString(action.executeActionAsync());
+    }
+    
+    /**
+     * Asynchronous variant of executeWithTimeout(apiKey, webhookEndpoint, inputData, sessionId, timeoutMinutes)
+     */
+    public static CompletableFuture<String> executeAsyncWithTimeout(String apiKey, String webhookEndpoint, 
+                                                                    String inputData, String sessionId, 
+                                                                    int timeoutMinutes) {
+        String jsonData = ensureJsonFormat(inputData);
+        N8nAction action = new N8nAction(apiKey, webhookEndpoint, jsonData, 
+                                       sessionId, "application/json", timeoutMinutes);
+        return asResultString(action.executeActionAsync());
+    }
+    
+    /**
+     * Static method that submits a long-running workflow as a job (see N8nJob)
+     * Returns the job ID right after n8n has accepted the job, or an
+     * "Error executing n8n action: ..." message
+     */
+    public static String submitJob(String apiKey, String webhookEndpoint, String inputData, 
+                                   String sessionId, String statusWebhook) {
+        try {
+            return N8nJob.submit(apiKey, webhookEndpoint, inputData, sessionId, statusWebhook).getJobId();
+        } catch (Exception e) {
+            return "Error executing n8n action: " + e.getMessage();
+        }
+    }
+    
+    /**
+     * Static method that waits up to timeoutSeconds for the result of a job submitted
+     * with submitJob(...); use getJobStatus(jobId) to tell a running job from a failed one
+     */
+    public static String awaitJob(String jobId, int timeoutSeconds) {
+        try {
+            N8nJob job = N8nJob.get(jobId);
+            if (job == null) {
+                throw new Exception("Unknown n8n job: " + jobId);
+            }
+            return job.await(Duration.ofSeconds(Math.max(0, timeoutSeconds)));
+        } catch (Exception e) {
+            return "Error executing n8n action: " + e.getMessage();
+        }
+    }
+    
+    /**
+     * Static method that returns the status of a job submitted with submitJob(...):
+     * RUNNING, SUCCEEDED, FAILED, CANCELLED, or UNKNOWN
+     */
+    public static String getJobStatus(String jobId) {
+        N8nJob job = N8nJob.get(jobId);
+        return job != null ? job.getStatus().name() : "UNKNOWN";
+    }
+    
+    /**
+     * Static method that enqueues a fire-and-forget call in the durable outbox (see N8nOutbox)
+     * Returns "Queued" once the call is stored in the journal, without waiting for n8n,
+     * or an "Error executing n8n action: ..." message
+     * Automatically converts plain text to JSON format
+     */
+    public static String enqueue(String apiKey, String webhookEndpoint, String inputData, String sessionId) {
+        try {
+            N8nOutbox.enqueue(apiKey, webhookEndpoint, inputData, sessionId);
+            return "Queued";
+        } catch (Exception e) {
+            return "Error executing n8n action: " + e.getMessage();
+        }
+    }
+    
+    /**
+     * Static method that streams the n8n response to a file instead of returning it
+     * Use for large files or reports; the response is never held in memory
+     * Automatically converts plain text to JSON format
+     * 
+     * @param filePath The file to write the raw response body to
+     * @return The file path, or an error message if the call failed
+     */
+    public static String executeToFile(String apiKey, String webhookEndpoint, String inputData, 
+                                       String sessionId, String filePath) {
+        return executeToFile(apiKey, webhookEndpoint, inputData, sessionId, filePath, null, 10);
+    }
+    
+    /**
+     * Static method that streams one response field (or the raw body) to a file
+     * Automatically converts plain text to JSON format
+     * 
+     * @param filePath The file to write the response to
+     * @param resultField The JSON field whose string value is written, or null/empty
+     *                    to write the raw response body
+     * @param timeoutMinutes Timeout in minutes for API response (default: 10)
+     * @return The file path, or an error message if the call failed
+     */
+    public static String executeToFile(String apiKey, String webhookEndpoint, String inputData, 
+                                       String sessionId, String filePath, String resultField, 
+                                       int timeoutMinutes) {
+        try {
+            if (filePath == null || filePath.trim().isEmpty()) {
+                throw new Exception("File path is required for streaming responses");
+            }
+            String jsonData = ensureJsonFormat(inputData);
+            N8nAction action = new N8nAction(apiKey, webhookEndpoint, jsonData, 
+                                           sessionId, "application/json", timeoutMinutes);
+            action.executeActionToFile(Paths.get(filePath), resultField);
+            return filePath;
+        } catch (Exception e) {
+            return "Error executing n8n action: " + e.getMessage();
+        }
+    }
+    
+    /**
+     * Static method that streams the response incrementally, e.g. the tokens of an AI
+     * agent in n8n's streaming response mode
+     * Passes the content of every event to onContent as soon as it arrives and returns
+     * the whole content, or an "Error executing n8n action: ..." message
+     * Automatically converts plain text to JSON format
+     * 
+     * @param onContent Receives the content of each event (see N8nStreamEvent.getContent())
+     */
+    public static String executeWithEvents(String apiKey, String webhookEndpoint, String inputData, 
+                                           String sessionId, Consumer<String> onContent) {
+        try {
+            String jsonData = ensureJsonFormat(inputData);
+            N8nAction action = new N8nAction(apiKey, webhookEndpoint, jsonData, 
+                                           sessionId, "application/json", 10);
+            StringBuilder content = new StringBuilder();
+            action.executeActionEvents(event -> {
+                String text = event.getContent();
+                if ("error".equals(event.getType())) {
+                    throw new IllegalStateException("n8n workflow reported an error: " 
+                                                    + (text != null ? text : event.getData()));
+                }
+                if (text != null && !text.isEmpty()) {
+                    content.append(text);
+                    if (onContent != null) {
+                        onContent.accept(text);
+                    }
+                }
+            });
+            return content.toString();
+        } catch (Exception e) {
+            return "Error executing n8n action: " + e.getMessage();
+        }
+    }
+    
+    /**
+     * Static method that streams the request body from a file
+     * Use for large inputs (e.g. tens of MB of base64 text); the file is never loaded into memory
+     * Plain text is wrapped as {"message": "..."} on the fly
+     */
+    public static String executeWithFile(String apiKey, String webhookEndpoint, String inputFilePath, 
+                                         String sessionId) {
+        return executeWithFile(apiKey, webhookEndpoint, inputFilePath, sessionId, "application/json", 10);
+    }
+    
+    /**
+     * Static method that streams the request body from a file, with custom content type and timeout
+     * Plain text is wrapped as {"message": "..."} on the fly for JSON content types; other
+     * content types are sent as-is
+     */
+    public static String executeWithFile(String apiKey, String webhookEndpoint, String inputFilePath, 
+                                         String sessionId, String contentType, int timeoutMinutes) {
+        try {
+            if (inputFilePath == null || inputFilePath.trim().isEmpty()) {
+                throw new Exception("Input file path is required");
+            }
+            N8nAction action = new N8nAction(apiKey, webhookEndpoint, Paths.get(inputFilePath), 
+                                           sessionId, contentType, timeoutMinutes, 
+                                           isJsonContentType(contentType));
+            return action.executeAction();
+        } catch (Exception e) {
+            return "Error executing n8n action: " + e.getMessage();
+        }
+    }
+    
+    /**
+     * Static method that streams the request body from an input stream, e.g. the content
+     * of a Mendix FileDocument (Core.getFileDocumentContent)
+     * Plain text is wrapped as {"message": "..."} on the fly for JSON content types; other
+     * content types are sent as-is
+     */
+    public static String executeWithStream(String apiKey, String webhookEndpoint, InputStream input, 
+                                           String sessionId, String contentType, int timeoutMinutes) {
+        try {
+            if (input == null) {
+                throw new Exception("Input stream is required");
+            }
+            N8nAction action = new N8nAction(apiKey, webhookEndpoint, input, sessionId, 
+                                           contentType, timeoutMinutes, isJsonContentType(contentType));
+            return action.executeAction();
+        } catch (Exception e) {
+            return "Error executing n8n action: " + e.getMessage();
+        }
+    }
+    
+    private static boolean isJsonContentType(String contentType) {
+        return contentType == null || contentType.toLowerCase(Locale.ROOT).contains("json");
+    }
+    
+    /**
+     * Execute many webhook calls against the same endpoint concurrently
+     * Automatically converts plain text to JSON format
+     * 
+     * @param apiKey The n8n API key for authentication (optional, can be null)
+     * @param webhookEndpoint The complete n8n webhook URL
+     * @param items The inputs and session IDs to send, one request per item
+     * @param maxConcurrency Maximum number of requests in flight at once (default: 4)
+     * @return One result per item, in input order, with per-item success/error status
+     */
+    public static List<N8nBatchResult> executeBatch(String apiKey, String webhookEndpoint, 
+                                                    List<N8nBatchItem> items, int maxConcurrency) {
+        return executeBatch(apiKey, webhookEndpoint, items, "application/json", 10, maxConcurrency);
+    }
+    
+    /**
+     * Execute many webhook calls against the same endpoint concurrently, with custom
+     * content type and timeout
+     * 
+     * Requests share the pooled connections for the endpoint. The calling thread waits
+     * for a free slot before dispatching the next item, so at most maxConcurrency
+     * requests are in flight, and returns once every item has completed.
+     * 
+     * @param apiKey The n8n API key for authentication (optional, can be null)
+     * @param webhookEndpoint The complete n8n webhook URL
+     * @param items The inputs and session IDs to send, one request per item
+     * @param contentType The content type (default: "application/json")
+     * @param timeoutMinutes Timeout in minutes for each API response (default: 10)
+     * @param maxConcurrency Maximum number of requests in flight at once (default: 4)
+     * @return One result per item, in input order, with per-item success/error status
+     */
+    public static List<N8nBatchResult> executeBatch(String apiKey, String webhookEndpoint, 
+                                                    List<N8nBatchItem> items, String contentType, 
+                                                    int timeoutMinutes, int maxConcurrency) {
+        if (items == null || items.isEmpty()) {
+            return new ArrayList<>();
+        }
+        int limit = maxConcurrency > 0 ? maxConcurrency : 4;
+        N8nLog.debug(() -> "Executing batch of " + items.size() + " n8n webhook calls (max " + limit + " in flight)");
+        
+        Semaphore inFlight = new Semaphore(limit);
+        List<CompletableFuture<N8nBatchResult>> pending = new ArrayList<>(items.size());
+        
+        for (int i = 0; i < items.size(); i++) {
+            final int index = i;
+            N8nBatchItem item = items.get(i);
+            if (item == null) {
+                pending.add(CompletableFuture.completedFuture(
+                    N8nBatchResult.failure(index, "Batch item is null")));
+                continue;
+            }
+            try {
+                inFlight.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                pending.add(CompletableFuture.completedFuture(
+                    N8nBatchResult.failure(index, "Batch execution was interrupted")));
+                continue;
+            }
+            
+            String jsonData = ensureJsonFormat(item.getInputData());
+            N8nAction action = new N8nAction(apiKey, webhookEndpoint, jsonData, 
+                                           item.getSessionId(), contentType, timeoutMinutes);
+            pending.add(action.executeActionAsync()
+                .handle((result, error) -> {
+                    inFlight.release();
+                    return error == null 
+                        ? N8nBatchResult.success(index, result) 
+                        : N8nBatchResult.failure(index, asException(error).getMessage());
+                }));
+        }
+        
+        List<N8nBatchResult> results = new ArrayList<>(pending.size());
+        for (CompletableFuture<N8nBatchResult> future : pending) {
+            results.add(future.join());
+        }
+        return results;
+    }
+    
+    /**
+     * Map a failed future to the error string returned by the static execute methods
+     */
+    private static CompletableFuture<String> asResultString(CompletableFuture<String> future) {
+        return future.exceptionally(e -> "Error executing n8n action: " + asException(e).getMessage());
+    }
 }
@@ -0,0 +1,22 @@
+package com.company.mendix.n8n;
+
+/**
+ * How an endpoint group picks the n8n instance for a call (see N8nEndpointGroup)
+ */
+public enum N8nBalancingStrategy {
+    /**
+     * The instance with the fewest calls in flight
+     */
+    LEAST_OUTSTANDING,
+    /**
+     * The instance with the lowest exponentially weighted moving average latency,
+     * weighted by its calls in flight, so a slow instance gets fewer calls
+     */
+    EWMA_LATENCY,
+    /**
+     * The instance the call's session ID hashes to (rendezvous hashing), so all calls
+     * of a session reach the same instance and adding or removing an instance only
+     * moves the sessions of that instance
+     */
+    SESSION_AFFINITY
+}
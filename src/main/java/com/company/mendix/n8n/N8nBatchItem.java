@@ -0,0 +1,30 @@
+package com.company.mendix.n8n;
+
+/**
+ * A single input of a batch webhook call
+ * 
+ * Each item is sent as its own request to the shared batch endpoint, with its own
+ * session ID for n8n Simple Memory.
+ */
+public class N8nBatchItem {
+    
+    private final String inputData;
+    private final String sessionId;
+    
+    /**
+     * @param inputData The data to send to n8n webhook (plain text is wrapped as JSON)
+     * @param sessionId The session ID for n8n Simple Memory (required)
+     */
+    public N8nBatchItem(String inputData, String sessionId) {
+        this.inputData = inputData;
+        this.sessionId = sessionId;
+    }
+    
+    public String getInputData() {
+        return inputData;
+    }
+    
+    public String getSessionId() {
+        return sessionId;
+    }
+}
@@ -0,0 +1,63 @@
+package com.company.mendix.n8n;
+
+/**
+ * Outcome of a single item of a batch webhook call
+ * 
+ * Results are returned in the same order as the batch items; index refers to the
+ * position of the item in the input list.
+ */
+public class N8nBatchResult {
+    
+    private final int index;
+    private final boolean success;
+    private final String result;
+    private final String error;
+    
+    private N8nBatchResult(int index, boolean success, String result, String error) {
+        this.index = index;
+        this.success = success;
+        this.result = result;
+        this.error = error;
+    }
+    
+    static N8nBatchResult success(int index, String result) {
+        return new N8nBatchResult(index, true, result, null);
+    }
+    
+    static N8nBatchResult failure(int index, String error) {
+        return new N8nBatchResult(index, false, null, error);
+    }
+    
+    /**
+     * @return The position of the item in the batch input list
+     */
+    public int getIndex() {
+        return index;
+    }
+    
+    /**
+     * @return True if n8n returned a successful response for this item
+     */
+    public boolean isSuccess() {
+        return success;
+    }
+    
+    /**
+     * @return The processed n8n response, or null if the call failed
+     */
+    public String getResult() {
+        return result;
+    }
+    
+    /**
+     * @return The error message, or null if the call succeeded
+     */
+    public String getError() {
+        return error;
+    }
+    
+    @Override
+    public String toString() {
+        return success ? "[" + index + "] " + result : "[" + index + "] Error: " + error;
+    }
+}
@@ -0,0 +1,86 @@
+package com.company.mendix.n8n;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Semaphore-style bulkhead limiting the number of concurrent calls
+ * 
+ * Callers that find no free slot wait in FIFO order. A released slot is handed
+ * directly to the next waiter. Waiting is done through futures, so asynchronous
+ * calls queue without blocking a thread; waiters give up after their maximum wait.
+ */
+final class N8nBulkhead {
+    
+    private final int maxConcurrent;
+    private final ArrayDeque<CompletableFuture<Void>> waiters = new ArrayDeque<>();
+    private int active;
+    
+    N8nBulkhead(int maxConcurrent) {
+        this.maxConcurrent = maxConcurrent;
+    }
+    
+    /**
+     * Take a slot
+     * 
+     * @param maxWaitNanos How long to wait for a slot; 0 to fail immediately
+     * @param rejection Creates the failure reported when no slot frees up in time
+     * @return A future completed when the slot is taken; a slot taken by the future
+     *         must be given back with release()
+     */
+    CompletableFuture<Void> acquire(long maxWaitNanos, Supplier<N8nRejectedException> rejection) {
+        CompletableFuture<Void> waiter;
+        synchronized (this) {
+            if (active < maxConcurrent) {
+                active++;
+                return CompletableFuture.completedFuture(null);
+            }
+            if (maxWaitNanos <= 0) {
+                return CompletableFuture.failedFuture(rejection.get());
+            }
+            waiter = new CompletableFuture<>();
+            waiters.add(waiter);
+        }
+        CompletableFuture.delayedExecutor(maxWaitNanos, TimeUnit.NANOSECONDS, N8nExecutors.asyncExecutor())
+            .execute(() -> {
+                if (cancel(waiter)) {
+                    waiter.completeExceptionally(rejection.get());
+                }
+            });
+        return waiter;
+    }
+    
+    /**
+     * Stop waiting for a slot
+     * 
+     * @return True if the waiter was still queued; false if it already got a slot
+     */
+    synchronized boolean cancel(CompletableFuture<Void> waiter) {
+        return waiters.remove(waiter);
+    }
+    
+    /**
+     * Give back a slot, handing it to the next waiter if there is one
+     */
+    void release() {
+        CompletableFuture<Void> next;
+        synchronized (this) {
+            next = waiters.poll();
+            if (next == null) {
+                active--;
+                return;
+            }
+        }
+        next.complete(null);
+    }
+    
+    synchronized int getActive() {
+        return active;
+    }
+    
+    synchronized int getQueued() {
+        return waiters.size();
+    }
+}
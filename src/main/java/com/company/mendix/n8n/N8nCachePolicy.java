@@ -0,0 +1,60 @@
+package com.company.mendix.n8n;
+
+import java.time.Duration;
+
+/**
+ * Caching settings of one webhook endpoint (see N8nResponseCache)
+ * 
+ * Only enable caching for workflows whose answer depends on the input alone,
+ * such as lookups, classification or enrichment.
+ */
+public final class N8nCachePolicy {
+    
+    private final Duration timeToLive;
+    private final Duration staleWhileRevalidate;
+    private final boolean perSession;
+    
+    /**
+     * @param timeToLive How long a response is served from the cache
+     */
+    public N8nCachePolicy(Duration timeToLive) {
+        this(timeToLive, Duration.ZERO, false);
+    }
+    
+    /**
+     * @param timeToLive How long a response is served from the cache
+     * @param staleWhileRevalidate How long after expiry the old response is still served
+     *                             while a fresh one is fetched in the background
+     * @param perSession True to cache responses per session ID, for workflows that use
+     *                   n8n Simple Memory and answer differently per session
+     */
+    public N8nCachePolicy(Duration timeToLive, Duration staleWhileRevalidate, boolean perSession) {
+        if (timeToLive == null || timeToLive.isNegative() || timeToLive.isZero()) {
+            throw new IllegalArgumentException("Time to live must be a positive duration");
+        }
+        if (staleWhileRevalidate == null || staleWhileRevalidate.isNegative()) {
+            throw new IllegalArgumentException("Stale-while-revalidate must not be negative");
+        }
+        this.timeToLive = timeToLive;
+        this.staleWhileRevalidate = staleWhileRevalidate;
+        this.perSession = perSession;
+    }
+    
+    public Duration getTimeToLive() {
+        return timeToLive;
+    }
+    
+    public Duration getStaleWhileRevalidate() {
+        return staleWhileRevalidate;
+    }
+    
+    public boolean isPerSession() {
+        return perSession;
+    }
+    
+    @Override
+    public String toString() {
+        return "N8nCachePolicy[timeToLive=" + timeToLive + ", staleWhileRevalidate=" 
+            + staleWhileRevalidate + ", perSession=" + perSession + "]";
+    }
+}
@@ -0,0 +1,311 @@
+package com.company.mendix.n8n;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+/**
+ * Embedded HTTP endpoint that receives the results n8n posts back for submitted jobs
+ * 
+ * With the server running, every N8nJob.submit(...) registers a pending callback and
+ * sends its URL in the x-callback-url header; the workflow ends with an HTTP Request
+ * node that POSTs its result to that URL. The waiting job then completes at once,
+ * and thousands of outstanding workflows cost one map entry each instead of a thread
+ * and a socket each (and no status polling is needed):
+ * 
+ *   N8nCallbackServer.start(8095, "http://mendix-node-1:8095");
+ *   N8nJob job = N8nJob.submit(apiKey, webhookUrl, input, sessionId, null);
+ * 
+ * Callback URLs look like publicBaseUrl/n8n-callback/{random ID}; the unguessable ID
+ * is the only credential, so it must not be logged by proxies in between. The body
+ * is interpreted like a status webhook answer (see N8nJob): a "running" status is a
+ * progress report and keeps the callback pending.
+ * 
+ * Memory is bounded: at most maxPending callbacks wait at a time (further submissions
+ * are rejected), callbacks that do not arrive within the timeout are dropped by a
+ * sweep every second and fail their job, and bodies above maxBodyBytes are refused.
+ * The server is built on the JDK's com.sun.net.httpserver, with two daemon handler
+ * threads.
+ */
+public final class N8nCallbackServer {
+    
+    /**
+     * Header carrying the callback URL on job submissions
+     */
+    public static final String CALLBACK_URL_HEADER = "x-callback-url";
+    
+    private static final String CONTEXT_PATH = "/n8n-callback/";
+    private static final long SWEEP_INTERVAL_MILLIS = 1000;
+    private static final int HANDLER_THREADS = 2;
+    
+    private static final Map<String, Registration> PENDING = new ConcurrentHashMap<>();
+    private static final AtomicInteger PENDING_COUNT = new AtomicInteger();
+    
+    private static volatile int maxPending = 10_000;
+    private static volatile Duration timeout = Duration.ofMinutes(60);
+    private static volatile int maxBodyBytes = 10 * 1024 * 1024;
+    
+    // Guarded by the class lock
+    private static HttpServer server;
+    private static ExecutorService handlers;
+    private static volatile String callbackBaseUrl;
+    // Incremented on every start and stop, so the sweep of a stopped server ends
+    private static volatile int generation;
+    
+    private N8nCallbackServer() {
+    }
+    
+    /**
+     * Start the server on all interfaces
+     * 
+     * @param port The port to listen on, or 0 for any free port
+     * @param publicBaseUrl The URL under which n8n reaches this node, e.g.
+     *                      http://mendix-node-1:8095; null for http://hostname:port
+     * @throws IOException If the port cannot be bound
+     */
+    public static void start(int port, String publicBaseUrl) throws IOException {
+        start(new InetSocketAddress(port), publicBaseUrl);
+    }
+    
+    /**
+     * Start the server
+     * 
+     * @param address The address to listen on
+     * @param publicBaseUrl The URL under which n8n reaches this node; null for http://hostname:port
+     * @throws IOException If the address cannot be bound
+     * @throws IllegalStateException If the server is already running
+     */
+    public static synchronized void start(InetSocketAddress address, String publicBaseUrl) throws IOException {
+        if (server != null) {
+            throw new IllegalStateException("Callback server is already running at " + callbackBaseUrl);
+        }
+        HttpServer created = HttpServer.create(address, 0);
+        ExecutorService executor = Executors.newFixedThreadPool(HANDLER_THREADS,
+            N8nExecutors.daemonThreadFactory("n8n-callback"));
+        created.createContext(CONTEXT_PATH, N8nCallbackServer::handle);
+        created.setExecutor(executor);
+        created.start();
+        
+        String baseUrl = publicBaseUrl;
+        if (baseUrl == null || baseUrl.trim().isEmpty()) {
+            baseUrl = "http://" + InetAddress.getLocalHost().getHostName() + ":" + created.getAddress().getPort();
+        }
+        baseUrl = baseUrl.trim();
+        while (baseUrl.endsWith("/")) {
+            baseUrl = baseUrl.substring(0, baseUrl.length() - 1);
+        }
+        server = created;
+        handlers = executor;
+        callbackBaseUrl = baseUrl + CONTEXT_PATH;
+        scheduleSweep(++generation);
+        String url = callbackBaseUrl;
+        N8nLog.info(() -> "n8n callback server listening on " + created.getAddress() + ", callbacks at " + url);
+    }
+    
+    /**
+     * Stop the server; pending callbacks fail their jobs unless the jobs are also polled
+     */
+    public static synchronized void stop() {
+        if (server == null) {
+            return;
+        }
+        generation++;
+        callbackBaseUrl = null;
+        server.stop(1);
+        handlers.shutdown();
+        server = null;
+        handlers = null;
+        for (Registration registration : PENDING.values()) {
+            if (registration.remove()) {
+                registration.onExpired.run();
+            }
+        }
+        N8nLog.info(() -> "n8n callback server stopped");
+    }
+    
+    public static boolean isRunning() {
+        return callbackBaseUrl != null;
+    }
+    
+    /**
+     * @return The address the server listens on, or null if it is not running
+     */
+    public static synchronized InetSocketAddress getAddress() {
+        return server != null ? server.getAddress() : null;
+    }
+    
+    /**
+     * Configure the bounds of the server
+     * 
+     * @param maxPendingCallbacks Callbacks that may wait at a time (default: 10000)
+     * @param callbackTimeout How long a callback may take to arrive (default: 60 minutes)
+     * @param maxBodySize Largest accepted callback body in bytes (default: 10 MB)
+     */
+    public static void setLimits(int maxPendingCallbacks, Duration callbackTimeout, int maxBodySize) {
+        if (maxPendingCallbacks < 1 || maxBodySize < 1) {
+            throw new IllegalArgumentException("Pending callbacks and body size must be at least 1");
+        }
+        if (callbackTimeout == null || callbackTimeout.isNegative() || callbackTimeout.isZero()) {
+            throw new IllegalArgumentException("Callback timeout must be a positive duration");
+        }
+        maxPending = maxPendingCallbacks;
+        timeout = callbackTimeout;
+        maxBodyBytes = maxBodySize;
+    }
+    
+    public static Duration getTimeout() {
+        return timeout;
+    }
+    
+    /**
+     * @return The number of callbacks waiting to arrive
+     */
+    public static int getPendingCount() {
+        return PENDING_COUNT.get();
+    }
+    
+    /**
+     * Register a pending callback
+     * 
+     * @param onCallback Receives each callback body; returns true if it was final, which
+     *                   removes the registration
+     * @param onExpired Runs if no final callback arrives within the timeout or the server stops
+     * @return The registration, whose callbackUrl is sent to n8n
+     * @throws N8nRejectedException If the server is not running or too many callbacks are pending
+     */
+    static Registration register(Predicate<String> onCallback, Runnable onExpired) throws N8nRejectedException {
+        String baseUrl = callbackBaseUrl;
+        if (baseUrl == null) {
+            throw new N8nRejectedException("n8n callback server is not running");
+        }
+        if (PENDING_COUNT.incrementAndGet() > maxPending) {
+            PENDING_COUNT.decrementAndGet();
+            throw new N8nRejectedException("Too many pending n8n callbacks (maximum " + maxPending + ")");
+        }
+        String id = UUID.randomUUID().toString();
+        Registration registration = new Registration(id, baseUrl + id, onCallback, onExpired,
+                                                     System.nanoTime() + timeout.toNanos());
+        PENDING.put(id, registration);
+        return registration;
+    }
+    
+    private static void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!"POST".equalsIgnoreCase(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().set("Allow", "POST");
+                respond(exchange, 405, "{\"error\":\"Method not allowed\"}");
+                return;
+            }
+            String id = exchange.getRequestURI().getPath().substring(CONTEXT_PATH.length());
+            Registration registration = PENDING.get(id);
+            if (registration == null) {
+                respond(exchange, 404, "{\"error\":\"Unknown or expired callback\"}");
+                return;
+            }
+            int limit = maxBodyBytes;
+            byte[] body = exchange.getRequestBody().readNBytes(limit + 1);
+            if (body.length > limit) {
+                respond(exchange, 413, "{\"error\":\"Callback body exceeds " + limit + " bytes\"}");
+                return;
+            }
+            boolean complete;
+            try {
+                complete = registration.onCallback.test(new String(body, StandardCharsets.UTF_8));
+            } catch (RuntimeException e) {
+                N8nLog.error("Could not process n8n callback " + id, e);
+                respond(exchange, 500, "{\"error\":\"Callback could not be processed\"}");
+                return;
+            }
+            if (complete) {
+                registration.remove();
+            }
+            respond(exchange, 200, "{\"received\":true}");
+        } finally {
+            exchange.close();
+        }
+    }
+    
+    private static void respond(HttpExchange exchange, int statusCode, String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(statusCode, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+    
+    private static void scheduleSweep(int sweepGeneration) {
+        try {
+            CompletableFuture.delayedExecutor(SWEEP_INTERVAL_MILLIS, TimeUnit.MILLISECONDS, N8nExecutors.asyncExecutor())
+                .execute(() -> {
+                    if (generation != sweepGeneration) {
+                        return;
+                    }
+                    sweep();
+                    scheduleSweep(sweepGeneration);
+                });
+        } catch (RejectedExecutionException e) {
+            N8nLog.warn("Could not schedule the n8n callback sweep; expired callbacks are no longer dropped");
+        }
+    }
+    
+    /**
+     * Drop the callbacks whose timeout has passed
+     */
+    private static void sweep() {
+        long now = System.nanoTime();
+        for (Registration registration : PENDING.values()) {
+            if (now - registration.deadlineNanos >= 0 && registration.remove()) {
+                registration.onExpired.run();
+            }
+        }
+    }
+    
+    /**
+     * A callback waiting to arrive
+     */
+    static final class Registration {
+        private final String id;
+        final String callbackUrl;
+        private final Predicate<String> onCallback;
+        private final Runnable onExpired;
+        private final long deadlineNanos;
+        
+        private Registration(String id, String callbackUrl, Predicate<String> onCallback, Runnable onExpired,
+                             long deadlineNanos) {
+            this.id = id;
+            this.callbackUrl = callbackUrl;
+            this.onCallback = onCallback;
+            this.onExpired = onExpired;
+            this.deadlineNanos = deadlineNanos;
+        }
+        
+        /**
+         * Stop waiting for the callback
+         * 
+         * @return True if it was still pending
+         */
+        boolean remove() {
+            if (PENDING.remove(id, this)) {
+                PENDING_COUNT.decrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    }
+}
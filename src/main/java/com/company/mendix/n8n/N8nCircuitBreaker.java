@@ -0,0 +1,370 @@
+package com.company.mendix.n8n;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-endpoint circuit breaker that fails fast while an n8n instance is down
+ * 
+ * Without a breaker every call to a dead n8n host waits for the connect timeout
+ * or the full response timeout, and Mendix threads pile up behind it. The breaker
+ * tracks the outcome of the last calls of each endpoint in a count-based sliding
+ * window:
+ * - CLOSED: calls pass. When at least minimumCalls are in the window and the
+ *   failure rate or the slow-call rate reaches its threshold, the breaker opens.
+ * - OPEN: calls are rejected immediately with N8nRejectedException. After the
+ *   open duration the breaker becomes half-open.
+ * - HALF_OPEN: a limited number of probe calls pass. When all probes have
+ *   completed, the breaker closes if their failure and slow-call rates are below
+ *   the thresholds, and opens again otherwise.
+ * 
+ * Failures are I/O errors (refused connections, resets, timeouts) and 5xx
+ * responses; other 4xx responses say nothing about the health of n8n. Slow calls
+ * only count once a slow-call threshold is set: workflows that normally run for
+ * minutes would otherwise open the breaker of a healthy endpoint. A call is slow
+ * when it takes at least that threshold.
+ * 
+ * Changing the configuration resets all breakers.
+ */
+public final class N8nCircuitBreaker {
+    
+    /**
+     * State of a circuit breaker
+     */
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+    
+    private static final Map<String, N8nCircuitBreaker> BREAKERS = new ConcurrentHashMap<>();
+    
+    private static volatile boolean enabled = true;
+    private static volatile int slidingWindowSize = 20;
+    private static volatile int minimumCalls = 10;
+    private static volatile double failureRateThreshold = 50;
+    private static volatile double slowCallRateThreshold = 100;
+    // No call is slow until a threshold is set
+    private static volatile long slowCallThresholdNanos = Long.MAX_VALUE;
+    private static volatile long openDurationNanos = Duration.ofSeconds(30).toNanos();
+    private static volatile int halfOpenProbes = 3;
+    
+    // Outcome flags stored in the sliding window
+    private static final byte FAILED = 1;
+    private static final byte SLOW = 2;
+    
+    private final String endpoint;
+    private final byte[] window;
+    private int windowIndex;
+    private int windowCount;
+    private int failedCount;
+    private int slowCount;
+    
+    private volatile State state = State.CLOSED;
+    private long openedAtNanos;
+    // Permits issued from this moment on are probes of the current half-open state
+    private long halfOpenSinceNanos;
+    private int probesStarted;
+    private int probesCompleted;
+    private int probeFailures;
+    private int probeSlowCalls;
+    
+    private N8nCircuitBreaker(String endpoint, int windowSize) {
+        this.endpoint = endpoint;
+        this.window = new byte[windowSize];
+    }
+    
+    /**
+     * Get the breaker of an endpoint, creating it on first use
+     * 
+     * @param webhookEndpoint The webhook URL
+     * @return The circuit breaker of the endpoint
+     */
+    public static N8nCircuitBreaker forEndpoint(String webhookEndpoint) {
+        String key = N8nMetrics.endpointKey(webhookEndpoint);
+        N8nCircuitBreaker breaker = BREAKERS.get(key);
+        if (breaker == null) {
+            breaker = BREAKERS.computeIfAbsent(key, k -> new N8nCircuitBreaker(k, slidingWindowSize));
+        }
+        return breaker;
+    }
+    
+    /**
+     * Enable or disable circuit breaking for all endpoints
+     */
+    public static void setEnabled(boolean enable) {
+        enabled = enable;
+        resetAll();
+    }
+    
+    public static boolean isEnabled() {
+        return enabled;
+    }
+    
+    /**
+     * Set the number of most recent calls the failure and slow-call rates are computed over
+     * 
+     * @param size Window size (default: 20)
+     * @param minimum Minimum number of calls in the window before the breaker can open (default: 10)
+     */
+    public static void setSlidingWindow(int size, int minimum) {
+        if (size < 1 || minimum < 1 || minimum > size) {
+            throw new IllegalArgumentException("Window size and minimum calls must be positive, minimum calls at most the window size");
+        }
+        slidingWindowSize = size;
+        minimumCalls = minimum;
+        resetAll();
+    }
+    
+    /**
+     * @param percent Failure rate in percent at which the breaker opens (default: 50)
+     */
+    public static void setFailureRateThreshold(double percent) {
+        failureRateThreshold = checkPercent(percent);
+        resetAll();
+    }
+    
+    /**
+     * Let slow calls open the breaker (by default calls are never slow)
+     * 
+     * @param threshold Duration from which a call counts as slow, e.g. 60 seconds
+     * @param percent Slow-call rate in percent at which the breaker opens, e.g. 100
+     */
+    public static void setSlowCallThreshold(Duration threshold, double percent) {
+        if (threshold == null || threshold.isNegative() || threshold.isZero()) {
+            throw new IllegalArgumentException("Slow call threshold must be a positive duration");
+        }
+        slowCallThresholdNanos = threshold.toNanos();
+        slowCallRateThreshold = checkPercent(percent);
+        resetAll();
+    }
+    
+    /**
+     * @param openDuration How long the breaker rejects calls before probing again (default: 30 seconds)
+     */
+    public static void setOpenDuration(Duration openDuration) {
+        if (openDuration == null || openDuration.isNegative()) {
+            throw new IllegalArgumentException("Open duration must not be negative");
+        }
+        openDurationNanos = openDuration.toNanos();
+        resetAll();
+    }
+    
+    /**
+     * @param probes Number of probe calls let through while half-open (default: 3)
+     */
+    public static void setHalfOpenProbes(int probes) {
+        if (probes < 1) {
+            throw new IllegalArgumentException("Half-open probes must be at least 1");
+        }
+        halfOpenProbes = probes;
+        resetAll();
+    }
+    
+    /**
+     * Close all breakers and clear their history
+     */
+    public static void resetAll() {
+        BREAKERS.clear();
+    }
+    
+    /**
+     * @return The endpoint (scheme://host:port/path) this breaker guards
+     */
+    public String getEndpoint() {
+        return endpoint;
+    }
+    
+    /**
+     * @return The current state; an open breaker whose open duration has passed is
+     *         reported as half-open
+     */
+    public synchronized State getState() {
+        if (state == State.OPEN && System.nanoTime() - openedAtNanos >= openDurationNanos) {
+            return State.HALF_OPEN;
+        }
+        return state;
+    }
+    
+    /**
+     * @return Failure rate in percent over the sliding window, or -1 if fewer than
+     *         minimumCalls calls were recorded
+     */
+    public synchronized double getFailureRate() {
+        return windowCount < minimumCalls ? -1 : 100.0 * failedCount / windowCount;
+    }
+    
+    /**
+     * @return Slow-call rate in percent over the sliding window, or -1 if fewer than
+     *         minimumCalls calls were recorded
+     */
+    public synchronized double getSlowCallRate() {
+        return windowCount < minimumCalls ? -1 : 100.0 * slowCount / windowCount;
+    }
+    
+    /**
+     * Ask permission for a call
+     * 
+     * @return The permit to pass to onResult(...): the time it was issued, which is
+     *         also the start timestamp of the call
+     * @throws N8nRejectedException If the breaker is open or all half-open probes are taken
+     */
+    synchronized long acquirePermission() throws N8nRejectedException {
+        long now = System.nanoTime();
+        if (!enabled) {
+            return now;
+        }
+        if (state == State.OPEN) {
+            if (now - openedAtNanos < openDurationNanos) {
+                throw rejected();
+            }
+            transitionTo(State.HALF_OPEN);
+            halfOpenSinceNanos = now;
+        }
+        if (state == State.HALF_OPEN) {
+            if (probesStarted >= halfOpenProbes) {
+                throw rejected();
+            }
+            probesStarted++;
+        }
+        return now;
+    }
+    
+    /**
+     * Check without taking a permit whether a call would be rejected right now, so
+     * callers can fail before waiting for other limits
+     * 
+     * @throws N8nRejectedException If the breaker is open, or half-open with all probes started
+     */
+    synchronized void checkPermission() throws N8nRejectedException {
+        if (!enabled) {
+            return;
+        }
+        if (state == State.OPEN && System.nanoTime() - openedAtNanos < openDurationNanos
+                || state == State.HALF_OPEN && probesStarted >= halfOpenProbes) {
+            throw rejected();
+        }
+    }
+    
+    /**
+     * Record the outcome of a call that was permitted by acquirePermission()
+     * 
+     * @param permit The permit returned by acquirePermission()
+     * @param durationNanos How long the call took
+     * @param statusCode The HTTP status code, or -1 if no response was received
+     * @param error The failure, or null
+     */
+    synchronized void onResult(long permit, long durationNanos, int statusCode, Throwable error) {
+        if (!enabled) {
+            return;
+        }
+        boolean failed = isFailure(statusCode, error);
+        boolean slow = durationNanos >= slowCallThresholdNanos;
+        
+        if (state == State.HALF_OPEN) {
+            if (permit - halfOpenSinceNanos < 0) {
+                // Not a probe: admitted while closed, or a probe of an earlier half-open state
+                return;
+            }
+            probesCompleted++;
+            probeFailures += failed ? 1 : 0;
+            probeSlowCalls += slow ? 1 : 0;
+            if (probesCompleted >= halfOpenProbes) {
+                boolean healthy = 100.0 * probeFailures / probesCompleted < failureRateThreshold 
+                    && 100.0 * probeSlowCalls / probesCompleted < slowCallRateThreshold;
+                transitionTo(healthy ? State.CLOSED : State.OPEN);
+            }
+            return;
+        }
+        if (state == State.OPEN) {
+            // A call that started before the breaker opened
+            return;
+        }
+        
+        record((byte) ((failed ? FAILED : 0) | (slow ? SLOW : 0)));
+        if (windowCount >= minimumCalls 
+                && (100.0 * failedCount / windowCount >= failureRateThreshold 
+                    || 100.0 * slowCount / windowCount >= slowCallRateThreshold)) {
+            transitionTo(State.OPEN);
+        }
+    }
+    
+    /**
+     * Give back the permit of a call that was abandoned without an outcome (e.g. a
+     * hedged request that lost), so it neither counts as a call nor uses up a probe
+     * 
+     * @param permit The permit returned by acquirePermission()
+     */
+    synchronized void onAbandoned(long permit) {
+        if (enabled && state == State.HALF_OPEN && permit - halfOpenSinceNanos >= 0 && probesStarted > 0) {
+            probesStarted--;
+        }
+    }
+    
+    private void record(byte outcome) {
+        if (windowCount == window.length) {
+            byte evicted = window[windowIndex];
+            failedCount -= (evicted & FAILED) != 0 ? 1 : 0;
+            slowCount -= (evicted & SLOW) != 0 ? 1 : 0;
+        } else {
+            windowCount++;
+        }
+        window[windowIndex] = outcome;
+        windowIndex = (windowIndex + 1) % window.length;
+        failedCount += (outcome & FAILED) != 0 ? 1 : 0;
+        slowCount += (outcome & SLOW) != 0 ? 1 : 0;
+    }
+    
+    private void transitionTo(State newState) {
+        State oldState = state;
+        state = newState;
+        probesStarted = 0;
+        probesCompleted = 0;
+        probeFailures = 0;
+        probeSlowCalls = 0;
+        if (newState == State.OPEN) {
+            openedAtNanos = System.nanoTime();
+        } else if (newState == State.CLOSED) {
+            windowIndex = 0;
+            windowCount = 0;
+            failedCount = 0;
+            slowCount = 0;
+        }
+        if (newState == State.OPEN) {
+            N8nLog.warn("Circuit breaker for " + endpoint + " changed from " + oldState + " to " + newState);
+        } else {
+            N8nLog.info(() -> "Circuit breaker for " + endpoint + " changed from " + oldState + " to " + newState);
+        }
+    }
+    
+    private N8nRejectedException rejected() {
+        return new N8nRejectedException("Circuit breaker is open for " + endpoint 
+            + ", n8n calls are rejected until the endpoint recovers");
+    }
+    
+    /**
+     * @return True if the outcome says the n8n instance is unhealthy: a 5xx response
+     *         or an I/O error
+     */
+    static boolean isFailure(int statusCode, Throwable error) {
+        return statusCode >= 500 || isIoFailure(error);
+    }
+    
+    private static boolean isIoFailure(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof IOException) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private static double checkPercent(double percent) {
+        if (percent <= 0 || percent > 100) {
+            throw new IllegalArgumentException("Threshold must be a percentage between 0 and 100");
+        }
+        return percent;
+    }
+}
@@ -0,0 +1,416 @@
+package com.company.mendix.n8n;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Flow;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Compression of webhook request and response bodies
+ * 
+ * Request compression is opt-in: bodies of at least the configured size are sent
+ * with Content-Encoding: gzip (n8n inflates gzip request bodies). String bodies
+ * are compressed once in memory, file and stream bodies while they are sent.
+ * 
+ *   N8nCompression.setRequestCompression(8192);
+ *   N8nCompression.setRequestCompression("https://n8n.example.com/webhook/chat", 1024);
+ * 
+ * Responses: every call sends Accept-Encoding: gzip, deflate, and compressed
+ * responses are inflated as they arrive, before the body reaches the caller.
+ * Deflate bodies are accepted zlib-wrapped (RFC 1950) as well as raw, as some
+ * servers send them. A response that inflates to more than the maximum inflated
+ * size (default: 256 MB) fails, so a small compression bomb cannot fill the heap.
+ * Bytes saved in both directions are reported in the endpoint metrics.
+ */
+public final class N8nCompression {
+    
+    /**
+     * Request compression threshold that disables compression
+     */
+    public static final int DISABLED = -1;
+    
+    static final String ACCEPT_ENCODING = "gzip, deflate";
+    
+    private static final long DEFAULT_MAX_INFLATED_BYTES = 256L * 1024 * 1024;
+    
+    private static volatile int defaultRequestThreshold = DISABLED;
+    private static volatile long maxInflatedBytes = DEFAULT_MAX_INFLATED_BYTES;
+    private static volatile boolean responseDecompression = true;
+    private static final Map<String, Integer> ENDPOINT_THRESHOLDS = new ConcurrentHashMap<>();
+    
+    private N8nCompression() {
+    }
+    
+    /**
+     * Set the request compression threshold for endpoints without their own threshold
+     * 
+     * @param minBytes Bodies of at least this many bytes are gzipped; DISABLED (the
+     *                 default) turns request compression off
+     */
+    public static void setRequestCompression(int minBytes) {
+        defaultRequestThreshold = validThreshold(minBytes);
+    }
+    
+    /**
+     * Set the request compression threshold of one endpoint (scheme, host, port and
+     * path of the webhook URL)
+     * 
+     * @param webhookEndpoint The webhook URL
+     * @param minBytes The threshold (DISABLED turns compression off for the endpoint),
+     *                 or null to use the default threshold again
+     */
+    public static void setRequestCompression(String webhookEndpoint, Integer minBytes) {
+        String key = N8nMetrics.endpointKey(webhookEndpoint);
+        if (minBytes == null) {
+            ENDPOINT_THRESHOLDS.remove(key);
+        } else {
+            ENDPOINT_THRESHOLDS.put(key, validThreshold(minBytes));
+        }
+    }
+    
+    /**
+     * Enable or disable compressed responses (Accept-Encoding and inflating)
+     * 
+     * @param enabled Whether to accept compressed responses (default: true)
+     */
+    public static void setResponseDecompression(boolean enabled) {
+        responseDecompression = enabled;
+    }
+    
+    /**
+     * Set the largest size a compressed response may inflate to
+     * 
+     * @param maxBytes The limit in bytes (default: 256 MB); larger responses fail
+     */
+    public static void setMaxInflatedBytes(long maxBytes) {
+        if (maxBytes < 1) {
+            throw new IllegalArgumentException("Maximum inflated size must be at least 1 byte");
+        }
+        maxInflatedBytes = maxBytes;
+    }
+    
+    /**
+     * @return The request compression threshold of the endpoint, or DISABLED
+     */
+    static int requestThreshold(String webhookEndpoint) {
+        if (!ENDPOINT_THRESHOLDS.isEmpty()) {
+            Integer threshold = ENDPOINT_THRESHOLDS.get(N8nMetrics.endpointKey(webhookEndpoint));
+            if (threshold != null) {
+                return threshold;
+            }
+        }
+        return defaultRequestThreshold;
+    }
+    
+    static boolean isResponseDecompressionEnabled() {
+        return responseDecompression;
+    }
+    
+    /**
+     * Wrap a body handler to inflate gzip and deflate encoded responses
+     */
+    static <T> HttpResponse.BodyHandler<T> decoding(HttpResponse.BodyHandler<T> handler,
+                                                   N8nEndpointMetrics metrics) {
+        if (!responseDecompression) {
+            return handler;
+        }
+        return responseInfo -> {
+            String encoding = responseInfo.headers().firstValue("Content-Encoding")
+                .orElse("").trim().toLowerCase(Locale.ROOT);
+            HttpResponse.BodySubscriber<T> subscriber = handler.apply(responseInfo);
+            if (encoding.equals("gzip") || encoding.equals("x-gzip")) {
+                return new InflatingBodySubscriber<>(subscriber, true, metrics, maxInflatedBytes);
+            }
+            if (encoding.equals("deflate")) {
+                return new InflatingBodySubscriber<>(subscriber, false, metrics, maxInflatedBytes);
+            }
+            return subscriber;
+        };
+    }
+    
+    private static int validThreshold(int minBytes) {
+        if (minBytes < DISABLED) {
+            throw new IllegalArgumentException("Compression threshold must be DISABLED or at least 0");
+        }
+        return minBytes;
+    }
+    
+    /**
+     * Body subscriber that inflates a gzip or deflate encoded body on the fly
+     * 
+     * Each compressed chunk is inflated as soon as it arrives and passed on, so the
+     * decoded body is never buffered as a whole and streaming callers keep constant
+     * memory. Gzip headers and trailers are parsed here, so the Inflater only sees
+     * raw deflate data; the trailer's CRC-32 and size are verified. A deflate body
+     * whose first two bytes are no zlib header is inflated as raw deflate data.
+     */
+    private static final class InflatingBodySubscriber<T> implements HttpResponse.BodySubscriber<T> {
+        private static final int CHUNK_SIZE = 16 * 1024;
+        private static final int GZIP_TRAILER_LENGTH = 8;
+        private static final int FHCRC = 2;
+        private static final int FEXTRA = 4;
+        private static final int FNAME = 8;
+        private static final int FCOMMENT = 16;
+        
+        private final HttpResponse.BodySubscriber<T> downstream;
+        private final boolean gzip;
+        private final N8nEndpointMetrics metrics;
+        private final long maxInflatedBytes;
+        // Created once the format is known; for deflate after the first two bytes
+        private Inflater inflater;
+        private final CRC32 crc = new CRC32();
+        // Gzip header or trailer bytes collected across chunks
+        private final ByteArrayOutputStream frame = new ByteArrayOutputStream();
+        private Flow.Subscription subscription;
+        private boolean headerDone;
+        private boolean done;
+        private boolean failed;
+        private long compressedBytes;
+        private long inflatedBytes;
+        
+        InflatingBodySubscriber(HttpResponse.BodySubscriber<T> downstream, boolean gzip,
+                                N8nEndpointMetrics metrics, long maxInflatedBytes) {
+            this.downstream = downstream;
+            this.gzip = gzip;
+            this.metrics = metrics;
+            this.maxInflatedBytes = maxInflatedBytes;
+            if (gzip) {
+                this.inflater = new Inflater(true);
+            }
+        }
+        
+        @Override
+        public CompletionStage<T> getBody() {
+            return downstream.getBody();
+        }
+        
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            downstream.onSubscribe(subscription);
+        }
+        
+        @Override
+        public void onNext(List<ByteBuffer> items) {
+            if (failed) {
+                return;
+            }
+            List<ByteBuffer> inflated = new ArrayList<>();
+            try {
+                for (ByteBuffer item : items) {
+                    compressedBytes += item.remaining();
+                    decode(item, inflated);
+                }
+            } catch (IOException e) {
+                fail(e);
+                return;
+            }
+            if (inflated.isEmpty()) {
+                // Nothing to pass on yet (e.g. only header bytes): keep the downstream demand
+                subscription.request(1);
+            } else {
+                downstream.onNext(inflated);
+            }
+        }
+        
+        @Override
+        public void onError(Throwable throwable) {
+            endInflater();
+            if (!failed) {
+                downstream.onError(throwable);
+            }
+        }
+        
+        @Override
+        public void onComplete() {
+            endInflater();
+            if (failed) {
+                return;
+            }
+            if (!done && compressedBytes > 0) {
+                downstream.onError(new IOException("Compressed response ended unexpectedly"));
+                return;
+            }
+            metrics.responseCompressionSaved(inflatedBytes - compressedBytes);
+            downstream.onComplete();
+        }
+        
+        private void fail(IOException e) {
+            failed = true;
+            endInflater();
+            subscription.cancel();
+            downstream.onError(e);
+        }
+        
+        private void endInflater() {
+            if (inflater != null) {
+                inflater.end();
+            }
+        }
+        
+        private void decode(ByteBuffer input, List<ByteBuffer> out) throws IOException {
+            while (input.hasRemaining() && !done) {
+                if (!headerDone && gzip) {
+                    readGzipHeader(input);
+                } else if (!headerDone) {
+                    readDeflateStart(input, out);
+                } else if (!inflater.finished()) {
+                    inflate(input, out);
+                } else if (gzip) {
+                    readGzipTrailer(input);
+                } else {
+                    done = true;
+                }
+            }
+            if (headerDone && !done && inflater.finished() && !gzip) {
+                done = true;
+            }
+        }
+        
+        private void inflate(ByteBuffer input, List<ByteBuffer> out) throws IOException {
+            inflater.setInput(input);
+            try {
+                ByteBuffer chunk = ByteBuffer.allocate(CHUNK_SIZE);
+                while (!inflater.finished()) {
+                    int start = chunk.position();
+                    int count = inflater.inflate(chunk);
+                    if (count > 0) {
+                        ByteBuffer produced = chunk.duplicate();
+                        produced.position(start).limit(start + count);
+                        crc.update(produced);
+                        inflatedBytes += count;
+                        if (inflatedBytes > maxInflatedBytes) {
+                            throw new IOException("Compressed response inflates to more than " + maxInflatedBytes
+                                                  + " bytes");
+                        }
+                    }
+                    if (!chunk.hasRemaining()) {
+                        out.add(chunk.flip());
+                        chunk = ByteBuffer.allocate(CHUNK_SIZE);
+                    } else if (count == 0) {
+                        if (inflater.needsDictionary()) {
+                            throw new IOException("Compressed response requires a preset dictionary");
+                        }
+                        break;
+                    }
+                }
+                if (chunk.position() > 0) {
+                    out.add(chunk.flip());
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("Invalid compressed response: " + e.getMessage(), e);
+            }
+        }
+        
+        /**
+         * Collect the first two bytes of a deflate body and start a zlib or raw inflater
+         * 
+         * A zlib header (RFC 1950) has compression method 8 and is a multiple of 31 as a
+         * big-endian 16-bit number; raw deflate data is unlikely to start like that.
+         */
+        private void readDeflateStart(ByteBuffer input, List<ByteBuffer> out) throws IOException {
+            while (input.hasRemaining() && frame.size() < 2) {
+                frame.write(input.get());
+            }
+            if (frame.size() < 2) {
+                return;
+            }
+            byte[] start = frame.toByteArray();
+            frame.reset();
+            int header = (start[0] & 0xff) << 8 | (start[1] & 0xff);
+            boolean zlib = (start[0] & 0x0f) == 8 && header % 31 == 0;
+            inflater = new Inflater(!zlib);
+            headerDone = true;
+            inflate(ByteBuffer.wrap(start), out);
+        }
+        
+        /**
+         * Collect the variable-length gzip header (RFC 1952) and skip it
+         */
+        private void readGzipHeader(ByteBuffer input) throws IOException {
+            while (input.hasRemaining()) {
+                frame.write(input.get());
+                byte[] header = frame.toByteArray();
+                if (header.length == 2 && ((header[0] & 0xff) != 0x1f || (header[1] & 0xff) != 0x8b)) {
+                    throw new IOException("Response is not in gzip format");
+                }
+                if (isCompleteGzipHeader(header)) {
+                    frame.reset();
+                    headerDone = true;
+                    return;
+                }
+            }
+        }
+        
+        private static boolean isCompleteGzipHeader(byte[] header) {
+            if (header.length < 10) {
+                return false;
+            }
+            int flags = header[3] & 0xff;
+            int length = 10;
+            if ((flags & FEXTRA) != 0) {
+                if (header.length < length + 2) {
+                    return false;
+                }
+                length += 2 + ((header[length] & 0xff) | (header[length + 1] & 0xff) << 8);
+            }
+            if ((flags & FNAME) != 0) {
+                length = afterZero(header, length);
+            }
+            if ((flags & FCOMMENT) != 0 && length >= 0) {
+                length = afterZero(header, length);
+            }
+            if ((flags & FHCRC) != 0 && length >= 0) {
+                length += 2;
+            }
+            return length >= 0 && header.length >= length;
+        }
+        
+        /**
+         * @return The index after the zero byte terminating the field at start, or -1
+         */
+        private static int afterZero(byte[] header, int start) {
+            for (int i = start; i < header.length; i++) {
+                if (header[i] == 0) {
+                    return i + 1;
+                }
+            }
+            return -1;
+        }
+        
+        /**
+         * Collect the gzip trailer and verify the CRC-32 and size of the inflated data
+         */
+        private void readGzipTrailer(ByteBuffer input) throws IOException {
+            while (input.hasRemaining() && frame.size() < GZIP_TRAILER_LENGTH) {
+                frame.write(input.get());
+            }
+            if (frame.size() < GZIP_TRAILER_LENGTH) {
+                return;
+            }
+            byte[] trailer = frame.toByteArray();
+            long checksum = 0;
+            long size = 0;
+            for (int i = 3; i >= 0; i--) {
+                checksum = checksum << 8 | (trailer[i] & 0xff);
+                size = size << 8 | (trailer[4 + i] & 0xff);
+            }
+            if (checksum != crc.getValue() || size != (inflatedBytes & 0xffffffffL)) {
+                throw new IOException("Corrupt gzip response: checksum or size mismatch");
+            }
+            done = true;
+            // Anything after the first gzip member is ignored
+            input.position(input.limit());
+        }
+    }
+}
@@ -0,0 +1,558 @@
+package com.company.mendix.n8n;
+
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Group of n8n instances serving the same webhooks under one logical name
+ * 
+ * Lets several n8n main/webhook instances share the load without a load balancer
+ * in front of them. A group maps a name to the base URLs of its instances, and
+ * webhook URLs of the form n8n-group://name/path are sent to one of them:
+ * 
+ *   N8nEndpointGroup.register("orders", "http://n8n-1:5678", "http://n8n-2:5678");
+ *   N8nAction.execute(apiKey, "n8n-group://orders/webhook/new-order", input, sessionId);
+ * 
+ * Every attempt, including retries, picks an instance by the group's strategy:
+ * - LEAST_OUTSTANDING: the instance with the fewest calls in flight (default)
+ * - EWMA_LATENCY: the lowest moving average latency times calls in flight
+ * - SESSION_AFFINITY: the instance the session ID hashes to, so the instance that
+ *   holds a chat's memory or cached context gets all calls of the session
+ * 
+ * Session affinity uses rendezvous (highest random weight) hashing: every instance
+ * gets a score from the hash of the session ID and its base URL and the highest
+ * score wins. Registering the group again with an instance added or removed only
+ * moves the sessions that instance gains or loses. When the preferred instance is
+ * unavailable, its sessions go to their next-ranked instance, unless the fallback
+ * is disabled with setSessionFallback(false).
+ * 
+ * A retry goes to another instance than the failed attempt when there is one,
+ * except with session affinity: there it stays on the session's instance unless that
+ * instance is ejected or its circuit breaker is open.
+ * Unhealthy instances are ejected passively: after consecutiveFailures failed calls
+ * in a row (I/O errors and 5xx responses) an instance gets no calls for the
+ * ejection time, which doubles with every repeated ejection up to the maximum.
+ * Then the instance is probed with GET baseUrl + probePath (default /healthz, which
+ * n8n answers when it is up) and re-admitted if the probe succeeds, or ejected
+ * again. Instances whose circuit breaker is open are skipped too. When no instance
+ * is available, calls are spread over all instances instead of failing outright.
+ * Instances that stay in the group when it is registered again keep their state:
+ * calls in flight, latency average and ejection.
+ * 
+ * Metrics, circuit breakers and endpoint limits apply per instance URL; the response
+ * cache, coalescing, retry and compression settings use the group URL.
+ */
+public final class N8nEndpointGroup {
+    
+    /**
+     * URL scheme of webhook URLs that address a group
+     */
+    public static final String SCHEME = "n8n-group";
+    
+    private static final String URL_PREFIX = SCHEME + "://";
+    
+    // Time constant of the latency moving average
+    private static final long EWMA_DECAY_NANOS = Duration.ofSeconds(10).toNanos();
+    
+    private static final Map<String, N8nEndpointGroup> GROUPS = new ConcurrentHashMap<>();
+    
+    private static volatile int consecutiveFailures = 3;
+    private static volatile long baseEjectionNanos = Duration.ofSeconds(30).toNanos();
+    private static volatile long maxEjectionNanos = Duration.ofMinutes(5).toNanos();
+    private static volatile String probePath = "/healthz";
+    private static volatile Duration probeTimeout = Duration.ofSeconds(10);
+    private static volatile boolean sessionFallback = true;
+    
+    private final String name;
+    private final N8nBalancingStrategy strategy;
+    private final List<Member> members;
+    private volatile boolean removed;
+    
+    /**
+     * @param previous The group registered under the name so far, whose instances are
+     *                 taken over if their base URL is listed again; may be null
+     */
+    private N8nEndpointGroup(String name, N8nBalancingStrategy strategy, List<String> baseUrls,
+                             N8nEndpointGroup previous) {
+        this.name = name;
+        this.strategy = strategy;
+        Map<String, Member> reusable = new HashMap<>();
+        if (previous != null) {
+            for (Member member : previous.members) {
+                reusable.putIfAbsent(member.baseUrl, member);
+            }
+        }
+        List<Member> list = new ArrayList<>(baseUrls.size());
+        for (String baseUrl : baseUrls) {
+            String normalized = normalizeBaseUrl(baseUrl);
+            Member member = reusable.remove(normalized);
+            if (member != null) {
+                member.group = this;
+            } else {
+                member = new Member(this, normalized);
+            }
+            list.add(member);
+        }
+        this.members = Collections.unmodifiableList(list);
+    }
+    
+    /**
+     * Register a group balanced by least outstanding calls, replacing any group
+     * with the same name
+     * 
+     * @param name The group name used as host of n8n-group:// URLs
+     * @param baseUrls Base URLs of the n8n instances, e.g. http://n8n-1:5678
+     * @return The group
+     */
+    public static N8nEndpointGroup register(String name, String... baseUrls) {
+        return register(name, N8nBalancingStrategy.LEAST_OUTSTANDING, Arrays.asList(baseUrls));
+    }
+    
+    /**
+     * Register a group, replacing any group with the same name
+     * 
+     * Instances of the replaced group whose base URL is listed again keep their calls
+     * in flight, latency average and ejection.
+     * 
+     * @param name The group name used as host of n8n-group:// URLs
+     * @param strategy How an instance is picked for each call
+     * @param baseUrls Base URLs of the n8n instances, e.g. http://n8n-1:5678
+     * @return The group
+     */
+    public static N8nEndpointGroup register(String name, N8nBalancingStrategy strategy, List<String> baseUrls) {
+        if (name == null || name.isEmpty() || !name.matches("[A-Za-z0-9.-]+")) {
+            throw new IllegalArgumentException("Group name must consist of letters, digits, '.' and '-'");
+        }
+        if (strategy == null) {
+            throw new IllegalArgumentException("Balancing strategy is required");
+        }
+        if (baseUrls == null || baseUrls.isEmpty()) {
+            throw new IllegalArgumentException("An endpoint group needs at least one base URL");
+        }
+        N8nEndpointGroup[] replaced = new N8nEndpointGroup[1];
+        N8nEndpointGroup group = GROUPS.compute(name.toLowerCase(Locale.ROOT), (key, previous) -> {
+            replaced[0] = previous;
+            return new N8nEndpointGroup(name, strategy, baseUrls, previous);
+        });
+        if (replaced[0] != null) {
+            // Stops the probes of the instances that were not taken over
+            replaced[0].removed = true;
+        }
+        return group;
+    }
+    
+    /**
+     * Remove a group; calls to its URLs fail until it is registered again
+     */
+    public static void remove(String name) {
+        N8nEndpointGroup group = GROUPS.remove(name.toLowerCase(Locale.ROOT));
+        if (group != null) {
+            group.removed = true;
+        }
+    }
+    
+    /**
+     * @return The group registered under the name, or null
+     */
+    public static N8nEndpointGroup get(String name) {
+        return GROUPS.get(name.toLowerCase(Locale.ROOT));
+    }
+    
+    /**
+     * Configure passive ejection of failing instances
+     * 
+     * @param failuresInRow Consecutive failed calls that eject an instance (default: 3)
+     * @param baseEjectionTime Ejection time of the first ejection (default: 30 seconds)
+     * @param maxEjectionTime Upper bound of the doubling ejection time (default: 5 minutes)
+     */
+    public static void setEjection(int failuresInRow, Duration baseEjectionTime, Duration maxEjectionTime) {
+        if (failuresInRow < 1) {
+            throw new IllegalArgumentException("Consecutive failures must be at least 1");
+        }
+        if (baseEjectionTime == null || baseEjectionTime.isNegative() || baseEjectionTime.isZero()
+                || maxEjectionTime == null || maxEjectionTime.compareTo(baseEjectionTime) < 0) {
+            throw new IllegalArgumentException("Ejection times must be positive, with the maximum at least the base time");
+        }
+        consecutiveFailures = failuresInRow;
+        baseEjectionNanos = baseEjectionTime.toNanos();
+        maxEjectionNanos = maxEjectionTime.toNanos();
+    }
+    
+    /**
+     * Configure the health probe sent to ejected instances
+     * 
+     * @param path Path appended to the base URL (default: /healthz)
+     * @param timeout Timeout of the probe request (default: 10 seconds)
+     */
+    public static void setProbe(String path, Duration timeout) {
+        if (path == null || !path.startsWith("/")) {
+            throw new IllegalArgumentException("Probe path must start with '/'");
+        }
+        if (timeout == null || timeout.isNegative() || timeout.isZero()) {
+            throw new IllegalArgumentException("Probe timeout must be a positive duration");
+        }
+        probePath = path;
+        probeTimeout = timeout;
+    }
+    
+    /**
+     * Configure what session affinity does when a session's instance is unavailable
+     * 
+     * @param enabled True (the default) to send the session's calls to its next-ranked
+     *                available instance; false to keep sending them to the preferred
+     *                instance, e.g. when a session must never be split across instances
+     */
+    public static void setSessionFallback(boolean enabled) {
+        sessionFallback = enabled;
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    public N8nBalancingStrategy getStrategy() {
+        return strategy;
+    }
+    
+    /**
+     * @return The base URLs of all instances
+     */
+    public List<String> getBaseUrls() {
+        List<String> urls = new ArrayList<>(members.size());
+        for (Member member : members) {
+            urls.add(member.baseUrl);
+        }
+        return urls;
+    }
+    
+    /**
+     * @return The base URLs of the instances that are not ejected
+     */
+    public List<String> getAvailableBaseUrls() {
+        List<String> urls = new ArrayList<>(members.size());
+        for (Member member : members) {
+            if (member.available) {
+                urls.add(member.baseUrl);
+            }
+        }
+        return urls;
+    }
+    
+    /**
+     * @return True if the webhook URL addresses an endpoint group
+     */
+    static boolean isGroupUrl(String webhookEndpoint) {
+        return webhookEndpoint != null && webhookEndpoint.regionMatches(true, 0, URL_PREFIX, 0, URL_PREFIX.length());
+    }
+    
+    /**
+     * Pick the instance for one attempt of a call to a group URL
+     * 
+     * @param webhookEndpoint An n8n-group:// URL
+     * @param sessionId The session ID of the call, used by SESSION_AFFINITY
+     * @param previous The instance of the failed previous attempt, avoided if possible unless
+     *                 the strategy is SESSION_AFFINITY; or null
+     * @return The selected instance; its URL for the call is resolve(webhookEndpoint)
+     * @throws Exception If no group is registered under the URL's name
+     */
+    static Member select(String webhookEndpoint, String sessionId, Member previous) throws Exception {
+        int nameEnd = URL_PREFIX.length();
+        while (nameEnd < webhookEndpoint.length() && "/?#".indexOf(webhookEndpoint.charAt(nameEnd)) < 0) {
+            nameEnd++;
+        }
+        String groupName = webhookEndpoint.substring(URL_PREFIX.length(), nameEnd);
+        N8nEndpointGroup group = get(groupName);
+        if (group == null) {
+            throw new Exception("No n8n endpoint group registered as \"" + groupName + "\"");
+        }
+        String path = webhookEndpoint.substring(nameEnd);
+        if (group.strategy == N8nBalancingStrategy.SESSION_AFFINITY) {
+            return group.pickForSession(path, sessionId);
+        }
+        Member selected = group.pick(path, previous, true);
+        if (selected == null) {
+            selected = group.pick(path, null, true);
+        }
+        return selected != null ? selected : group.pick(path, null, false);
+    }
+    
+    /**
+     * @param path Path and query of the webhook URL
+     * @param skipped An instance not to pick, or null
+     * @param availableOnly Whether to skip ejected instances and open circuit breakers
+     * @return The instance with the lowest score, or null if none qualifies
+     */
+    private Member pick(String path, Member skipped, boolean availableOnly) {
+        int count = members.size();
+        // Start at a random instance so ties are spread evenly
+        int start = ThreadLocalRandom.current().nextInt(count);
+        Member best = null;
+        double bestScore = Double.MAX_VALUE;
+        for (int i = 0; i < count; i++) {
+            Member member = members.get((start + i) % count);
+            if (member == skipped || availableOnly && !isAvailable(member, path)) {
+                continue;
+            }
+            double score = member.score(strategy);
+            if (best == null || score < bestScore) {
+                best = member;
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+    
+    /**
+     * Rendezvous hashing: the available instance with the highest weight for the session
+     * 
+     * The weights of a session rank all instances the same way on every node of the
+     * Mendix cluster, so fallbacks are as stable as the preferred instance. Retries
+     * stay on the preferred instance while it is available: one failed call must not
+     * move the session away from its memory.
+     */
+    private Member pickForSession(String path, String sessionId) {
+        long sessionHash = hash64(sessionId != null ? sessionId : "");
+        Member preferred = null;
+        Member fallback = null;
+        long preferredWeight = 0;
+        long fallbackWeight = 0;
+        for (Member member : members) {
+            long weight = mix64(sessionHash ^ member.hash);
+            if (preferred == null || Long.compareUnsigned(weight, preferredWeight) > 0) {
+                preferred = member;
+                preferredWeight = weight;
+            }
+            if (isAvailable(member, path)
+                    && (fallback == null || Long.compareUnsigned(weight, fallbackWeight) > 0)) {
+                fallback = member;
+                fallbackWeight = weight;
+            }
+        }
+        if (!sessionFallback || fallback == null) {
+            return preferred;
+        }
+        if (fallback != preferred) {
+            Member selected = fallback;
+            N8nLog.debug(() -> "Session " + sessionId + " of endpoint group " + name + " routed to "
+                               + selected.baseUrl + " instead of its unavailable instance");
+        }
+        return fallback;
+    }
+    
+    private static boolean isAvailable(Member member, String path) {
+        return member.available && !isCircuitOpen(member.baseUrl + path);
+    }
+    
+    /**
+     * 64-bit FNV-1a hash of the UTF-16 code units of a string
+     */
+    static long hash64(String text) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            hash = (hash ^ (c & 0xff)) * 0x100000001b3L;
+            hash = (hash ^ (c >>> 8)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+    
+    /**
+     * SplitMix64 finalizer, spreading every input bit over the whole result
+     */
+    static long mix64(long value) {
+        long z = value;
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+    
+    private static boolean isCircuitOpen(String url) {
+        return N8nCircuitBreaker.forEndpoint(url).getState() == N8nCircuitBreaker.State.OPEN;
+    }
+    
+    private static String normalizeBaseUrl(String baseUrl) {
+        if (baseUrl == null || !(baseUrl.startsWith("http://") || baseUrl.startsWith("https://"))) {
+            throw new IllegalArgumentException("Base URL must start with http:// or https://: " + baseUrl);
+        }
+        String trimmed = baseUrl.trim();
+        while (trimmed.endsWith("/")) {
+            trimmed = trimmed.substring(0, trimmed.length() - 1);
+        }
+        return trimmed;
+    }
+    
+    /**
+     * One n8n instance of a group with its load and health
+     */
+    static final class Member {
+        // The group the instance currently belongs to; changes when it is taken over on re-registration
+        private volatile N8nEndpointGroup group;
+        final String baseUrl;
+        // Rendezvous hashing seed, derived from the base URL only so it survives re-registration
+        private final long hash;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private volatile boolean available = true;
+        // Guarded by this
+        private double ewmaNanos;
+        private long ewmaUpdatedNanos;
+        private boolean measured;
+        private int failuresInRow;
+        private int ejections;
+        
+        Member(N8nEndpointGroup group, String baseUrl) {
+            this.group = group;
+            this.baseUrl = baseUrl;
+            this.hash = mix64(hash64(baseUrl));
+        }
+        
+        /**
+         * @param webhookEndpoint The n8n-group:// URL of the call
+         * @return The URL of the call on this instance
+         */
+        String resolve(String webhookEndpoint) {
+            int pathStart = URL_PREFIX.length() + group.name.length();
+            return baseUrl + webhookEndpoint.substring(pathStart);
+        }
+        
+        void callStarted() {
+            outstanding.incrementAndGet();
+        }
+        
+        /**
+         * End a call that was abandoned without an outcome; its latency and result are not recorded
+         */
+        void callAbandoned() {
+            outstanding.decrementAndGet();
+        }
+        
+        /**
+         * Record the outcome of a call, ejecting the instance after too many failures in a row
+         */
+        void callFinished(long durationNanos, int statusCode, Throwable error) {
+            outstanding.decrementAndGet();
+            boolean failed = N8nCircuitBreaker.isFailure(statusCode, error);
+            long ejectionNanos;
+            synchronized (this) {
+                // Failures count as at least twice the average, so fast failures do not attract calls
+                long sample = failed ? Math.max(durationNanos, 2 * (long) ewmaNanos) : durationNanos;
+                long now = System.nanoTime();
+                if (measured) {
+                    double weight = Math.exp(-(now - ewmaUpdatedNanos) / (double) EWMA_DECAY_NANOS);
+                    ewmaNanos = ewmaNanos * weight + sample * (1 - weight);
+                } else {
+                    ewmaNanos = sample;
+                    measured = true;
+                }
+                ewmaUpdatedNanos = now;
+                
+                if (!failed) {
+                    failuresInRow = 0;
+                    if (available) {
+                        ejections = 0;
+                    }
+                    return;
+                }
+                if (++failuresInRow < consecutiveFailures || !available) {
+                    return;
+                }
+                ejectionNanos = eject();
+            }
+            N8nLog.warn("n8n instance " + baseUrl + " of endpoint group " + group.name + " ejected for "
+                        + TimeUnit.NANOSECONDS.toSeconds(ejectionNanos) + " s after " + consecutiveFailures 
+                        + " consecutive failures");
+            scheduleProbe(ejectionNanos);
+        }
+        
+        private double score(N8nBalancingStrategy strategy) {
+            int inFlight = outstanding.get();
+            if (strategy == N8nBalancingStrategy.LEAST_OUTSTANDING) {
+                return inFlight;
+            }
+            synchronized (this) {
+                // Unmeasured instances score 0 so they get calls and a latency estimate
+                return (inFlight + 1) * ewmaNanos;
+            }
+        }
+        
+        /**
+         * Take the instance out of rotation
+         * 
+         * @return How long it stays ejected
+         */
+        private synchronized long eject() {
+            available = false;
+            failuresInRow = 0;
+            ejections++;
+            long ejectionNanos = baseEjectionNanos;
+            for (int i = 1; i < ejections && ejectionNanos < maxEjectionNanos; i++) {
+                ejectionNanos *= 2;
+            }
+            return Math.min(ejectionNanos, maxEjectionNanos);
+        }
+        
+        private void scheduleProbe(long delayNanos) {
+            try {
+                CompletableFuture.delayedExecutor(delayNanos, TimeUnit.NANOSECONDS, N8nExecutors.asyncExecutor())
+                    .execute(this::probe);
+            } catch (RejectedExecutionException e) {
+                // Without a probe the instance would stay ejected forever
+                readmit();
+            }
+        }
+        
+        private void probe() {
+            if (group.removed) {
+                return;
+            }
+            CompletableFuture<HttpResponse<Void>> response;
+            try {
+                URI probeUri = URI.create(baseUrl + probePath);
+                HttpRequest request = HttpRequest.newBuilder(probeUri)
+                    .GET()
+                    .timeout(probeTimeout)
+                    .build();
+                // The client of the instance's calls, so the probe also tests their connection
+                N8nHttpClientPool.PooledClient pooled =
+                    N8nHttpClientPool.getClient(probeUri, N8nAction.CONNECT_TIMEOUT);
+                response = pooled.ready.thenCompose(
+                    ready -> pooled.client.sendAsync(request, HttpResponse.BodyHandlers.discarding()));
+            } catch (RuntimeException e) {
+                response = CompletableFuture.failedFuture(e);
+            }
+            response.whenComplete((result, error) -> {
+                if (error == null && result.statusCode() >= 200 && result.statusCode() < 300) {
+                    readmit();
+                    return;
+                }
+                long ejectionNanos = eject();
+                String reason = error != null ? String.valueOf(error.getMessage()) : "status " + result.statusCode();
+                N8nLog.warn("Health probe of n8n instance " + baseUrl + " failed (" + reason + "), ejected for " 
+                            + TimeUnit.NANOSECONDS.toSeconds(ejectionNanos) + " s");
+                scheduleProbe(ejectionNanos);
+            });
+        }
+        
+        private void readmit() {
+            synchronized (this) {
+                available = true;
+                failuresInRow = 0;
+            }
+            N8nLog.info(() -> "n8n instance " + baseUrl + " of endpoint group " + group.name + " re-admitted");
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.company.mendix.n8n;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Client-side rate and concurrency limits for n8n webhook endpoints
+ * 
+ * Limits are registered per endpoint (scheme, host, port and path of the webhook
+ * URL) and combine a token-bucket rate limiter with a bulkhead that bounds the
+ * number of concurrent calls. This keeps one busy microflow from starving other
+ * workflows and keeps the load below n8n's own capacity limits instead of running
+ * into 429 responses. Endpoints without limits are not restricted.
+ * 
+ * With perApiKey set, every API key gets its own bucket and bulkhead with these
+ * limits, so one tenant cannot use up the capacity of another.
+ * 
+ *   // At most 10 calls per second (bursts of 20) and 5 at a time; wait up to 30 s
+ *   N8nEndpointLimits.setForEndpoint("https://n8n.example.com/webhook/report",
+ *       new N8nEndpointLimits(10, 20, 5, N8nOverflowPolicy.QUEUE, Duration.ofSeconds(30), false));
+ */
+public final class N8nEndpointLimits {
+    
+    private static final Map<String, N8nEndpointLimits> ENDPOINT_LIMITS = new ConcurrentHashMap<>();
+    private static final Map<String, N8nLimiter> LIMITERS = new ConcurrentHashMap<>();
+    
+    private final double requestsPerSecond;
+    private final int burst;
+    private final int maxConcurrent;
+    private final N8nOverflowPolicy overflowPolicy;
+    private final Duration maxWait;
+    private final boolean perApiKey;
+    
+    /**
+     * Create limits that queue excess calls for up to 30 seconds
+     * 
+     * @param requestsPerSecond Sustained call rate; 0 for no rate limit
+     * @param maxConcurrent Maximum number of concurrent calls; 0 for no concurrency limit
+     */
+    public N8nEndpointLimits(double requestsPerSecond, int maxConcurrent) {
+        this(requestsPerSecond, (int) Math.max(1, Math.ceil(requestsPerSecond)), maxConcurrent, 
+             N8nOverflowPolicy.QUEUE, Duration.ofSeconds(30), false);
+    }
+    
+    /**
+     * Create limits
+     * 
+     * @param requestsPerSecond Sustained call rate; 0 for no rate limit
+     * @param burst Number of calls allowed at once after an idle period (at least 1)
+     * @param maxConcurrent Maximum number of concurrent calls; 0 for no concurrency limit
+     * @param overflowPolicy QUEUE to wait for capacity, REJECT to fail immediately
+     * @param maxWait Longest wait for capacity with QUEUE
+     * @param perApiKey True to apply the limits separately to each API key
+     */
+    public N8nEndpointLimits(double requestsPerSecond, int burst, int maxConcurrent, 
+                             N8nOverflowPolicy overflowPolicy, Duration maxWait, boolean perApiKey) {
+        if (requestsPerSecond < 0 || Double.isNaN(requestsPerSecond) || Double.isInfinite(requestsPerSecond)) {
+            throw new IllegalArgumentException("Requests per second must be a non-negative number");
+        }
+        if (burst < 1) {
+            throw new IllegalArgumentException("Burst must be at least 1");
+        }
+        if (maxConcurrent < 0) {
+            throw new IllegalArgumentException("Maximum concurrent calls cannot be negative");
+        }
+        if (overflowPolicy == null) {
+            throw new IllegalArgumentException("Overflow policy is required");
+        }
+        if (maxWait == null || maxWait.isNegative()) {
+            throw new IllegalArgumentException("Maximum wait must not be negative");
+        }
+        this.requestsPerSecond = requestsPerSecond;
+        this.burst = burst;
+        this.maxConcurrent = maxConcurrent;
+        this.overflowPolicy = overflowPolicy;
+        this.maxWait = maxWait;
+        this.perApiKey = perApiKey;
+    }
+    
+    /**
+     * Set the limits of an endpoint, replacing any previous limits
+     * 
+     * Calls already waiting or running keep their previous limits.
+     * 
+     * @param webhookEndpoint The webhook URL
+     * @param limits The limits, or null to remove them
+     */
+    public static void setForEndpoint(String webhookEndpoint, N8nEndpointLimits limits) {
+        String key = N8nMetrics.endpointKey(webhookEndpoint);
+        if (limits == null) {
+            ENDPOINT_LIMITS.remove(key);
+        } else {
+            ENDPOINT_LIMITS.put(key, limits);
+        }
+        LIMITERS.keySet().removeIf(limiterKey -> limiterKey.equals(key) || limiterKey.startsWith(key + "\n"));
+    }
+    
+    /**
+     * @param webhookEndpoint The webhook URL
+     * @return The limits of the endpoint, or null if it is not limited
+     */
+    public static N8nEndpointLimits forEndpoint(String webhookEndpoint) {
+        return ENDPOINT_LIMITS.get(N8nMetrics.endpointKey(webhookEndpoint));
+    }
+    
+    /**
+     * Remove the limits of all endpoints
+     */
+    public static void clear() {
+        ENDPOINT_LIMITS.clear();
+        LIMITERS.clear();
+    }
+    
+    /**
+     * Get the limiter for a call
+     * 
+     * @return The limiter, or null if the endpoint is not limited
+     */
+    static N8nLimiter limiterFor(String webhookEndpoint, String apiKey) {
+        String endpointKey = N8nMetrics.endpointKey(webhookEndpoint);
+        N8nEndpointLimits limits = ENDPOINT_LIMITS.get(endpointKey);
+        if (limits == null) {
+            return null;
+        }
+        // API keys only live in memory as map keys; they are never logged
+        String key = limits.perApiKey ? endpointKey + "\n" + (apiKey != null ? apiKey : "") : endpointKey;
+        N8nLimiter limiter = LIMITERS.get(key);
+        if (limiter == null) {
+            limiter = LIMITERS.computeIfAbsent(key, k -> new N8nLimiter(endpointKey, limits));
+        }
+        return limiter;
+    }
+    
+    public double getRequestsPerSecond() {
+        return requestsPerSecond;
+    }
+    
+    public int getBurst() {
+        return burst;
+    }
+    
+    public int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+    
+    public N8nOverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+    
+    public Duration getMaxWait() {
+        return maxWait;
+    }
+    
+    public boolean isPerApiKey() {
+        return perApiKey;
+    }
+    
+    @Override
+    public String toString() {
+        return "N8nEndpointLimits[requestsPerSecond=" + requestsPerSecond + ", burst=" + burst 
+            + ", maxConcurrent=" + maxConcurrent + ", overflowPolicy=" + overflowPolicy 
+            + ", maxWait=" + maxWait + ", perApiKey=" + perApiKey + "]";
+    }
+}
@@ -0,0 +1,449 @@
+package com.company.mendix.n8n;
+
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Request metrics of one n8n webhook endpoint
+ * 
+ * Records request latency and time-to-first-byte histograms, request/response
+ * byte counts (as sent over the wire, plus the bytes saved by compression),
+ * status-code counts, timeouts and in-flight requests. All counters
+ * are lock-free, so recording adds no contention between concurrent calls.
+ * The state of the endpoint's circuit breaker is reported alongside.
+ * Instances are obtained from N8nMetrics.forEndpoint(...).
+ */
+public final class N8nEndpointMetrics implements N8nEndpointMetricsMXBean {
+    
+    private final String endpoint;
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder successes = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder batched = new LongAdder();
+    private final LongAdder hedges = new LongAdder();
+    private final LongAdder hedgeWins = new LongAdder();
+    private final LongAdder requestBytes = new LongAdder();
+    private final LongAdder responseBytes = new LongAdder();
+    private final LongAdder requestBytesSaved = new LongAdder();
+    private final LongAdder responseBytesSaved = new LongAdder();
+    private final AtomicLong inFlight = new AtomicLong();
+    private final Map<Integer, LongAdder> statusCodes = new ConcurrentHashMap<>();
+    private final N8nLatencyHistogram latency = new N8nLatencyHistogram();
+    private final N8nLatencyHistogram timeToFirstByte = new N8nLatencyHistogram();
+    
+    N8nEndpointMetrics(String endpoint) {
+        this.endpoint = endpoint;
+    }
+    
+    /**
+     * Record the start of a request
+     * 
+     * @return The start timestamp to pass to requestFinished(...)
+     */
+    long requestStarted() {
+        requests.increment();
+        inFlight.incrementAndGet();
+        return System.nanoTime();
+    }
+    
+    /**
+     * Record the end of a request started with requestStarted()
+     * 
+     * @param startNanos The value returned by requestStarted()
+     * @param statusCode The HTTP status code, or -1 if no response was received
+     * @param error The failure, or null if the call succeeded
+     */
+    void requestFinished(long startNanos, int statusCode, Throwable error) {
+        inFlight.decrementAndGet();
+        latency.record((System.nanoTime() - startNanos) / 1000);
+        if (statusCode > 0) {
+            statusCodes.computeIfAbsent(statusCode, code -> new LongAdder()).increment();
+        }
+        if (error == null && statusCode >= 200 && statusCode < 300) {
+            successes.increment();
+        } else {
+            failures.increment();
+        }
+        if (isTimeout(error)) {
+            timeouts.increment();
+        }
+    }
+    
+    /**
+     * Record the end of a request cancelled because a hedged request answered first;
+     * it counts as neither success nor failure, and its truncated latency is not recorded
+     */
+    void requestCancelled() {
+        inFlight.decrementAndGet();
+    }
+    
+    /**
+     * Record that a failed attempt will be retried
+     */
+    void retryScheduled() {
+        retries.increment();
+    }
+    
+    /**
+     * Record a call rejected without contacting n8n (e.g. by an open circuit breaker)
+     */
+    void requestRejected() {
+        rejected.increment();
+    }
+    
+    void cacheHit() {
+        cacheHits.increment();
+    }
+    
+    void cacheMiss() {
+        cacheMisses.increment();
+    }
+    
+    /**
+     * Record a call that joined an identical call in flight instead of going to n8n
+     */
+    void requestCoalesced() {
+        coalesced.increment();
+    }
+    
+    /**
+     * Record calls that were sent to n8n together as one micro-batch request
+     */
+    void requestsBatched(int calls) {
+        batched.add(calls);
+    }
+    
+    /**
+     * Record a hedged duplicate of a slow request
+     */
+    void hedgeSent() {
+        hedges.increment();
+    }
+    
+    /**
+     * Record a hedged request whose response was used
+     */
+    void hedgeWon() {
+        hedgeWins.increment();
+    }
+    
+    /**
+     * Record the bytes saved by compressing a request body (may be negative for
+     * bodies that do not compress)
+     */
+    void requestCompressionSaved(long bytes) {
+        requestBytesSaved.add(bytes);
+    }
+    
+    /**
+     * Record the bytes saved by receiving a compressed response body
+     */
+    void responseCompressionSaved(long bytes) {
+        responseBytesSaved.add(bytes);
+    }
+    
+    /**
+     * Wrap a body handler to record time-to-first-byte and response bytes
+     */
+    <T> HttpResponse.BodyHandler<T> meter(HttpResponse.BodyHandler<T> handler, long startNanos) {
+        return responseInfo -> {
+            timeToFirstByte.record((System.nanoTime() - startNanos) / 1000);
+            return new CountingBodySubscriber<>(handler.apply(responseInfo), responseBytes);
+        };
+    }
+    
+    /**
+     * Wrap a body publisher to record request bytes
+     */
+    HttpRequest.BodyPublisher meter(HttpRequest.BodyPublisher publisher) {
+        return new CountingBodyPublisher(publisher, requestBytes);
+    }
+    
+    N8nLatencyHistogram getLatencyHistogram() {
+        return latency;
+    }
+    
+    /**
+     * @return An immutable copy of the current values
+     */
+    public N8nMetricsSnapshot snapshot() {
+        return new N8nMetricsSnapshot(this);
+    }
+    
+    @Override
+    public String getEndpoint() {
+        return endpoint;
+    }
+    
+    @Override
+    public long getRequestCount() {
+        return requests.sum();
+    }
+    
+    @Override
+    public long getSuccessCount() {
+        return successes.sum();
+    }
+    
+    @Override
+    public long getFailureCount() {
+        return failures.sum();
+    }
+    
+    @Override
+    public long getTimeoutCount() {
+        return timeouts.sum();
+    }
+    
+    @Override
+    public long getRetryCount() {
+        return retries.sum();
+    }
+    
+    @Override
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+    
+    @Override
+    public long getCacheHitCount() {
+        return cacheHits.sum();
+    }
+    
+    @Override
+    public long getCacheMissCount() {
+        return cacheMisses.sum();
+    }
+    
+    @Override
+    public long getCoalescedCount() {
+        return coalesced.sum();
+    }
+    
+    @Override
+    public long getBatchedCount() {
+        return batched.sum();
+    }
+    
+    @Override
+    public long getHedgeCount() {
+        return hedges.sum();
+    }
+    
+    @Override
+    public long getHedgeWinCount() {
+        return hedgeWins.sum();
+    }
+    
+    @Override
+    public String getCircuitState() {
+        return N8nCircuitBreaker.forEndpoint(endpoint).getState().name();
+    }
+    
+    @Override
+    public long getInFlight() {
+        return inFlight.get();
+    }
+    
+    @Override
+    public long getRequestBytes() {
+        return requestBytes.sum();
+    }
+    
+    @Override
+    public long getResponseBytes() {
+        return responseBytes.sum();
+    }
+    
+    @Override
+    public long getRequestBytesSaved() {
+        return requestBytesSaved.sum();
+    }
+    
+    @Override
+    public long getResponseBytesSaved() {
+        return responseBytesSaved.sum();
+    }
+    
+    @Override
+    public double getLatencyMeanMillis() {
+        return latency.getMean() / 1000.0;
+    }
+    
+    @Override
+    public double getLatencyP50Millis() {
+        return latency.getValueAtPercentile(50) / 1000.0;
+    }
+    
+    @Override
+    public double getLatencyP95Millis() {
+        return latency.getValueAtPercentile(95) / 1000.0;
+    }
+    
+    @Override
+    public double getLatencyP99Millis() {
+        return latency.getValueAtPercentile(99) / 1000.0;
+    }
+    
+    @Override
+    public double getLatencyMaxMillis() {
+        return latency.getMax() / 1000.0;
+    }
+    
+    @Override
+    public double getTimeToFirstByteP50Millis() {
+        return timeToFirstByte.getValueAtPercentile(50) / 1000.0;
+    }
+    
+    @Override
+    public double getTimeToFirstByteP95Millis() {
+        return timeToFirstByte.getValueAtPercentile(95) / 1000.0;
+    }
+    
+    @Override
+    public double getTimeToFirstByteP99Millis() {
+        return timeToFirstByte.getValueAtPercentile(99) / 1000.0;
+    }
+    
+    @Override
+    public Map<String, Long> getStatusCodeCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        statusCodes.forEach((code, count) -> counts.put(String.valueOf(code), count.sum()));
+        return counts;
+    }
+    
+    @Override
+    public void reset() {
+        requests.reset();
+        successes.reset();
+        failures.reset();
+        timeouts.reset();
+        retries.reset();
+        rejected.reset();
+        cacheHits.reset();
+        cacheMisses.reset();
+        coalesced.reset();
+        batched.reset();
+        hedges.reset();
+        hedgeWins.reset();
+        requestBytes.reset();
+        responseBytes.reset();
+        requestBytesSaved.reset();
+        responseBytesSaved.reset();
+        statusCodes.clear();
+        latency.reset();
+        timeToFirstByte.reset();
+    }
+    
+    private static boolean isTimeout(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof HttpTimeoutException) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Body subscriber that counts the response bytes passing through it
+     */
+    private static final class CountingBodySubscriber<T> implements HttpResponse.BodySubscriber<T> {
+        private final HttpResponse.BodySubscriber<T> delegate;
+        private final LongAdder bytes;
+        
+        CountingBodySubscriber(HttpResponse.BodySubscriber<T> delegate, LongAdder bytes) {
+            this.delegate = delegate;
+            this.bytes = bytes;
+        }
+        
+        @Override
+        public CompletionStage<T> getBody() {
+            return delegate.getBody();
+        }
+        
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            delegate.onSubscribe(subscription);
+        }
+        
+        @Override
+        public void onNext(List<ByteBuffer> items) {
+            long count = 0;
+            for (ByteBuffer item : items) {
+                count += item.remaining();
+            }
+            bytes.add(count);
+            delegate.onNext(items);
+        }
+        
+        @Override
+        public void onError(Throwable throwable) {
+            delegate.onError(throwable);
+        }
+        
+        @Override
+        public void onComplete() {
+            delegate.onComplete();
+        }
+    }
+    
+    /**
+     * Body publisher that counts the request bytes passing through it
+     */
+    private static final class CountingBodyPublisher implements HttpRequest.BodyPublisher {
+        private final HttpRequest.BodyPublisher delegate;
+        private final LongAdder bytes;
+        
+        CountingBodyPublisher(HttpRequest.BodyPublisher delegate, LongAdder bytes) {
+            this.delegate = delegate;
+            this.bytes = bytes;
+        }
+        
+        @Override
+        public long contentLength() {
+            return delegate.contentLength();
+        }
+        
+        @Override
+        public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+            delegate.subscribe(new Flow.Subscriber<ByteBuffer>() {
+                @Override
+                public void onSubscribe(Flow.Subscription subscription) {
+                    subscriber.onSubscribe(subscription);
+                }
+                
+                @Override
+                public void onNext(ByteBuffer item) {
+                    bytes.add(item.remaining());
+                    subscriber.onNext(item);
+                }
+                
+                @Override
+                public void onError(Throwable throwable) {
+                    subscriber.onError(throwable);
+                }
+                
+                @Override
+                public void onComplete() {
+                    subscriber.onComplete();
+                }
+            });
+        }
+    }
+}
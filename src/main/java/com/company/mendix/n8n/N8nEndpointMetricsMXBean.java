@@ -0,0 +1,70 @@
+package com.company.mendix.n8n;
+
+import java.util.Map;
+
+/**
+ * JMX view of the metrics of one n8n webhook endpoint
+ * 
+ * Registered as com.company.mendix.n8n:type=EndpointMetrics,endpoint="..."
+ * Latencies are reported in milliseconds.
+ */
+public interface N8nEndpointMetricsMXBean {
+    
+    String getEndpoint();
+    
+    long getRequestCount();
+    
+    long getSuccessCount();
+    
+    long getFailureCount();
+    
+    long getTimeoutCount();
+    
+    long getRetryCount();
+    
+    long getRejectedCount();
+    
+    long getCacheHitCount();
+    
+    long getCacheMissCount();
+    
+    long getCoalescedCount();
+    
+    long getBatchedCount();
+    
+    long getHedgeCount();
+    
+    long getHedgeWinCount();
+    
+    String getCircuitState();
+    
+    long getInFlight();
+    
+    long getRequestBytes();
+    
+    long getResponseBytes();
+    
+    long getRequestBytesSaved();
+    
+    long getResponseBytesSaved();
+    
+    double getLatencyMeanMillis();
+    
+    double getLatencyP50Millis();
+    
+    double getLatencyP95Millis();
+    
+    double getLatencyP99Millis();
+    
+    double getLatencyMaxMillis();
+    
+    double getTimeToFirstByteP50Millis();
+    
+    double getTimeToFirstByteP95Millis();
+    
+    double getTimeToFirstByteP99Millis();
+    
+    Map<String, Long> getStatusCodeCounts();
+    
+    void reset();
+}
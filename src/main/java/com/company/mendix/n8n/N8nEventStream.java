@@ -0,0 +1,446 @@
+package com.company.mendix.n8n;
+
+import java.io.IOException;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Delivers the events of an incrementally streamed response to a Flow.Subscriber
+ * 
+ * Each attempt of the call gets a body subscriber from attempt(...) that decodes the
+ * response chunks as they arrive and parses them into events. The next chunk is
+ * only requested from the HTTP client once the events of the previous one have been
+ * delivered and the subscriber has demand left, so a slow subscriber holds back the
+ * connection (TCP or HTTP/2 flow control) instead of events piling up in memory.
+ * 
+ * The subscriber is subscribed once for the whole call; failed attempts that have
+ * not produced an event yet can be retried behind the same subscription.
+ */
+final class N8nEventStream implements Flow.Subscription {
+    
+    // Largest event accepted, so a stream without event boundaries cannot exhaust the heap
+    static final int MAX_EVENT_CHARS = 8 * 1024 * 1024;
+    
+    private final Flow.Subscriber<? super N8nStreamEvent> subscriber;
+    private final Queue<N8nStreamEvent> events = new ConcurrentLinkedQueue<>();
+    private final AtomicLong demand = new AtomicLong();
+    // Serializes drain(): only the thread that raised it from 0 delivers
+    private final AtomicInteger drainers = new AtomicInteger();
+    private volatile Flow.Subscription upstream;
+    private volatile boolean upstreamRequested;
+    private volatile Body body;
+    private volatile Runnable cancelAction;
+    private volatile boolean produced;
+    private volatile boolean completed;
+    private volatile Throwable failure;
+    private volatile boolean cancelled;
+    // Only touched inside drain()
+    private boolean terminated;
+    
+    N8nEventStream(Flow.Subscriber<? super N8nStreamEvent> subscriber) {
+        this.subscriber = subscriber;
+    }
+    
+    /**
+     * Subscribe the subscriber; must be called before any attempt
+     */
+    void open() {
+        subscriber.onSubscribe(this);
+    }
+    
+    /**
+     * @param serverSentEvents True for a text/event-stream response, false to read JSON values
+     * @return The body subscriber of a successful attempt
+     */
+    HttpResponse.BodySubscriber<String> attempt(boolean serverSentEvents) {
+        Body attemptBody = new Body(serverSentEvents ? new ServerSentEventParser() : new JsonValueParser());
+        body = attemptBody;
+        return attemptBody;
+    }
+    
+    /**
+     * @param action Cancels the exchange of the current attempt if the subscriber cancels
+     */
+    void onCancel(Runnable action) {
+        cancelAction = action;
+        if (cancelled) {
+            action.run();
+        }
+    }
+    
+    /**
+     * @return True once an attempt has produced an event, after which it must not be retried
+     */
+    boolean hasProduced() {
+        return produced;
+    }
+    
+    boolean isCancelled() {
+        return cancelled;
+    }
+    
+    /**
+     * Complete the subscriber after the remaining events
+     */
+    void complete() {
+        completed = true;
+        drain();
+    }
+    
+    /**
+     * Fail the subscriber, dropping undelivered events
+     */
+    void fail(Throwable error) {
+        failure = error;
+        drain();
+    }
+    
+    @Override
+    public void request(long n) {
+        if (n <= 0) {
+            fail(new IllegalArgumentException("Requested " + n + " events; must be positive (rule 3.9)"));
+            return;
+        }
+        demand.accumulateAndGet(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+        drain();
+    }
+    
+    @Override
+    public void cancel() {
+        cancelled = true;
+        Flow.Subscription current = upstream;
+        if (current != null) {
+            current.cancel();
+        }
+        Runnable action = cancelAction;
+        if (action != null) {
+            action.run();
+        }
+        Body currentBody = body;
+        if (currentBody != null) {
+            currentBody.result.cancel(false);
+        }
+    }
+    
+    /**
+     * Deliver queued events while there is demand, then request the next chunk or
+     * signal the end of the stream
+     */
+    private void drain() {
+        if (drainers.getAndIncrement() != 0) {
+            return;
+        }
+        do {
+            while (!cancelled && !terminated && demand.get() > 0) {
+                N8nStreamEvent event = events.poll();
+                if (event == null) {
+                    break;
+                }
+                if (demand.get() != Long.MAX_VALUE) {
+                    demand.decrementAndGet();
+                }
+                try {
+                    subscriber.onNext(event);
+                } catch (RuntimeException e) {
+                    // Rule 2.13: a throwing subscriber is treated as cancelled
+                    N8nLog.error("n8n event subscriber failed", e);
+                    cancel();
+                }
+            }
+            Throwable error = failure;
+            if (error != null && !cancelled && !terminated) {
+                // Errors need no demand (rule 1.4)
+                terminated = true;
+                subscriber.onError(error);
+            }
+            if (cancelled || terminated) {
+                events.clear();
+            } else if (events.isEmpty()) {
+                if (completed) {
+                    terminated = true;
+                    subscriber.onComplete();
+                } else if (demand.get() > 0 && !upstreamRequested) {
+                    Flow.Subscription current = upstream;
+                    if (current != null) {
+                        upstreamRequested = true;
+                        current.request(1);
+                    }
+                }
+            }
+        } while (drainers.decrementAndGet() != 0);
+    }
+    
+    /**
+     * Body subscriber of one attempt: decodes UTF-8 across chunk boundaries and feeds the parser
+     */
+    private final class Body implements HttpResponse.BodySubscriber<String> {
+        private final CompletableFuture<String> result = new CompletableFuture<>();
+        private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private final Parser parser;
+        // Bytes of a character split across chunks
+        private ByteBuffer leftover;
+        
+        Body(Parser parser) {
+            this.parser = parser;
+        }
+        
+        @Override
+        public CompletionStage<String> getBody() {
+            return result;
+        }
+        
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            if (cancelled) {
+                subscription.cancel();
+                return;
+            }
+            upstreamRequested = false;
+            upstream = subscription;
+            drain();
+        }
+        
+        @Override
+        public void onNext(List<ByteBuffer> items) {
+            try {
+                for (ByteBuffer item : items) {
+                    parse(item, false);
+                }
+            } catch (IOException e) {
+                upstream.cancel();
+                result.completeExceptionally(e);
+                return;
+            }
+            upstreamRequested = false;
+            drain();
+        }
+        
+        @Override
+        public void onError(Throwable throwable) {
+            result.completeExceptionally(throwable);
+        }
+        
+        @Override
+        public void onComplete() {
+            try {
+                parse(ByteBuffer.allocate(0), true);
+                parser.finish();
+            } catch (IOException e) {
+                result.completeExceptionally(e);
+                return;
+            }
+            result.complete(null);
+        }
+        
+        private void parse(ByteBuffer item, boolean endOfInput) throws IOException {
+            ByteBuffer input = item;
+            if (leftover != null) {
+                input = ByteBuffer.allocate(leftover.remaining() + item.remaining()).put(leftover).put(item).flip();
+                leftover = null;
+            }
+            // UTF-8 never decodes to more chars than bytes
+            CharBuffer chars = CharBuffer.allocate(input.remaining() + 1);
+            decoder.decode(input, chars, endOfInput);
+            if (endOfInput) {
+                decoder.flush(chars);
+            } else if (input.hasRemaining()) {
+                leftover = ByteBuffer.allocate(input.remaining()).put(input).flip();
+            }
+            chars.flip();
+            parser.feed(chars);
+        }
+    }
+    
+    private void emit(N8nStreamEvent event) {
+        produced = true;
+        events.add(event);
+    }
+    
+    /**
+     * Splits decoded text into events
+     */
+    private abstract class Parser {
+        private final StringBuilder line = new StringBuilder();
+        private boolean lastWasCarriageReturn;
+        private boolean started;
+        
+        void feed(CharBuffer chars) throws IOException {
+            while (chars.hasRemaining()) {
+                char c = chars.get();
+                if (!started) {
+                    started = true;
+                    if (c == '\uFEFF') {
+                        continue;
+                    }
+                }
+                if (c == '\n' && lastWasCarriageReturn) {
+                    // Second half of CRLF
+                    lastWasCarriageReturn = false;
+                    continue;
+                }
+                lastWasCarriageReturn = c == '\r';
+                if (c == '\n' || c == '\r') {
+                    lineEnded(line);
+                    line.setLength(0);
+                } else {
+                    if (line.length() >= MAX_EVENT_CHARS) {
+                        throw new IOException("n8n stream event exceeds " + MAX_EVENT_CHARS + " characters");
+                    }
+                    line.append(c);
+                }
+            }
+        }
+        
+        void finish() throws IOException {
+            if (line.length() > 0) {
+                lineEnded(line);
+                line.setLength(0);
+            }
+            streamEnded();
+        }
+        
+        abstract void lineEnded(CharSequence text) throws IOException;
+        
+        abstract void streamEnded() throws IOException;
+    }
+    
+    /**
+     * text/event-stream as in the HTML specification: data lines are joined until a
+     * blank line dispatches the event; comments and retry fields are ignored
+     */
+    private final class ServerSentEventParser extends Parser {
+        private final StringBuilder data = new StringBuilder();
+        private String type;
+        private String lastEventId;
+        private boolean hasData;
+        
+        @Override
+        void lineEnded(CharSequence text) throws IOException {
+            if (text.length() == 0) {
+                if (hasData) {
+                    emit(new N8nStreamEvent(type != null ? type : N8nStreamEvent.DEFAULT_TYPE,
+                                            data.toString(), lastEventId));
+                }
+                data.setLength(0);
+                hasData = false;
+                type = null;
+                return;
+            }
+            if (text.charAt(0) == ':') {
+                return;
+            }
+            String field = text.toString();
+            String value = "";
+            int colon = field.indexOf(':');
+            if (colon >= 0) {
+                value = field.substring(colon + 1);
+                if (value.startsWith(" ")) {
+                    value = value.substring(1);
+                }
+                field = field.substring(0, colon);
+            }
+            switch (field) {
+                case "data":
+                    if (data.length() + value.length() >= MAX_EVENT_CHARS) {
+                        throw new IOException("n8n stream event exceeds " + MAX_EVENT_CHARS + " characters");
+                    }
+                    if (hasData) {
+                        data.append('\n');
+                    }
+                    data.append(value);
+                    hasData = true;
+                    break;
+                case "event":
+                    type = value.isEmpty() ? null : value;
+                    break;
+                case "id":
+                    if (value.indexOf('\0') < 0) {
+                        lastEventId = value.isEmpty() ? null : value;
+                    }
+                    break;
+                default:
+                    // retry and unknown fields
+            }
+        }
+        
+        @Override
+        void streamEnded() {
+            // An event without its terminating blank line is incomplete and dropped
+        }
+    }
+    
+    /**
+     * Consecutive JSON values, e.g. NDJSON: a value ends with the line on which its
+     * brackets are balanced, so pretty-printed values spanning lines stay one event
+     */
+    private final class JsonValueParser extends Parser {
+        private final StringBuilder value = new StringBuilder();
+        private int depth;
+        private boolean inString;
+        private boolean escaped;
+        
+        @Override
+        void lineEnded(CharSequence text) throws IOException {
+            if (value.length() + text.length() >= MAX_EVENT_CHARS) {
+                throw new IOException("n8n stream event exceeds " + MAX_EVENT_CHARS + " characters");
+            }
+            if (value.length() > 0) {
+                value.append('\n');
+            }
+            value.append(text);
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (inString) {
+                    if (escaped) {
+                        escaped = false;
+                    } else if (c == '\\') {
+                        escaped = true;
+                    } else if (c == '"') {
+                        inString = false;
+                    }
+                } else if (c == '"') {
+                    inString = true;
+                } else if (c == '{' || c == '[') {
+                    depth++;
+                } else if (c == '}' || c == ']') {
+                    depth--;
+                }
+            }
+            if (depth <= 0 && !inString) {
+                emitValue();
+            }
+        }
+        
+        @Override
+        void streamEnded() {
+            emitValue();
+        }
+        
+        private void emitValue() {
+            String json = value.toString().trim();
+            value.setLength(0);
+            depth = 0;
+            inString = false;
+            escaped = false;
+            if (json.isEmpty()) {
+                return;
+            }
+            String type = json.startsWith("{") ? N8nJsonScanner.findFirstStringValue(json, "type") : null;
+            emit(new N8nStreamEvent(type != null ? type : N8nStreamEvent.DEFAULT_TYPE, json, null));
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.company.mendix.n8n;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shared, bounded executor for asynchronous n8n webhook calls
+ * 
+ * The pooled HttpClient instances and the completion stages of executeAsync(...)
+ * run on this executor instead of the JDK default (an unbounded cached thread pool).
+ * The number of threads is bounded and configurable; idle threads time out, so an
+ * executor that has been replaced by setMaxThreads(...) winds down on its own once
+ * the clients still referencing it are evicted.
+ * 
+ * On Java 21+ runtimes, asynchronous and batch calls can optionally run the blocking
+ * webhook call on a virtual thread per request (setVirtualThreadsEnabled(true)), so
+ * thousands of slow workflows can be outstanding without tying up platform threads.
+ * Virtual threads are looked up reflectively, so the JAR still targets Java 11 and
+ * falls back to the bounded executor on older runtimes.
+ */
+public final class N8nExecutors {
+    
+    private static final int DEFAULT_MAX_THREADS = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+    private static final long KEEP_ALIVE_SECONDS = 60;
+    
+    private static final AtomicInteger POOL_COUNTER = new AtomicInteger();
+    
+    private static volatile ThreadPoolExecutor asyncExecutor = newAsyncExecutor(DEFAULT_MAX_THREADS);
+    private static volatile boolean virtualThreadsEnabled = false;
+    
+    private N8nExecutors() {
+    }
+    
+    /**
+     * @return The executor used by pooled HTTP clients and async completion stages
+     */
+    static Executor asyncExecutor() {
+        return asyncExecutor;
+    }
+    
+    /**
+     * Set the maximum number of threads used for asynchronous webhook processing
+     * 
+     * Pooled HTTP clients are recreated so new calls pick up the new executor.
+     * 
+     * @param maxThreads The maximum number of threads (must be at least 1)
+     */
+    public static synchronized void setMaxThreads(int maxThreads) {
+        if (maxThreads < 1) {
+            throw new IllegalArgumentException("Maximum number of threads must be at least 1");
+        }
+        if (asyncExecutor.getMaximumPoolSize() == maxThreads) {
+            return;
+        }
+        asyncExecutor = newAsyncExecutor(maxThreads);
+        N8nHttpClientPool.clear();
+    }
+    
+    /**
+     * @return The maximum number of threads used for asynchronous webhook processing
+     */
+    public static int getMaxThreads() {
+        return asyncExecutor.getMaximumPoolSize();
+    }
+    
+    /**
+     * Run asynchronous and batch webhook calls on virtual threads (Java 21+)
+     * 
+     * Has no effect on runtimes without virtual thread support; calls then keep using
+     * HttpClient.sendAsync on the bounded executor.
+     * 
+     * @param enabled True to use one virtual thread per webhook call
+     */
+    public static void setVirtualThreadsEnabled(boolean enabled) {
+        if (enabled && !isVirtualThreadsSupported()) {
+            N8nLog.warn("Virtual threads are not supported on Java " 
+                + System.getProperty("java.version") + ", falling back to the bounded executor");
+        }
+        virtualThreadsEnabled = enabled;
+    }
+    
+    /**
+     * @return True if the running JVM supports virtual threads (Java 21+)
+     */
+    public static boolean isVirtualThreadsSupported() {
+        return VirtualThreads.EXECUTOR != null;
+    }
+    
+    /**
+     * @return True if webhook calls currently run on virtual threads
+     */
+    public static boolean isVirtualThreadsActive() {
+        return virtualThreadsEnabled && isVirtualThreadsSupported();
+    }
+    
+    /**
+     * @return The virtual-thread-per-task executor, or null if virtual threads are
+     *         disabled or not supported by the running JVM
+     */
+    static Executor virtualThreadExecutor() {
+        return virtualThreadsEnabled ? VirtualThreads.EXECUTOR : null;
+    }
+    
+    private static ThreadPoolExecutor newAsyncExecutor(int maxThreads) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(maxThreads, maxThreads,
+            KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+            daemonThreadFactory("n8n-async-" + POOL_COUNTER.incrementAndGet()));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+    
+    /**
+     * Thread factory for daemon threads, so n8n work never blocks JVM shutdown
+     */
+    static ThreadFactory daemonThreadFactory(String prefix) {
+        AtomicInteger threadCounter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+    
+    /**
+     * Lazily created virtual-thread-per-task executor, null before Java 21
+     */
+    private static final class VirtualThreads {
+        static final ExecutorService EXECUTOR = create();
+        
+        private static ExecutorService create() {
+            try {
+                // Thread.ofVirtual().name("n8n-virtual-", 0).factory()
+                Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+                Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+                builder = builderType.getMethod("name", String.class, long.class)
+                    .invoke(builder, "n8n-virtual-", 0L);
+                ThreadFactory factory = (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+                
+                // Executors.newThreadPerTaskExecutor(factory)
+                Method newExecutor = java.util.concurrent.Executors.class
+                    .getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+                return (ExecutorService) newExecutor.invoke(null, factory);
+            } catch (ReflectiveOperationException | LinkageError e) {
+                return null;
+            }
+        }
+    }
+}
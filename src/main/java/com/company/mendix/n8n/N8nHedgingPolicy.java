@@ -0,0 +1,218 @@
+package com.company.mendix.n8n;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Hedged requests for read-only webhook endpoints
+ * 
+ * When the response to a call has not arrived within the hedging delay, a duplicate
+ * request is sent (to another instance for endpoint group URLs) and the first
+ * successful response is used; the requests still in flight are cancelled. This
+ * cuts the tail latency caused by one slow n8n worker, at the cost of extra load,
+ * so it is only allowed for endpoints explicitly marked idempotent:
+ * 
+ *   N8nHedgingPolicy.setIdempotent("https://n8n.example.com/webhook/lookup", true);
+ *   N8nHedgingPolicy.setForEndpoint("https://n8n.example.com/webhook/lookup",
+ *       N8nHedgingPolicy.atObservedP95(Duration.ofMillis(200)));
+ * 
+ * The delay is either fixed or the endpoint's observed p95 latency, so about 5% of
+ * calls are hedged. The hedge budget caps the extra load: every call earns
+ * budgetPercent / 100 of a hedge, a hedge spends a whole one, and at most 10 unused
+ * hedges are saved up. When n8n is slow across the board the budget runs out and
+ * calls are no longer duplicated, instead of doubling the load on an overloaded
+ * instance.
+ * 
+ * Streaming calls (executeActionToStream/ToFile/Events) and request bodies read from an
+ * input stream are never hedged. Cancelling a request aborts its exchange on Java
+ * 16 and later; on older runtimes the loser is left to finish and its response is
+ * read and discarded. A cancelled request is recorded by neither the circuit breaker
+ * nor the group's ejection and latency average.
+ */
+public final class N8nHedgingPolicy {
+    
+    // Calls an endpoint needs before its observed p95 is used as delay
+    private static final long MIN_OBSERVED_CALLS = 20;
+    // Unused hedges saved up by the budget
+    private static final double MAX_SAVED_HEDGES = 10;
+    
+    private static final Map<String, N8nHedgingPolicy> ENDPOINT_POLICIES = new ConcurrentHashMap<>();
+    private static final Map<String, Boolean> IDEMPOTENT_ENDPOINTS = new ConcurrentHashMap<>();
+    private static final Map<String, Budget> BUDGETS = new ConcurrentHashMap<>();
+    
+    private final Duration delay;
+    private final boolean observedP95;
+    private final int maxHedges;
+    private final double budgetPercent;
+    
+    /**
+     * Create a policy that sends one hedge after a fixed delay, for at most 10% of calls
+     * 
+     * @param delay Time without a response before the hedge is sent
+     */
+    public N8nHedgingPolicy(Duration delay) {
+        this(delay, false, 1, 10);
+    }
+    
+    /**
+     * Create a policy
+     * 
+     * @param delay Time without a response before a hedge is sent; with observedP95
+     *              only used until the endpoint has enough calls for a p95
+     * @param observedP95 True to use the endpoint's observed p95 latency as delay
+     * @param maxHedges Maximum number of hedges per attempt, sent one delay apart
+     * @param budgetPercent Maximum hedges as a percentage of calls, between 0 and 100
+     */
+    public N8nHedgingPolicy(Duration delay, boolean observedP95, int maxHedges, double budgetPercent) {
+        if (delay == null || delay.isNegative()) {
+            throw new IllegalArgumentException("Hedging delay must be a non-negative duration");
+        }
+        if (maxHedges < 1) {
+            throw new IllegalArgumentException("Maximum hedges must be at least 1");
+        }
+        if (!(budgetPercent > 0 && budgetPercent <= 100)) {
+            throw new IllegalArgumentException("Hedge budget must be a percentage between 0 and 100");
+        }
+        this.delay = delay;
+        this.observedP95 = observedP95;
+        this.maxHedges = maxHedges;
+        this.budgetPercent = budgetPercent;
+    }
+    
+    /**
+     * Create a policy that sends one hedge after the endpoint's observed p95 latency,
+     * for at most 10% of calls
+     * 
+     * @param initialDelay Delay used until the endpoint has enough calls for a p95
+     */
+    public static N8nHedgingPolicy atObservedP95(Duration initialDelay) {
+        return new N8nHedgingPolicy(initialDelay, true, 1, 10);
+    }
+    
+    /**
+     * Mark an endpoint (scheme, host, port and path of the webhook URL) as idempotent:
+     * calling it twice with the same input has the same effect as calling it once
+     * 
+     * @param webhookEndpoint The webhook URL
+     * @param idempotent False also removes the endpoint's hedging policy
+     */
+    public static void setIdempotent(String webhookEndpoint, boolean idempotent) {
+        String key = N8nMetrics.endpointKey(webhookEndpoint);
+        if (idempotent) {
+            IDEMPOTENT_ENDPOINTS.put(key, Boolean.TRUE);
+        } else {
+            IDEMPOTENT_ENDPOINTS.remove(key);
+            ENDPOINT_POLICIES.remove(key);
+        }
+    }
+    
+    /**
+     * @return True if the endpoint is marked idempotent
+     */
+    public static boolean isIdempotent(String webhookEndpoint) {
+        return IDEMPOTENT_ENDPOINTS.containsKey(N8nMetrics.endpointKey(webhookEndpoint));
+    }
+    
+    /**
+     * Set the hedging policy of one endpoint
+     * 
+     * @param webhookEndpoint The webhook URL
+     * @param policy The policy, or null to stop hedging calls to the endpoint
+     * @throws IllegalArgumentException If the endpoint is not marked idempotent
+     */
+    public static void setForEndpoint(String webhookEndpoint, N8nHedgingPolicy policy) {
+        String key = N8nMetrics.endpointKey(webhookEndpoint);
+        if (policy == null) {
+            ENDPOINT_POLICIES.remove(key);
+            return;
+        }
+        if (!IDEMPOTENT_ENDPOINTS.containsKey(key)) {
+            throw new IllegalArgumentException("Hedging requires an idempotent endpoint; mark " + key
+                                               + " with setIdempotent first");
+        }
+        ENDPOINT_POLICIES.put(key, policy);
+    }
+    
+    /**
+     * @param webhookEndpoint The webhook URL
+     * @return The hedging policy of the endpoint, or null if its calls are not hedged
+     */
+    public static N8nHedgingPolicy forEndpoint(String webhookEndpoint) {
+        if (ENDPOINT_POLICIES.isEmpty()) {
+            return null;
+        }
+        return ENDPOINT_POLICIES.get(N8nMetrics.endpointKey(webhookEndpoint));
+    }
+    
+    public Duration getDelay() {
+        return delay;
+    }
+    
+    public boolean isObservedP95() {
+        return observedP95;
+    }
+    
+    public int getMaxHedges() {
+        return maxHedges;
+    }
+    
+    public double getBudgetPercent() {
+        return budgetPercent;
+    }
+    
+    /**
+     * @param metrics The metrics of the endpoint the first request went to
+     * @return The time without a response before the next hedge is sent, in milliseconds
+     */
+    long delayMillis(N8nEndpointMetrics metrics) {
+        if (observedP95 && metrics.getRequestCount() >= MIN_OBSERVED_CALLS) {
+            return (long) Math.ceil(metrics.getLatencyP95Millis());
+        }
+        return delay.toMillis();
+    }
+    
+    /**
+     * Earn the hedge budget share of one call to the endpoint
+     */
+    void callStarted(String webhookEndpoint) {
+        budget(webhookEndpoint).deposit(budgetPercent / 100);
+    }
+    
+    /**
+     * @return True if the endpoint's hedge budget allows another hedge, which is then spent
+     */
+    boolean tryHedge(String webhookEndpoint) {
+        return budget(webhookEndpoint).withdraw();
+    }
+    
+    private static Budget budget(String webhookEndpoint) {
+        return BUDGETS.computeIfAbsent(N8nMetrics.endpointKey(webhookEndpoint), key -> new Budget());
+    }
+    
+    @Override
+    public String toString() {
+        return "N8nHedgingPolicy[delay=" + delay + ", observedP95=" + observedP95 + ", maxHedges=" + maxHedges
+            + ", budgetPercent=" + budgetPercent + "]";
+    }
+    
+    /**
+     * Hedges an endpoint may still send
+     */
+    private static final class Budget {
+        // Guarded by this; starts full so the first slow calls can be hedged
+        private double hedges = MAX_SAVED_HEDGES;
+        
+        synchronized void deposit(double amount) {
+            hedges = Math.min(MAX_SAVED_HEDGES, hedges + amount);
+        }
+        
+        synchronized boolean withdraw() {
+            if (hedges < 1) {
+                return false;
+            }
+            hedges--;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,310 @@
+package com.company.mendix.n8n;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Process-wide registry of shared HttpClient instances for n8n webhook calls
+ * 
+ * Building a new HttpClient for every call costs a fresh TCP + TLS handshake and
+ * a new selector thread per request. This registry hands out one long-lived client
+ * per endpoint authority (scheme, host, port) and connection settings, so keep-alive
+ * connections are reused by all N8nAction entry points.
+ * 
+ * Clients that have not been used within the idle timeout are evicted, and the
+ * number of clients is bounded: when the bound is exceeded the least recently used
+ * client is dropped. Evicted clients finish their in-flight requests and are then
+ * released by the JVM together with their connections and selector thread.
+ * 
+ * Clients speak HTTP/1.1 unless HTTP/2 is selected with setProtocolMode, globally
+ * or per host. With HTTP/2 concurrent calls to a host share one multiplexed
+ * connection instead of opening one connection each. A new HTTP/2 client first
+ * sends one bodiless OPTIONS request to the endpoint, so the HTTP/2 connection
+ * (ALPN over TLS, h2c upgrade over plain text) exists before the first real call.
+ * Getting a client never waits for that request: asynchronous calls chain their
+ * first request onto the client's ready future, only synchronous calls block on it.
+ */
+public final class N8nHttpClientPool {
+    
+    private static final Duration DEFAULT_IDLE_TIMEOUT = Duration.ofMinutes(5);
+    private static final int DEFAULT_MAX_CLIENTS = 32;
+    
+    // Idle sweeps are cheap but not free, so run them at most this often
+    private static final long SWEEP_INTERVAL_NANOS = Duration.ofSeconds(1).toNanos();
+    
+    private static final Map<ClientKey, PooledClient> CLIENTS = new ConcurrentHashMap<>();
+    private static final Map<String, N8nProtocolMode> HOST_PROTOCOL_MODES = new ConcurrentHashMap<>();
+    
+    private static volatile long idleTimeoutNanos = DEFAULT_IDLE_TIMEOUT.toNanos();
+    private static volatile int maxClients = DEFAULT_MAX_CLIENTS;
+    private static volatile long lastSweepNanos = System.nanoTime();
+    private static volatile N8nProtocolMode defaultProtocolMode = N8nProtocolMode.HTTP_1_1;
+    
+    private N8nHttpClientPool() {
+    }
+    
+    /**
+     * Get the shared client for the given endpoint, creating it on first use
+     * 
+     * Returns at once, also while a new HTTP/2 client is still opening its connection;
+     * send the first request once the client's ready future has completed.
+     * 
+     * @param endpoint The webhook URI the client will be used for
+     * @param connectTimeout The connection timeout the client must be built with
+     * @return The shared client for the endpoint authority and settings
+     */
+    static PooledClient getClient(URI endpoint, Duration connectTimeout) {
+        ClientKey key = new ClientKey(endpoint, connectTimeout, getProtocolMode(endpoint).getVersion());
+        long now = System.nanoTime();
+        
+        PooledClient pooled = CLIENTS.get(key);
+        if (pooled == null) {
+            pooled = CLIENTS.computeIfAbsent(key, k -> createClient(k, endpoint));
+            enforceMaxClients(key);
+        }
+        pooled.lastUsedNanos = now;
+        
+        if (now - lastSweepNanos > SWEEP_INTERVAL_NANOS) {
+            lastSweepNanos = now;
+            evictIdleClients(now);
+        }
+        return pooled;
+    }
+    
+    /**
+     * Set how long an unused client is kept before it is evicted
+     * 
+     * @param idleTimeout The idle timeout (must be positive)
+     */
+    public static void setIdleTimeout(Duration idleTimeout) {
+        if (idleTimeout == null || idleTimeout.isNegative() || idleTimeout.isZero()) {
+            throw new IllegalArgumentException("Idle timeout must be a positive duration");
+        }
+        idleTimeoutNanos = idleTimeout.toNanos();
+    }
+    
+    /**
+     * Set the maximum number of clients kept in the registry
+     * 
+     * @param max The maximum number of clients (must be at least 1)
+     */
+    public static void setMaxClients(int max) {
+        if (max < 1) {
+            throw new IllegalArgumentException("Maximum number of clients must be at least 1");
+        }
+        maxClients = max;
+        enforceMaxClients(null);
+    }
+    
+    /**
+     * Set the protocol used for hosts without their own protocol mode
+     * 
+     * @param mode The protocol mode (default: HTTP_1_1)
+     */
+    public static void setProtocolMode(N8nProtocolMode mode) {
+        if (mode == null) {
+            throw new IllegalArgumentException("Protocol mode is required");
+        }
+        defaultProtocolMode = mode;
+    }
+    
+    /**
+     * Set the protocol used for one n8n host (scheme, host and port of the URL)
+     * 
+     * @param webhookEndpoint Any webhook URL on the host
+     * @param mode The protocol mode, or null to use the default mode again
+     */
+    public static void setProtocolMode(String webhookEndpoint, N8nProtocolMode mode) {
+        String authority = authorityOf(URI.create(webhookEndpoint.trim()));
+        if (mode == null) {
+            HOST_PROTOCOL_MODES.remove(authority);
+        } else {
+            HOST_PROTOCOL_MODES.put(authority, mode);
+        }
+    }
+    
+    /**
+     * @param endpoint A webhook URI
+     * @return The protocol mode used for calls to the host of the URI
+     */
+    public static N8nProtocolMode getProtocolMode(URI endpoint) {
+        if (!HOST_PROTOCOL_MODES.isEmpty()) {
+            N8nProtocolMode mode = HOST_PROTOCOL_MODES.get(authorityOf(endpoint));
+            if (mode != null) {
+                return mode;
+            }
+        }
+        return defaultProtocolMode;
+    }
+    
+    /**
+     * @return The number of clients currently held by the registry
+     */
+    public static int size() {
+        return CLIENTS.size();
+    }
+    
+    /**
+     * Drop all pooled clients; new clients are created on the next call
+     */
+    public static void clear() {
+        CLIENTS.clear();
+    }
+    
+    private static String authorityOf(URI endpoint) {
+        ClientKey key = new ClientKey(endpoint, Duration.ZERO, null);
+        return key.scheme + "://" + key.host + ":" + key.port;
+    }
+    
+    private static PooledClient createClient(ClientKey key, URI endpoint) {
+        N8nLog.debug(() -> "Creating shared HTTP client for " + key);
+        HttpClient client = HttpClient.newBuilder()
+            .version(key.version)
+            .connectTimeout(Duration.ofMillis(key.connectTimeoutMillis))
+            .executor(N8nExecutors.asyncExecutor())
+            .build();
+        PooledClient pooled = new PooledClient(client);
+        if (key.version == HttpClient.Version.HTTP_2) {
+            pooled.ready = openHttp2Connection(client, endpoint, key);
+        }
+        return pooled;
+    }
+    
+    /**
+     * Establish the HTTP/2 connection of a new client with a bodiless OPTIONS request
+     * 
+     * Without it a burst of first calls each opens its own connection while ALPN is
+     * still being negotiated, and plain-text hosts never switch to h2c because servers
+     * only accept the upgrade on requests without a body. Failures are ignored: the
+     * calls themselves then fall back to HTTP/1.1 or report the error.
+     */
+    private static CompletableFuture<Void> openHttp2Connection(HttpClient client, URI endpoint, ClientKey key) {
+        HttpRequest request = HttpRequest.newBuilder(endpoint)
+            .method("OPTIONS", HttpRequest.BodyPublishers.noBody())
+            .timeout(Duration.ofMillis(Math.max(1000, key.connectTimeoutMillis)))
+            .build();
+        return client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+            .handle((response, error) -> {
+                N8nLog.debug(() -> error == null
+                    ? "Opened " + response.version() + " connection for " + key
+                    : "Could not open HTTP/2 connection for " + key + ": " + error.getMessage());
+                return null;
+            });
+    }
+    
+    /**
+     * Remove clients that have been idle for longer than the idle timeout
+     */
+    private static void evictIdleClients(long now) {
+        long timeout = idleTimeoutNanos;
+        Iterator<Map.Entry<ClientKey, PooledClient>> it = CLIENTS.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<ClientKey, PooledClient> entry = it.next();
+            if (now - entry.getValue().lastUsedNanos > timeout) {
+                N8nLog.debug(() -> "Evicting idle HTTP client for " + entry.getKey());
+                it.remove();
+            }
+        }
+    }
+    
+    /**
+     * Drop least recently used clients until the registry is within its bound
+     * 
+     * @param keep A key that must not be evicted (the one just created), may be null
+     */
+    private static void enforceMaxClients(ClientKey keep) {
+        while (CLIENTS.size() > maxClients) {
+            ClientKey oldestKey = null;
+            long oldestUse = Long.MAX_VALUE;
+            for (Map.Entry<ClientKey, PooledClient> entry : CLIENTS.entrySet()) {
+                long lastUsed = entry.getValue().lastUsedNanos;
+                if (!entry.getKey().equals(keep) && (oldestKey == null || lastUsed - oldestUse < 0)) {
+                    oldestKey = entry.getKey();
+                    oldestUse = lastUsed;
+                }
+            }
+            if (oldestKey == null) {
+                return;
+            }
+            ClientKey evicted = oldestKey;
+            N8nLog.debug(() -> "Evicting least recently used HTTP client for " + evicted);
+            CLIENTS.remove(evicted);
+        }
+    }
+    
+    /**
+     * A pooled client with its last use timestamp
+     */
+    static final class PooledClient {
+        final HttpClient client;
+        volatile long lastUsedNanos;
+        // Completes once the client is ready for calls (see openHttp2Connection)
+        volatile CompletableFuture<Void> ready = CompletableFuture.completedFuture(null);
+        
+        private PooledClient(HttpClient client) {
+            this.client = client;
+            this.lastUsedNanos = System.nanoTime();
+        }
+        
+        /**
+         * @return The client, after waiting for it to be ready; for synchronous calls only
+         */
+        HttpClient awaitReady() {
+            CompletableFuture<Void> pending = ready;
+            if (!pending.isDone()) {
+                pending.join();
+            }
+            return client;
+        }
+    }
+    
+    /**
+     * Registry key: endpoint authority plus the settings a client is built with
+     */
+    private static final class ClientKey {
+        final String scheme;
+        final String host;
+        final int port;
+        final long connectTimeoutMillis;
+        final HttpClient.Version version;
+        
+        ClientKey(URI endpoint, Duration connectTimeout, HttpClient.Version version) {
+            this.scheme = endpoint.getScheme().toLowerCase(Locale.ROOT);
+            this.host = endpoint.getHost() != null ? endpoint.getHost().toLowerCase(Locale.ROOT) : "";
+            this.port = endpoint.getPort() != -1 ? endpoint.getPort() : ("https".equals(scheme) ? 443 : 80);
+            this.connectTimeoutMillis = connectTimeout.toMillis();
+            this.version = version;
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof ClientKey)) return false;
+            ClientKey other = (ClientKey) o;
+            return port == other.port
+                && connectTimeoutMillis == other.connectTimeoutMillis
+                && scheme.equals(other.scheme)
+                && host.equals(other.host)
+                && version == other.version;
+        }
+        
+        @Override
+        public int hashCode() {
+            return Objects.hash(scheme, host, port, connectTimeoutMillis, version);
+        }
+        
+        @Override
+        public String toString() {
+            return scheme + "://" + host + ":" + port + " (" + version + ", connect timeout " + connectTimeoutMillis + " ms)";
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.company.mendix.n8n;
+
+import java.time.Duration;
+
+/**
+ * Thrown when an n8n webhook answers with a non-2xx status code
+ * 
+ * Keeps the status code and the Retry-After hint of the response, so callers and
+ * the retry policy can tell transient failures (e.g. 503 while n8n restarts) from
+ * permanent ones.
+ */
+public class N8nHttpException extends Exception {
+    
+    private static final long serialVersionUID = 1L;
+    
+    private final int statusCode;
+    private final String responseBody;
+    private final transient Duration retryAfter;
+    
+    /**
+     * @param statusCode The HTTP status code
+     * @param responseBody The response body (or its beginning for streamed responses)
+     * @param retryAfter The delay requested by a Retry-After header, or null
+     */
+    public N8nHttpException(int statusCode, String responseBody, Duration retryAfter) {
+        super("Webhook request failed with status code: " + statusCode + ". Response: " + responseBody);
+        this.statusCode = statusCode;
+        this.responseBody = responseBody;
+        this.retryAfter = retryAfter;
+    }
+    
+    /**
+     * @return The HTTP status code returned by n8n
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+    
+    /**
+     * @return The response body
+     */
+    public String getResponseBody() {
+        return responseBody;
+    }
+    
+    /**
+     * @return The delay requested by the Retry-After response header, or null if absent
+     */
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
@@ -0,0 +1,381 @@
+package com.company.mendix.n8n;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Long-running workflow submitted as a job instead of a blocking call
+ * 
+ * A blocking call to a 30-minute workflow holds a Mendix thread and an HTTP
+ * connection for 30 minutes. A job is submitted with a short call instead, and its
+ * completion is observed by polling or received as a callback, so waiting costs
+ * neither a thread nor a socket:
+ * 
+ *   N8nJob job = N8nJob.submit(apiKey, "https://n8n.example.com/webhook/report",
+ *       input, sessionId, "https://n8n.example.com/webhook/report-status");
+ *   String jobId = job.getJobId();         // e.g. store it on a Mendix object
+ *   ...
+ *   String result = N8nJob.get(jobId).await(Duration.ofSeconds(5));
+ * 
+ * Protocol (n8n "respond immediately" pattern):
+ * - The submission POSTs the input to the workflow webhook with a generated job ID
+ *   in the x-job-id header. The webhook responds immediately; if its response has a
+ *   "jobId" field, that ID is used instead (e.g. the n8n execution ID).
+ * - Every poll POSTs {"jobId": "..."} (and the x-job-id header) to the status webhook.
+ *   An empty body, HTTP 404, or a "status" of new, running, waiting, pending or
+ *   queued means the job is still running; error, failed, crashed or canceled means
+ *   it failed (the "error" or "message" field is the reason). Any other answer is
+ *   the final response, and its result is extracted like that of a normal call.
+ * 
+ * With a running N8nCallbackServer, the submission also carries a callback URL in
+ * the x-callback-url header. A body POSTed there by the workflow is interpreted like
+ * a poll answer and completes the job without waiting for the next poll; the status
+ * webhook is then optional. A job without status webhook fails if no final callback
+ * arrives within the callback timeout of the server.
+ * 
+ * Polls are scheduled with a delayed executor and back off according to the
+ * N8nPollingPolicy of the status webhook. Transient poll failures (e.g. n8n
+ * restarting) do not fail the job. Finished jobs stay available through get(jobId)
+ * for the retention time (default: 10 minutes).
+ */
+public final class N8nJob {
+    
+    /**
+     * Header carrying the job ID on submissions and polls
+     */
+    public static final String JOB_ID_HEADER = "x-job-id";
+    
+    // Weight of the latest job in the typical job duration of a status webhook
+    private static final double TYPICAL_DURATION_WEIGHT = 0.2;
+    
+    private static final Map<String, N8nJob> JOBS = new ConcurrentHashMap<>();
+    private static final Map<String, Double> TYPICAL_DURATIONS = new ConcurrentHashMap<>();
+    
+    private static volatile Duration retention = Duration.ofMinutes(10);
+    
+    private volatile String jobId;
+    private final String apiKey;
+    private final String sessionId;
+    private final String statusWebhook;
+    private final N8nPollingPolicy pollingPolicy;
+    private final long submittedNanos = System.nanoTime();
+    private final CompletableFuture<String> result = new CompletableFuture<>();
+    // Only touched by the poll chain, which runs one poll at a time
+    private int polls;
+    private volatile CompletableFuture<String> currentPoll;
+    private volatile N8nCallbackServer.Registration callback;
+    
+    private N8nJob(String jobId, String apiKey, String sessionId, String statusWebhook) {
+        this.jobId = jobId;
+        this.apiKey = apiKey;
+        this.sessionId = sessionId;
+        this.statusWebhook = statusWebhook;
+        this.pollingPolicy = N8nPollingPolicy.forEndpoint(statusWebhook);
+    }
+    
+    /**
+     * Submit a workflow as a job and start polling its status webhook
+     * 
+     * Plain text input is wrapped as {"message": "..."} like in N8nAction.execute(...).
+     * If the N8nCallbackServer is running, a callback URL is sent along as well.
+     * 
+     * @param apiKey The n8n API key for authentication (optional, can be null)
+     * @param webhookEndpoint The webhook URL of the workflow, which must respond immediately
+     * @param inputData The data to send to the workflow
+     * @param sessionId The session ID for n8n Simple Memory (required)
+     * @param statusWebhook The webhook URL that reports the status of a job (optional
+     *                      while the N8nCallbackServer is running, can be null)
+     * @return The job
+     * @throws Exception If the submission fails
+     */
+    public static N8nJob submit(String apiKey, String webhookEndpoint, String inputData,
+                                String sessionId, String statusWebhook) throws Exception {
+        boolean polled = statusWebhook != null && !statusWebhook.trim().isEmpty();
+        if (!polled && !N8nCallbackServer.isRunning()) {
+            throw new Exception("Status webhook or a running N8nCallbackServer is required to observe job completion");
+        }
+        String correlationId = UUID.randomUUID().toString();
+        N8nJob job = new N8nJob(correlationId, apiKey, sessionId, polled ? statusWebhook : null);
+        N8nAction submission = new N8nAction(apiKey, webhookEndpoint, N8nAction.ensureJsonFormat(inputData),
+                                             sessionId, "application/json", 1)
+            .withHeader(JOB_ID_HEADER, correlationId)
+            .withRawResponse();
+        if (N8nCallbackServer.isRunning()) {
+            // Registered before submitting, so a quick workflow cannot call back too early
+            try {
+                job.callback = N8nCallbackServer.register(job::callbackReceived, job::callbackExpired);
+                submission.withHeader(N8nCallbackServer.CALLBACK_URL_HEADER, job.callback.callbackUrl);
+            } catch (N8nRejectedException e) {
+                if (!polled) {
+                    throw e;
+                }
+                N8nLog.debug(() -> "No callback for n8n job " + correlationId + ", polling only: " + e.getMessage());
+            }
+        }
+        String response;
+        try {
+            response = submission.executeUncached();
+        } catch (Exception e) {
+            if (job.callback != null) {
+                job.callback.remove();
+            }
+            throw e;
+        }
+        String assignedId = N8nJsonScanner.findFirstStringValue(response, "jobId");
+        if (assignedId != null && !assignedId.isEmpty()) {
+            job.jobId = assignedId;
+        }
+        
+        String jobId = job.jobId;
+        JOBS.put(jobId, job);
+        N8nLog.debug(() -> "Submitted n8n job " + jobId + " to endpoint: " + webhookEndpoint);
+        if (polled) {
+            job.schedulePoll();
+        }
+        return job;
+    }
+    
+    /**
+     * @return The job with the ID, or null if it is unknown or its retention time has passed
+     */
+    public static N8nJob get(String jobId) {
+        return jobId != null ? JOBS.get(jobId) : null;
+    }
+    
+    /**
+     * Set how long finished jobs stay available through get(jobId)
+     */
+    public static void setRetention(Duration time) {
+        if (time == null || time.isNegative()) {
+            throw new IllegalArgumentException("Retention must be a non-negative duration");
+        }
+        retention = time;
+    }
+    
+    public String getJobId() {
+        return jobId;
+    }
+    
+    public N8nJobStatus getStatus() {
+        if (!result.isDone()) {
+            return N8nJobStatus.RUNNING;
+        }
+        if (result.isCancelled()) {
+            return N8nJobStatus.CANCELLED;
+        }
+        return result.isCompletedExceptionally() ? N8nJobStatus.FAILED : N8nJobStatus.SUCCEEDED;
+    }
+    
+    public boolean isDone() {
+        return result.isDone();
+    }
+    
+    /**
+     * @return A future completed with the result of the job; cancelling it does not
+     *         cancel the job (use cancel())
+     */
+    public CompletableFuture<String> getResult() {
+        return result.copy();
+    }
+    
+    /**
+     * Wait for the result of the job
+     * 
+     * @param timeout How long to wait; the job keeps running if it has not finished
+     * @return The result of the job
+     * @throws Exception If the job failed or was cancelled, or is still running after the timeout
+     */
+    public String await(Duration timeout) throws Exception {
+        try {
+            return result.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new Exception("n8n job " + jobId + " is still running");
+        } catch (CancellationException e) {
+            throw new Exception("n8n job " + jobId + " was cancelled");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : new Exception(cause);
+        }
+    }
+    
+    /**
+     * Stop waiting for the job: polling and callbacks stop and waiting callers get a cancellation
+     * 
+     * The n8n execution itself is not stopped.
+     * 
+     * @return True if the job was still running
+     */
+    public boolean cancel() {
+        // Unlike cancel(...), this tells whether this call cancelled the job
+        if (!result.completeExceptionally(new CancellationException("n8n job " + jobId + " was cancelled"))) {
+            return false;
+        }
+        N8nLog.info(() -> "n8n job " + jobId + " cancelled");
+        finished();
+        return true;
+    }
+    
+    private void schedulePoll() {
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - submittedNanos);
+        double typicalMillis = TYPICAL_DURATIONS.getOrDefault(N8nMetrics.endpointKey(statusWebhook), 0.0);
+        long delayMillis = pollingPolicy.pollDelayMillis(polls + 1, elapsedMillis, typicalMillis);
+        if (delayMillis < 0) {
+            fail(new Exception("n8n job " + jobId + " did not finish within " + pollingPolicy.getJobTimeout()));
+            return;
+        }
+        try {
+            CompletableFuture.delayedExecutor(delayMillis, TimeUnit.MILLISECONDS, N8nExecutors.asyncExecutor())
+                .execute(this::poll);
+        } catch (RejectedExecutionException e) {
+            fail(new Exception("Could not schedule status poll of n8n job " + jobId, e));
+        }
+    }
+    
+    private void poll() {
+        if (result.isDone()) {
+            return;
+        }
+        polls++;
+        CompletableFuture<String> call = new N8nAction(apiKey, statusWebhook,
+                "{\"jobId\":\"" + N8nMetricsSnapshot.escapeJson(jobId) + "\"}", sessionId, "application/json", 1)
+            .withHeader(JOB_ID_HEADER, jobId)
+            .withRawResponse()
+            .executeUncachedAsync();
+        currentPoll = call;
+        call.whenComplete((body, error) -> {
+            if (error != null) {
+                pollFailed(error);
+            } else if (!statusReceived(body)) {
+                schedulePoll();
+            }
+        });
+    }
+    
+    /**
+     * @return True if the callback was final
+     */
+    private boolean callbackReceived(String body) {
+        N8nLog.debug(() -> "Received callback for n8n job " + jobId);
+        return statusReceived(body) || result.isDone();
+    }
+    
+    private void callbackExpired() {
+        if (statusWebhook != null) {
+            // Polling still observes the job
+            return;
+        }
+        if (!N8nCallbackServer.isRunning()) {
+            fail(new Exception("n8n job " + jobId + " can no longer call back: the callback server was stopped"));
+        } else {
+            fail(new Exception("n8n job " + jobId + " did not call back within " + N8nCallbackServer.getTimeout()));
+        }
+    }
+    
+    /**
+     * Interpret a poll answer or callback body
+     * 
+     * @return False if the job is still running
+     */
+    private boolean statusReceived(String body) {
+        String status = body.trim().isEmpty() ? "running" : N8nJsonScanner.findFirstStringValue(body, "status");
+        String state = status != null ? status.trim().toLowerCase(Locale.ROOT) : "";
+        switch (state) {
+            case "new":
+            case "running":
+            case "waiting":
+            case "pending":
+            case "queued":
+                return false;
+            case "error":
+            case "failed":
+            case "crashed":
+            case "canceled":
+            case "cancelled":
+                String reason = N8nJsonScanner.findFirstStringValue(body, "error", "message");
+                fail(new Exception("n8n job " + jobId + " failed: " + (reason != null ? reason : body)));
+                return true;
+            default:
+                complete(N8nAction.processSuccessResponse(body));
+                return true;
+        }
+    }
+    
+    /**
+     * Keep polling after transient failures; fail the job on permanent ones
+     */
+    private void pollFailed(Throwable error) {
+        if (result.isDone()) {
+            return;
+        }
+        N8nHttpException httpError = null;
+        boolean ioFailure = false;
+        boolean rejected = false;
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof N8nHttpException && httpError == null) {
+                httpError = (N8nHttpException) cause;
+            }
+            ioFailure |= cause instanceof IOException;
+            rejected |= cause instanceof N8nRejectedException;
+        }
+        boolean keepPolling = ioFailure || rejected
+            || httpError != null && (httpError.getStatusCode() == 404
+                || N8nRetryPolicy.forEndpoint(statusWebhook).isRetryable(httpError));
+        if (keepPolling) {
+            schedulePoll();
+        } else {
+            fail(new Exception("Status poll of n8n job " + jobId + " failed: " + error.getMessage(), error));
+        }
+    }
+    
+    private void complete(String value) {
+        if (!result.complete(value)) {
+            return;
+        }
+        long durationMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - submittedNanos);
+        if (statusWebhook != null) {
+            TYPICAL_DURATIONS.merge(N8nMetrics.endpointKey(statusWebhook), (double) durationMillis,
+                (typical, latest) -> typical * (1 - TYPICAL_DURATION_WEIGHT) + latest * TYPICAL_DURATION_WEIGHT);
+        }
+        N8nLog.debug(() -> "n8n job " + jobId + " finished after " + durationMillis + " ms and " + polls + " polls");
+        finished();
+    }
+    
+    private void fail(Exception e) {
+        if (!result.completeExceptionally(e)) {
+            return;
+        }
+        N8nLog.warn(e.getMessage());
+        finished();
+    }
+    
+    /**
+     * Stop a poll in flight, stop waiting for a callback and drop the job from the
+     * registry after the retention time
+     */
+    private void finished() {
+        CompletableFuture<String> call = currentPoll;
+        if (call != null) {
+            call.cancel(false);
+        }
+        N8nCallbackServer.Registration registration = callback;
+        if (registration != null) {
+            registration.remove();
+        }
+        try {
+            CompletableFuture.delayedExecutor(retention.toMillis(), TimeUnit.MILLISECONDS, N8nExecutors.asyncExecutor())
+                .execute(() -> JOBS.remove(jobId, this));
+        } catch (RejectedExecutionException e) {
+            JOBS.remove(jobId, this);
+        }
+    }
+}
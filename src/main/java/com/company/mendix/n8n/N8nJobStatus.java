@@ -0,0 +1,23 @@
+package com.company.mendix.n8n;
+
+/**
+ * State of a job submitted with N8nJob.submit(...)
+ */
+public enum N8nJobStatus {
+    /**
+     * The workflow has not reported a result yet
+     */
+    RUNNING,
+    /**
+     * The workflow finished and its result is available
+     */
+    SUCCEEDED,
+    /**
+     * The workflow reported a failure, or the job timed out or could not be polled
+     */
+    FAILED,
+    /**
+     * The caller cancelled the job
+     */
+    CANCELLED
+}
@@ -0,0 +1,471 @@
+package com.company.mendix.n8n;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Single-pass, allocation-light scanner for n8n JSON responses
+ * 
+ * Finds string values of well-known keys (such as "result" or "data") without
+ * building a JSON tree. The whole body is scanned once for all candidate keys;
+ * strings that are not candidates are skipped with String.indexOf, and only the
+ * winning value is unescaped. Works at any nesting depth, tolerates whitespace
+ * around the colon and decodes all JSON escapes including unicode (backslash-u)
+ * escapes.
+ * 
+ * For bodies that should not be held in memory, copyStringValue(...) does the
+ * same scan over a Reader and streams the decoded value of one key to a Writer.
+ * 
+ * The scanner is lenient: malformed input never throws, it simply yields no match.
+ */
+final class N8nJsonScanner {
+    
+    private N8nJsonScanner() {
+    }
+    
+    /**
+     * Find the string value of the highest-priority key present in the JSON text
+     * 
+     * For every candidate key the first occurrence with a string value counts; an
+     * empty string value means the key is skipped in favour of the next candidate.
+     * 
+     * @param json The JSON text to scan
+     * @param keys Candidate keys in priority order (at most 32)
+     * @return The unescaped value, or null if no candidate key has a non-empty string value
+     */
+    static String findFirstStringValue(String json, String... keys) {
+        if (json == null || keys.length == 0) {
+            return null;
+        }
+        if (keys.length > 32) {
+            throw new IllegalArgumentException("At most 32 candidate keys are supported");
+        }
+        
+        int length = json.length();
+        int seenKeys = 0;
+        int bestKey = keys.length;
+        int bestStart = -1;
+        int bestEnd = -1;
+        
+        int pos = json.indexOf('"');
+        while (pos >= 0 && pos < length) {
+            int stringStart = pos + 1;
+            int stringEnd = findStringEnd(json, stringStart);
+            if (stringEnd < 0) {
+                break;
+            }
+            
+            // Only strings followed by a colon are object keys
+            int next = skipWhitespace(json, stringEnd + 1);
+            if (next >= length || json.charAt(next) != ':') {
+                pos = json.indexOf('"', stringEnd + 1);
+                continue;
+            }
+            
+            int keyIndex = matchKey(json, stringStart, stringEnd, keys);
+            int valueStart = skipWhitespace(json, next + 1);
+            if (valueStart >= length || json.charAt(valueStart) != '"') {
+                // Objects, arrays and literals are scanned like any other text
+                pos = json.indexOf('"', valueStart);
+                continue;
+            }
+            
+            int valueEnd = findStringEnd(json, valueStart + 1);
+            if (valueEnd < 0) {
+                break;
+            }
+            if (keyIndex >= 0 && (seenKeys & (1 << keyIndex)) == 0) {
+                seenKeys |= 1 << keyIndex;
+                if (valueEnd > valueStart + 1 && keyIndex < bestKey) {
+                    bestKey = keyIndex;
+                    bestStart = valueStart + 1;
+                    bestEnd = valueEnd;
+                    if (keyIndex == 0) {
+                        break;  // Nothing can beat the first candidate
+                    }
+                }
+            }
+            pos = json.indexOf('"', valueEnd + 1);
+        }
+        
+        return bestStart >= 0 ? unescape(json, bestStart, bestEnd) : null;
+    }
+    
+    /**
+     * Find the closing quote of a JSON string, handling escaped quotes
+     * 
+     * @param json The JSON text
+     * @param start Index of the first character after the opening quote
+     * @return Index of the closing quote, or -1 if the string is not terminated
+     */
+    static int findStringEnd(String json, int start) {
+        int quote = json.indexOf('"', start);
+        while (quote >= 0) {
+            // Count the backslashes in front of the quote; an even number means unescaped
+            int backslashCount = 0;
+            int j = quote - 1;
+            while (j >= start && json.charAt(j) == '\\') {
+                backslashCount++;
+                j--;
+            }
+            if (backslashCount % 2 == 0) {
+                return quote;
+            }
+            quote = json.indexOf('"', quote + 1);
+        }
+        return -1;
+    }
+    
+    /**
+     * Decode the JSON escapes of a raw string value
+     * 
+     * @param json The JSON text
+     * @param start Index of the first character of the value (after the opening quote)
+     * @param end Index of the closing quote
+     * @return The unescaped value
+     */
+    static String unescape(String json, int start, int end) {
+        int firstEscape = json.indexOf('\\', start);
+        if (firstEscape < 0 || firstEscape >= end) {
+            return json.substring(start, end);
+        }
+        
+        StringBuilder sb = new StringBuilder(end - start);
+        sb.append(json, start, firstEscape);
+        int i = firstEscape;
+        while (i < end) {
+            char c = json.charAt(i);
+            if (c != '\\' || i + 1 >= end) {
+                sb.append(c);
+                i++;
+                continue;
+            }
+            char escaped = json.charAt(i + 1);
+            switch (escaped) {
+                case '"': sb.append('"'); break;
+                case '\\': sb.append('\\'); break;
+                case '/': sb.append('/'); break;
+                case 'b': sb.append('\b'); break;
+                case 'f': sb.append('\f'); break;
+                case 'n': sb.append('\n'); break;
+                case 'r': sb.append('\r'); break;
+                case 't': sb.append('\t'); break;
+                case 'u':
+                    int code = i + 6 <= end ? parseHex4(json, i + 2) : -1;
+                    if (code >= 0) {
+                        sb.append((char) code);
+                        i += 6;
+                        continue;
+                    }
+                    // Invalid unicode escape: keep it as-is
+                    sb.append('\\').append('u');
+                    break;
+                default:
+                    // Unknown escape: keep it as-is
+                    sb.append('\\').append(escaped);
+                    break;
+            }
+            i += 2;
+        }
+        return sb.toString();
+    }
+    
+    /**
+     * Stream the decoded string value of the first occurrence of a key to a writer
+     * 
+     * Reads the JSON text once with constant memory; only the matching value is
+     * written, with its escapes decoded on the fly. Keys whose value is not a string
+     * are skipped, so the first string-valued occurrence at any nesting depth is used.
+     * 
+     * @param in The JSON text
+     * @param key The key to look for
+     * @param out Receives the decoded value
+     * @return True if the key was found with a string value
+     * @throws IOException If reading or writing fails
+     */
+    static boolean copyStringValue(Reader in, String key, Writer out) throws IOException {
+        return new StreamingScanner(in).copyStringValue(key, out);
+    }
+    
+    /**
+     * Remove the insignificant whitespace of a JSON text, keeping string contents intact
+     * 
+     * Two texts that differ only in formatting normalize to the same string. Text
+     * that does not look like JSON (not starting with { or [) is returned trimmed.
+     * 
+     * @param json The JSON text
+     * @return The compact text
+     */
+    static String stripWhitespace(String json) {
+        String trimmed = json.trim();
+        if (trimmed.isEmpty() || (trimmed.charAt(0) != '{' && trimmed.charAt(0) != '[')) {
+            return trimmed;
+        }
+        StringBuilder sb = null;
+        int length = trimmed.length();
+        int copiedUpTo = 0;
+        int pos = 0;
+        while (pos < length) {
+            char c = trimmed.charAt(pos);
+            if (c == '"') {
+                int end = findStringEnd(trimmed, pos + 1);
+                if (end < 0) {
+                    break;
+                }
+                pos = end + 1;
+            } else if (c == ' ' || c == '\n' || c == '\r' || c == '\t') {
+                // Copy lazily, so already compact JSON is returned without allocating
+                if (sb == null) {
+                    sb = new StringBuilder(length);
+                }
+                sb.append(trimmed, copiedUpTo, pos);
+                pos = skipWhitespace(trimmed, pos);
+                copiedUpTo = pos;
+            } else {
+                pos++;
+            }
+        }
+        if (sb == null) {
+            return trimmed;
+        }
+        return sb.append(trimmed, copiedUpTo, length).toString();
+    }
+    
+    /**
+     * Split a JSON array into the texts of its top-level elements
+     * 
+     * Strings are skipped with findStringEnd, so brackets and commas inside them do
+     * not count. The elements themselves are not validated.
+     * 
+     * @param json The JSON text
+     * @return The trimmed element texts, or null if the text is not a complete array
+     */
+    static List<String> splitArray(String json) {
+        String trimmed = json.trim();
+        int length = trimmed.length();
+        if (length < 2 || trimmed.charAt(0) != '[' || trimmed.charAt(length - 1) != ']') {
+            return null;
+        }
+        List<String> elements = new ArrayList<>();
+        int depth = 0;
+        int elementStart = 1;
+        int pos = 1;
+        while (pos < length - 1) {
+            char c = trimmed.charAt(pos);
+            if (c == '"') {
+                int end = findStringEnd(trimmed, pos + 1);
+                if (end < 0) {
+                    return null;
+                }
+                pos = end + 1;
+                continue;
+            }
+            if (c == '{' || c == '[') {
+                depth++;
+            } else if (c == '}' || c == ']') {
+                if (--depth < 0) {
+                    return null;
+                }
+            } else if (c == ',' && depth == 0) {
+                elements.add(trimmed.substring(elementStart, pos).trim());
+                elementStart = pos + 1;
+            }
+            pos++;
+        }
+        if (depth != 0) {
+            return null;
+        }
+        String last = trimmed.substring(elementStart, length - 1).trim();
+        if (!last.isEmpty() || !elements.isEmpty()) {
+            elements.add(last);
+        }
+        return elements;
+    }
+    
+    private static int matchKey(String json, int start, int end, String[] keys) {
+        int length = end - start;
+        for (int k = 0; k < keys.length; k++) {
+            String key = keys[k];
+            if (key.length() == length && json.regionMatches(start, key, 0, length)) {
+                return k;
+            }
+        }
+        return -1;
+    }
+    
+    private static int skipWhitespace(String json, int pos) {
+        int length = json.length();
+        while (pos < length) {
+            char c = json.charAt(pos);
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+                break;
+            }
+            pos++;
+        }
+        return pos;
+    }
+    
+    /**
+     * Parse four hex digits, returning -1 if any of them is invalid
+     */
+    static int parseHex4(CharSequence text, int start) {
+        int value = 0;
+        for (int i = start; i < start + 4; i++) {
+            int digit = Character.digit(text.charAt(i), 16);
+            if (digit < 0) {
+                return -1;
+            }
+            value = (value << 4) | digit;
+        }
+        return value;
+    }
+    
+    /**
+     * Character-at-a-time scanner over a Reader with its own read buffer
+     */
+    private static final class StreamingScanner {
+        private final Reader reader;
+        private final char[] buffer = new char[8192];
+        private final char[] hex = new char[4];
+        private final CharSequence hexSequence = CharBuffer.wrap(hex);
+        private int pos;
+        private int limit;
+        
+        StreamingScanner(Reader reader) {
+            this.reader = reader;
+        }
+        
+        boolean copyStringValue(String key, Writer out) throws IOException {
+            int c = read();
+            while (c >= 0) {
+                if (c != '"') {
+                    c = read();
+                    continue;
+                }
+                
+                // Read a string, comparing it with the key as we go
+                boolean matches = readStringMatching(key);
+                
+                // Only strings followed by a colon are object keys
+                c = skipWhitespace(read());
+                if (c != ':') {
+                    continue;
+                }
+                c = skipWhitespace(read());
+                if (c != '"') {
+                    continue;  // Objects, arrays and literals are scanned like any other text
+                }
+                if (matches) {
+                    return copyString(out);
+                }
+                readStringMatching(null);
+                c = read();
+            }
+            return false;
+        }
+        
+        /**
+         * Consume a string after its opening quote
+         * 
+         * @param key The text to compare the raw string with, or null to just skip it
+         * @return True if the raw string equals key
+         */
+        private boolean readStringMatching(String key) throws IOException {
+            int index = 0;
+            boolean matches = key != null;
+            int c;
+            while ((c = read()) >= 0) {
+                if (c == '"') {
+                    return matches && index == key.length();
+                }
+                if (matches && (index >= key.length() || key.charAt(index) != c)) {
+                    matches = false;
+                }
+                index++;
+                if (c == '\\') {
+                    // Escaped keys never equal a plain key, skip the escaped character
+                    matches = false;
+                    if (read() < 0) {
+                        break;
+                    }
+                    index++;
+                }
+            }
+            return false;
+        }
+        
+        /**
+         * Decode a string value after its opening quote into the writer
+         * 
+         * @return True if the string was terminated
+         */
+        private boolean copyString(Writer out) throws IOException {
+            int c;
+            while ((c = read()) >= 0) {
+                if (c == '"') {
+                    return true;
+                }
+                if (c != '\\') {
+                    out.write(c);
+                    continue;
+                }
+                int escaped = read();
+                switch (escaped) {
+                    case -1: return false;
+                    case '"': out.write('"'); break;
+                    case '\\': out.write('\\'); break;
+                    case '/': out.write('/'); break;
+                    case 'b': out.write('\b'); break;
+                    case 'f': out.write('\f'); break;
+                    case 'n': out.write('\n'); break;
+                    case 'r': out.write('\r'); break;
+                    case 't': out.write('\t'); break;
+                    case 'u':
+                        int count = 0;
+                        while (count < 4 && (c = read()) >= 0) {
+                            hex[count++] = (char) c;
+                        }
+                        int code = count == 4 ? parseHex4(hexSequence, 0) : -1;
+                        if (code >= 0) {
+                            out.write(code);
+                        } else {
+                            // Invalid unicode escape: keep it as-is
+                            out.write('\\');
+                            out.write('u');
+                            out.write(hex, 0, count);
+                        }
+                        break;
+                    default:
+                        // Unknown escape: keep it as-is
+                        out.write('\\');
+                        out.write(escaped);
+                        break;
+                }
+            }
+            return false;
+        }
+        
+        private int skipWhitespace(int c) throws IOException {
+            while (c == ' ' || c == '\n' || c == '\r' || c == '\t') {
+                c = read();
+            }
+            return c;
+        }
+        
+        private int read() throws IOException {
+            if (pos >= limit) {
+                limit = reader.read(buffer, 0, buffer.length);
+                pos = 0;
+                if (limit <= 0) {
+                    limit = 0;
+                    return -1;
+                }
+            }
+            return buffer[pos++];
+        }
+    }
+}
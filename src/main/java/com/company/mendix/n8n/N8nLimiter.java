@@ -0,0 +1,141 @@
+package com.company.mendix.n8n;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Admission control for one endpoint (or endpoint and API key): a rate limiter
+ * followed by a bulkhead, as configured by N8nEndpointLimits
+ * 
+ * Calls first reserve a rate-limit token and wait for it, then take a bulkhead
+ * slot. With the REJECT policy neither step waits. A call the bulkhead rejects
+ * gives its token back, so rejected calls do not use up the rate limit. A call that
+ * was admitted must call release() when it completes, or cancel() if it is not made
+ * after all.
+ */
+final class N8nLimiter {
+    
+    private final String endpoint;
+    private final N8nRateLimiter rateLimiter;
+    private final N8nBulkhead bulkhead;
+    private final long maxWaitNanos;
+    
+    N8nLimiter(String endpoint, N8nEndpointLimits limits) {
+        this.endpoint = endpoint;
+        this.rateLimiter = limits.getRequestsPerSecond() > 0 
+            ? new N8nRateLimiter(limits.getRequestsPerSecond(), limits.getBurst()) : null;
+        this.bulkhead = limits.getMaxConcurrent() > 0 ? new N8nBulkhead(limits.getMaxConcurrent()) : null;
+        this.maxWaitNanos = limits.getOverflowPolicy() == N8nOverflowPolicy.QUEUE 
+            ? limits.getMaxWait().toNanos() : 0;
+    }
+    
+    /**
+     * Wait until the call may start, blocking the calling thread
+     * 
+     * @throws N8nRejectedException If the limits do not admit the call in time
+     */
+    void acquire() throws Exception {
+        long deadline = System.nanoTime() + maxWaitNanos;
+        if (rateLimiter != null) {
+            long waitNanos = rateLimiter.reserve(maxWaitNanos);
+            if (waitNanos < 0) {
+                throw rejected("rate limit");
+            }
+            if (waitNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(waitNanos);
+                } catch (InterruptedException e) {
+                    rateLimiter.refund();
+                    throw e;
+                }
+            }
+        }
+        if (bulkhead == null) {
+            return;
+        }
+        CompletableFuture<Void> slot = bulkhead.acquire(remaining(deadline), () -> rejected("concurrency limit"));
+        try {
+            slot.get();
+        } catch (InterruptedException e) {
+            if (!bulkhead.cancel(slot)) {
+                // The slot was handed over while we were interrupted
+                slot.thenRun(bulkhead::release);
+            }
+            refundToken();
+            throw e;
+        } catch (ExecutionException e) {
+            refundToken();
+            throw (Exception) e.getCause();
+        }
+    }
+    
+    /**
+     * Wait until the call may start without blocking a thread
+     * 
+     * @return A future completed when the call may start, or completed exceptionally
+     *         with N8nRejectedException
+     */
+    CompletableFuture<Void> acquireAsync() {
+        long deadline = System.nanoTime() + maxWaitNanos;
+        CompletableFuture<Void> ready = CompletableFuture.completedFuture(null);
+        if (rateLimiter != null) {
+            long waitNanos = rateLimiter.reserve(maxWaitNanos);
+            if (waitNanos < 0) {
+                return CompletableFuture.failedFuture(rejected("rate limit"));
+            }
+            if (waitNanos > 0) {
+                ready = CompletableFuture.runAsync(() -> { }, 
+                    CompletableFuture.delayedExecutor(waitNanos, TimeUnit.NANOSECONDS, N8nExecutors.asyncExecutor()));
+            }
+        }
+        if (bulkhead == null) {
+            return ready;
+        }
+        CompletableFuture<Void> slot = 
+            ready.thenCompose(v -> bulkhead.acquire(remaining(deadline), () -> rejected("concurrency limit")));
+        if (rateLimiter == null) {
+            return slot;
+        }
+        return slot.whenComplete((v, error) -> {
+            if (error != null) {
+                rateLimiter.refund();
+            }
+        });
+    }
+    
+    /**
+     * Give back the bulkhead slot of an admitted call
+     */
+    void release() {
+        if (bulkhead != null) {
+            bulkhead.release();
+        }
+    }
+    
+    /**
+     * Give back the bulkhead slot and the rate-limit token of an admitted call that
+     * will not be made after all (e.g. rejected by the circuit breaker)
+     */
+    void cancel() {
+        release();
+        refundToken();
+    }
+    
+    /**
+     * Give back the rate-limit token of a call that will not be made
+     */
+    private void refundToken() {
+        if (rateLimiter != null) {
+            rateLimiter.refund();
+        }
+    }
+    
+    private static long remaining(long deadline) {
+        return Math.max(0, deadline - System.nanoTime());
+    }
+    
+    private N8nRejectedException rejected(String limit) {
+        return new N8nRejectedException("Call to " + endpoint + " rejected: " + limit + " exceeded");
+    }
+}
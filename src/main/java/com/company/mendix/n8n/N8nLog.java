@@ -0,0 +1,268 @@
+package com.company.mendix.n8n;
+
+import java.lang.reflect.Method;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Logging facade for the n8n integration
+ * 
+ * Replaces console output with level-controlled logging through a pluggable
+ * N8nLogger. Per-call details are logged at DEBUG and built lazily, so nothing
+ * is concatenated on the hot path when DEBUG is off. Request and response
+ * payloads are truncated and can be sampled (only every Nth payload is logged).
+ * 
+ * The default logger is the Mendix log node "N8n" (Core.getLogger) when running
+ * inside a Mendix runtime, SLF4J when it is on the classpath, and
+ * java.util.logging otherwise. Both Mendix and SLF4J are looked up reflectively,
+ * so neither is a compile-time dependency.
+ */
+public final class N8nLog {
+    
+    static final String LOG_NODE = "N8n";
+    
+    private static final int DEFAULT_MAX_PAYLOAD_LENGTH = 1000;
+    
+    private static volatile N8nLogger logger = createDefaultLogger();
+    private static volatile int maxPayloadLength = DEFAULT_MAX_PAYLOAD_LENGTH;
+    private static volatile int payloadSampleRate = 1;
+    private static final AtomicLong PAYLOAD_COUNTER = new AtomicLong();
+    
+    private N8nLog() {
+    }
+    
+    /**
+     * Install a custom logger
+     * 
+     * @param customLogger The logger to use, or null to restore the default logger
+     */
+    public static void setLogger(N8nLogger customLogger) {
+        logger = customLogger != null ? customLogger : createDefaultLogger();
+    }
+    
+    /**
+     * @return The logger currently in use
+     */
+    public static N8nLogger getLogger() {
+        return logger;
+    }
+    
+    /**
+     * Set the maximum number of characters logged for request and response payloads
+     * 
+     * @param maxLength Maximum payload length; 0 disables payload logging
+     */
+    public static void setMaxPayloadLength(int maxLength) {
+        if (maxLength < 0) {
+            throw new IllegalArgumentException("Maximum payload length cannot be negative");
+        }
+        maxPayloadLength = maxLength;
+    }
+    
+    /**
+     * Log only every Nth payload, to keep DEBUG logging affordable under load
+     * 
+     * @param everyN Sample rate (1 logs every payload)
+     */
+    public static void setPayloadSampleRate(int everyN) {
+        if (everyN < 1) {
+            throw new IllegalArgumentException("Payload sample rate must be at least 1");
+        }
+        payloadSampleRate = everyN;
+    }
+    
+    static boolean isDebugEnabled() {
+        return logger.isEnabled(N8nLogLevel.DEBUG);
+    }
+    
+    static void debug(String message) {
+        log(N8nLogLevel.DEBUG, message, null);
+    }
+    
+    static void debug(Supplier<String> message) {
+        N8nLogger current = logger;
+        if (current.isEnabled(N8nLogLevel.DEBUG)) {
+            current.log(N8nLogLevel.DEBUG, message.get(), null);
+        }
+    }
+    
+    static void info(Supplier<String> message) {
+        N8nLogger current = logger;
+        if (current.isEnabled(N8nLogLevel.INFO)) {
+            current.log(N8nLogLevel.INFO, message.get(), null);
+        }
+    }
+    
+    static void warn(String message) {
+        log(N8nLogLevel.WARN, message, null);
+    }
+    
+    static void warn(String message, Throwable error) {
+        log(N8nLogLevel.WARN, message, error);
+    }
+    
+    static void error(String message, Throwable error) {
+        log(N8nLogLevel.ERROR, message, error);
+    }
+    
+    /**
+     * Log a request or response payload at DEBUG, truncated and sampled
+     */
+    static void payload(String label, String payload) {
+        N8nLogger current = logger;
+        int maxLength = maxPayloadLength;
+        if (maxLength == 0 || !current.isEnabled(N8nLogLevel.DEBUG)) {
+            return;
+        }
+        int sampleRate = payloadSampleRate;
+        if (sampleRate > 1 && PAYLOAD_COUNTER.getAndIncrement() % sampleRate != 0) {
+            return;
+        }
+        current.log(N8nLogLevel.DEBUG, label + ": " + truncate(payload, maxLength), null);
+    }
+    
+    /**
+     * Shorten text to at most maxLength characters, noting the original length
+     */
+    static String truncate(String text, int maxLength) {
+        if (text == null || text.length() <= maxLength) {
+            return text;
+        }
+        return text.substring(0, maxLength) + "... (" + text.length() + " characters)";
+    }
+    
+    private static void log(N8nLogLevel level, String message, Throwable error) {
+        N8nLogger current = logger;
+        if (current.isEnabled(level)) {
+            current.log(level, message, error);
+        }
+    }
+    
+    private static N8nLogger createDefaultLogger() {
+        N8nLogger mendix = ReflectiveLogger.create("com.mendix.core.Core", LOG_NODE);
+        if (mendix != null) {
+            return mendix;
+        }
+        N8nLogger slf4j = ReflectiveLogger.create("org.slf4j.LoggerFactory", N8nLog.class.getPackage().getName());
+        if (slf4j != null) {
+            return slf4j;
+        }
+        return new JulLogger(Logger.getLogger(N8nLog.class.getPackage().getName()));
+    }
+    
+    /**
+     * Logger backed by a Mendix ILogNode or an SLF4J Logger, bound reflectively
+     * 
+     * Both expose is<Level>Enabled() and <level>(message, Throwable) methods, so one
+     * adapter covers them. Levels without an is<Level>Enabled() method count as enabled.
+     */
+    private static final class ReflectiveLogger implements N8nLogger {
+        private final Object target;
+        private final Map<N8nLogLevel, Method> enabledMethods = new EnumMap<>(N8nLogLevel.class);
+        private final Map<N8nLogLevel, Method> logMethods = new EnumMap<>(N8nLogLevel.class);
+        
+        /**
+         * @param target The logger instance
+         * @param type The public logger interface (ILogNode or org.slf4j.Logger); the
+         *             implementation class itself may not be accessible
+         */
+        private ReflectiveLogger(Object target, Class<?> type) throws NoSuchMethodException {
+            this.target = target;
+            for (N8nLogLevel level : N8nLogLevel.values()) {
+                String name = level.name().toLowerCase(Locale.ROOT);
+                String capitalized = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+                try {
+                    enabledMethods.put(level, type.getMethod("is" + capitalized + "Enabled"));
+                } catch (NoSuchMethodException e) {
+                    // Treated as always enabled
+                }
+                logMethods.put(level, findLogMethod(type, name));
+            }
+        }
+        
+        /**
+         * @param factoryClass Class with a static getLogger(String) method
+         * @param name The logger or log node name
+         * @return The logger, or null if the factory is unavailable
+         */
+        static N8nLogger create(String factoryClass, String name) {
+            try {
+                Class<?> factory = Class.forName(factoryClass, true, N8nLog.class.getClassLoader());
+                Method getLogger = factory.getMethod("getLogger", String.class);
+                Object target = getLogger.invoke(null, name);
+                return target != null ? new ReflectiveLogger(target, getLogger.getReturnType()) : null;
+            } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+                return null;
+            }
+        }
+        
+        private static Method findLogMethod(Class<?> type, String name) throws NoSuchMethodException {
+            for (Method method : type.getMethods()) {
+                Class<?>[] params = method.getParameterTypes();
+                if (method.getName().equals(name) && params.length == 2
+                        && params[0].isAssignableFrom(String.class) && params[1] == Throwable.class) {
+                    return method;
+                }
+            }
+            throw new NoSuchMethodException(type.getName() + "." + name + "(message, Throwable)");
+        }
+        
+        @Override
+        public boolean isEnabled(N8nLogLevel level) {
+            Method method = enabledMethods.get(level);
+            if (method == null) {
+                return true;
+            }
+            try {
+                return (Boolean) method.invoke(target);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                return true;
+            }
+        }
+        
+        @Override
+        public void log(N8nLogLevel level, String message, Throwable error) {
+            try {
+                logMethods.get(level).invoke(target, message, error);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                // Never let logging break a webhook call
+            }
+        }
+    }
+    
+    /**
+     * Logger backed by java.util.logging
+     */
+    private static final class JulLogger implements N8nLogger {
+        private final Logger target;
+        
+        JulLogger(Logger target) {
+            this.target = target;
+        }
+        
+        @Override
+        public boolean isEnabled(N8nLogLevel level) {
+            return target.isLoggable(toJulLevel(level));
+        }
+        
+        @Override
+        public void log(N8nLogLevel level, String message, Throwable error) {
+            target.log(toJulLevel(level), message, error);
+        }
+        
+        private static Level toJulLevel(N8nLogLevel level) {
+            switch (level) {
+                case TRACE: return Level.FINER;
+                case DEBUG: return Level.FINE;
+                case INFO: return Level.INFO;
+                case WARN: return Level.WARNING;
+                default: return Level.SEVERE;
+            }
+        }
+    }
+}
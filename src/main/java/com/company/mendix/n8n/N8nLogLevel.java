@@ -0,0 +1,12 @@
+package com.company.mendix.n8n;
+
+/**
+ * Log levels used by the n8n integration, from most to least verbose
+ */
+public enum N8nLogLevel {
+    TRACE,
+    DEBUG,
+    INFO,
+    WARN,
+    ERROR
+}
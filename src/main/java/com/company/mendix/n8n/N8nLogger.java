@@ -0,0 +1,26 @@
+package com.company.mendix.n8n;
+
+/**
+ * Pluggable log sink for the n8n integration
+ * 
+ * By default messages go to the Mendix log node "N8n" when running inside a Mendix
+ * runtime, to SLF4J when it is on the classpath, and to java.util.logging otherwise.
+ * Install a custom implementation with N8nLog.setLogger(...).
+ */
+public interface N8nLogger {
+    
+    /**
+     * @param level The level to check
+     * @return True if messages at this level are written; used to skip building messages
+     */
+    boolean isEnabled(N8nLogLevel level);
+    
+    /**
+     * Write a log message
+     * 
+     * @param level The message level
+     * @param message The message text
+     * @param error The related exception, or null
+     */
+    void log(N8nLogLevel level, String message, Throwable error);
+}
@@ -0,0 +1,229 @@
+package com.company.mendix.n8n;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.ToDoubleFunction;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Process-wide registry of per-endpoint webhook metrics
+ * 
+ * Every webhook call records its latency, time-to-first-byte, byte counts, status
+ * code and outcome under its endpoint (scheme, host, port and path; query strings
+ * are dropped so secrets in URLs never become metric names). Metrics can be read
+ * three ways:
+ * - snapshot() / snapshotJson() for pull-based monitoring, e.g. from a microflow
+ * - JMX, one MXBean per endpoint under com.company.mendix.n8n:type=EndpointMetrics
+ * - Micrometer, via bindToMicrometer(meterRegistry) when Micrometer is on the classpath
+ */
+public final class N8nMetrics {
+    
+    private static final String JMX_DOMAIN = "com.company.mendix.n8n";
+    
+    private static final Map<String, N8nEndpointMetrics> ENDPOINTS = new ConcurrentHashMap<>();
+    private static final List<Object> MICROMETER_REGISTRIES = new CopyOnWriteArrayList<>();
+    
+    private static volatile boolean jmxEnabled = true;
+    
+    private N8nMetrics() {
+    }
+    
+    /**
+     * Get the metrics of an endpoint, creating them on first use
+     * 
+     * @param webhookEndpoint The webhook URL
+     * @return The metrics for the endpoint
+     */
+    public static N8nEndpointMetrics forEndpoint(String webhookEndpoint) {
+        String key = endpointKey(webhookEndpoint);
+        N8nEndpointMetrics metrics = ENDPOINTS.get(key);
+        if (metrics != null) {
+            return metrics;
+        }
+        N8nEndpointMetrics created = new N8nEndpointMetrics(key);
+        metrics = ENDPOINTS.putIfAbsent(key, created);
+        if (metrics != null) {
+            return metrics;
+        }
+        if (jmxEnabled) {
+            registerMBean(created);
+        }
+        for (Object registry : MICROMETER_REGISTRIES) {
+            bindMicrometerMeters(registry, created);
+        }
+        return created;
+    }
+    
+    /**
+     * @return Snapshots of the metrics of all endpoints called so far
+     */
+    public static List<N8nMetricsSnapshot> snapshot() {
+        List<N8nMetricsSnapshot> snapshots = new ArrayList<>(ENDPOINTS.size());
+        for (N8nEndpointMetrics metrics : ENDPOINTS.values()) {
+            snapshots.add(metrics.snapshot());
+        }
+        return snapshots;
+    }
+    
+    /**
+     * @return Snapshots of the metrics of all endpoints as a JSON array, e.g. to
+     *         return from a Mendix Java action
+     */
+    public static String snapshotJson() {
+        StringBuilder sb = new StringBuilder("[");
+        for (N8nMetricsSnapshot snapshot : snapshot()) {
+            if (sb.length() > 1) {
+                sb.append(',');
+            }
+            sb.append(snapshot.toJson());
+        }
+        return sb.append(']').toString();
+    }
+    
+    /**
+     * Reset the metrics of all endpoints
+     */
+    public static void reset() {
+        for (N8nEndpointMetrics metrics : ENDPOINTS.values()) {
+            metrics.reset();
+        }
+    }
+    
+    /**
+     * Enable or disable JMX registration of endpoint metrics created from now on
+     */
+    public static void setJmxEnabled(boolean enabled) {
+        jmxEnabled = enabled;
+    }
+    
+    /**
+     * Publish the metrics of all current and future endpoints to a Micrometer registry
+     * 
+     * Micrometer is bound reflectively, so it is not a dependency of this library.
+     * 
+     * @param meterRegistry An io.micrometer.core.instrument.MeterRegistry
+     * @throws IllegalArgumentException If Micrometer is not available or the argument
+     *                                  is not a MeterRegistry
+     */
+    public static void bindToMicrometer(Object meterRegistry) {
+        try {
+            Class<?> registryType = Class.forName("io.micrometer.core.instrument.MeterRegistry",
+                false, meterRegistry.getClass().getClassLoader());
+            if (!registryType.isInstance(meterRegistry)) {
+                throw new IllegalArgumentException("Not a Micrometer MeterRegistry: " + meterRegistry.getClass().getName());
+            }
+        } catch (ClassNotFoundException e) {
+            throw new IllegalArgumentException("Micrometer is not available on the classpath", e);
+        }
+        MICROMETER_REGISTRIES.add(meterRegistry);
+        for (N8nEndpointMetrics metrics : ENDPOINTS.values()) {
+            bindMicrometerMeters(meterRegistry, metrics);
+        }
+    }
+    
+    /**
+     * Normalize a webhook URL to scheme://host:port/path
+     */
+    static String endpointKey(String webhookEndpoint) {
+        if (webhookEndpoint == null) {
+            return "";
+        }
+        try {
+            URI uri = URI.create(webhookEndpoint.trim());
+            if (uri.getHost() == null) {
+                return webhookEndpoint;
+            }
+            String port = uri.getPort() != -1 ? ":" + uri.getPort() : "";
+            String path = uri.getRawPath() != null ? uri.getRawPath() : "";
+            return uri.getScheme() + "://" + uri.getHost() + port + path;
+        } catch (IllegalArgumentException e) {
+            return webhookEndpoint;
+        }
+    }
+    
+    private static void registerMBean(N8nEndpointMetrics metrics) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(JMX_DOMAIN + ":type=EndpointMetrics,endpoint="
+                + ObjectName.quote(metrics.getEndpoint()));
+            if (!server.isRegistered(name)) {
+                server.registerMBean(metrics, name);
+            }
+        } catch (Exception e) {
+            N8nLog.warn("Could not register JMX metrics for " + metrics.getEndpoint(), e);
+        }
+    }
+    
+    private static void bindMicrometerMeters(Object registry, N8nEndpointMetrics metrics) {
+        try {
+            ClassLoader loader = registry.getClass().getClassLoader();
+            Class<?> registryType = Class.forName("io.micrometer.core.instrument.MeterRegistry", false, loader);
+            Class<?> counterType = Class.forName("io.micrometer.core.instrument.FunctionCounter", false, loader);
+            Class<?> gaugeType = Class.forName("io.micrometer.core.instrument.Gauge", false, loader);
+            
+            MeterBinder counters = new MeterBinder(counterType, registryType, registry, metrics.getEndpoint());
+            counters.bind("n8n.requests", metrics, m -> m.getRequestCount());
+            counters.bind("n8n.requests.success", metrics, m -> m.getSuccessCount());
+            counters.bind("n8n.requests.failure", metrics, m -> m.getFailureCount());
+            counters.bind("n8n.requests.timeout", metrics, m -> m.getTimeoutCount());
+            counters.bind("n8n.requests.retry", metrics, m -> m.getRetryCount());
+            counters.bind("n8n.requests.rejected", metrics, m -> m.getRejectedCount());
+            counters.bind("n8n.cache.hits", metrics, m -> m.getCacheHitCount());
+            counters.bind("n8n.cache.misses", metrics, m -> m.getCacheMissCount());
+            counters.bind("n8n.requests.coalesced", metrics, m -> m.getCoalescedCount());
+            counters.bind("n8n.requests.batched", metrics, m -> m.getBatchedCount());
+            counters.bind("n8n.requests.hedged", metrics, m -> m.getHedgeCount());
+            counters.bind("n8n.requests.hedge.wins", metrics, m -> m.getHedgeWinCount());
+            counters.bind("n8n.request.bytes", metrics, m -> m.getRequestBytes());
+            counters.bind("n8n.response.bytes", metrics, m -> m.getResponseBytes());
+            counters.bind("n8n.request.bytes.saved", metrics, m -> m.getRequestBytesSaved());
+            counters.bind("n8n.response.bytes.saved", metrics, m -> m.getResponseBytesSaved());
+            
+            MeterBinder gauges = new MeterBinder(gaugeType, registryType, registry, metrics.getEndpoint());
+            gauges.bind("n8n.requests.inflight", metrics, m -> m.getInFlight());
+            // 0 = closed, 1 = open, 2 = half-open
+            gauges.bind("n8n.circuit.state", metrics, 
+                m -> N8nCircuitBreaker.State.valueOf(m.getCircuitState()).ordinal());
+            gauges.bind("n8n.latency.p50.ms", metrics, m -> m.getLatencyP50Millis());
+            gauges.bind("n8n.latency.p95.ms", metrics, m -> m.getLatencyP95Millis());
+            gauges.bind("n8n.latency.p99.ms", metrics, m -> m.getLatencyP99Millis());
+            gauges.bind("n8n.ttfb.p95.ms", metrics, m -> m.getTimeToFirstByteP95Millis());
+        } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+            N8nLog.warn("Could not bind Micrometer metrics for " + metrics.getEndpoint(), e);
+        }
+    }
+    
+    /**
+     * Registers Micrometer meters through the shared builder(name, obj, fn).tag(...).register(...)
+     * API of Gauge and FunctionCounter
+     */
+    private static final class MeterBinder {
+        private final Method builder;
+        private final Object registry;
+        private final Class<?> registryType;
+        private final String endpoint;
+        
+        MeterBinder(Class<?> meterType, Class<?> registryType, Object registry, String endpoint)
+                throws NoSuchMethodException {
+            this.builder = meterType.getMethod("builder", String.class, Object.class, ToDoubleFunction.class);
+            this.registryType = registryType;
+            this.registry = registry;
+            this.endpoint = endpoint;
+        }
+        
+        void bind(String name, N8nEndpointMetrics metrics, ToDoubleFunction<N8nEndpointMetrics> value)
+                throws ReflectiveOperationException {
+            Object meterBuilder = builder.invoke(null, name, metrics, value);
+            meterBuilder = meterBuilder.getClass().getMethod("tag", String.class, String.class)
+                .invoke(meterBuilder, "endpoint", endpoint);
+            meterBuilder.getClass().getMethod("register", registryType).invoke(meterBuilder, registry);
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package com.company.mendix.n8n;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Immutable point-in-time copy of the metrics of one n8n webhook endpoint
+ * 
+ * Latencies are in milliseconds.
+ */
+public final class N8nMetricsSnapshot {
+    
+    private final String endpoint;
+    private final long requestCount;
+    private final long successCount;
+    private final long failureCount;
+    private final long timeoutCount;
+    private final long retryCount;
+    private final long rejectedCount;
+    private final long cacheHitCount;
+    private final long cacheMissCount;
+    private final long coalescedCount;
+    private final long batchedCount;
+    private final long hedgeCount;
+    private final long hedgeWinCount;
+    private final String circuitState;
+    private final long inFlight;
+    private final long requestBytes;
+    private final long responseBytes;
+    private final long requestBytesSaved;
+    private final long responseBytesSaved;
+    private final double latencyMeanMillis;
+    private final double latencyP50Millis;
+    private final double latencyP95Millis;
+    private final double latencyP99Millis;
+    private final double latencyMaxMillis;
+    private final double timeToFirstByteP50Millis;
+    private final double timeToFirstByteP95Millis;
+    private final double timeToFirstByteP99Millis;
+    private final Map<String, Long> statusCodeCounts;
+    
+    N8nMetricsSnapshot(N8nEndpointMetrics metrics) {
+        this.endpoint = metrics.getEndpoint();
+        this.requestCount = metrics.getRequestCount();
+        this.successCount = metrics.getSuccessCount();
+        this.failureCount = metrics.getFailureCount();
+        this.timeoutCount = metrics.getTimeoutCount();
+        this.retryCount = metrics.getRetryCount();
+        this.rejectedCount = metrics.getRejectedCount();
+        this.cacheHitCount = metrics.getCacheHitCount();
+        this.cacheMissCount = metrics.getCacheMissCount();
+        this.coalescedCount = metrics.getCoalescedCount();
+        this.batchedCount = metrics.getBatchedCount();
+        this.hedgeCount = metrics.getHedgeCount();
+        this.hedgeWinCount = metrics.getHedgeWinCount();
+        this.circuitState = metrics.getCircuitState();
+        this.inFlight = metrics.getInFlight();
+        this.requestBytes = metrics.getRequestBytes();
+        this.responseBytes = metrics.getResponseBytes();
+        this.requestBytesSaved = metrics.getRequestBytesSaved();
+        this.responseBytesSaved = metrics.getResponseBytesSaved();
+        this.latencyMeanMillis = metrics.getLatencyMeanMillis();
+        this.latencyP50Millis = metrics.getLatencyP50Millis();
+        this.latencyP95Millis = metrics.getLatencyP95Millis();
+        this.latencyP99Millis = metrics.getLatencyP99Millis();
+        this.latencyMaxMillis = metrics.getLatencyMaxMillis();
+        this.timeToFirstByteP50Millis = metrics.getTimeToFirstByteP50Millis();
+        this.timeToFirstByteP95Millis = metrics.getTimeToFirstByteP95Millis();
+        this.timeToFirstByteP99Millis = metrics.getTimeToFirstByteP99Millis();
+        this.statusCodeCounts = Collections.unmodifiableMap(metrics.getStatusCodeCounts());
+    }
+    
+    public String getEndpoint() {
+        return endpoint;
+    }
+    
+    public long getRequestCount() {
+        return requestCount;
+    }
+    
+    public long getSuccessCount() {
+        return successCount;
+    }
+    
+    public long getFailureCount() {
+        return failureCount;
+    }
+    
+    public long getTimeoutCount() {
+        return timeoutCount;
+    }
+    
+    public long getRetryCount() {
+        return retryCount;
+    }
+    
+    public long getRejectedCount() {
+        return rejectedCount;
+    }
+    
+    public long getCacheHitCount() {
+        return cacheHitCount;
+    }
+    
+    public long getCacheMissCount() {
+        return cacheMissCount;
+    }
+    
+    public long getCoalescedCount() {
+        return coalescedCount;
+    }
+    
+    /**
+     * @return Calls sent to n8n as part of a micro-batch request
+     */
+    public long getBatchedCount() {
+        return batchedCount;
+    }
+    
+    /**
+     * @return Hedged duplicates sent for slow requests
+     */
+    public long getHedgeCount() {
+        return hedgeCount;
+    }
+    
+    /**
+     * @return Hedged requests whose response was used
+     */
+    public long getHedgeWinCount() {
+        return hedgeWinCount;
+    }
+    
+    /**
+     * @return The circuit breaker state: CLOSED, OPEN or HALF_OPEN
+     */
+    public String getCircuitState() {
+        return circuitState;
+    }
+    
+    public long getInFlight() {
+        return inFlight;
+    }
+    
+    public long getRequestBytes() {
+        return requestBytes;
+    }
+    
+    public long getResponseBytes() {
+        return responseBytes;
+    }
+    
+    /**
+     * @return Request bytes saved by gzip compression
+     */
+    public long getRequestBytesSaved() {
+        return requestBytesSaved;
+    }
+    
+    /**
+     * @return Response bytes saved by compressed responses
+     */
+    public long getResponseBytesSaved() {
+        return responseBytesSaved;
+    }
+    
+    public double getLatencyMeanMillis() {
+        return latencyMeanMillis;
+    }
+    
+    public double getLatencyP50Millis() {
+        return latencyP50Millis;
+    }
+    
+    public double getLatencyP95Millis() {
+        return latencyP95Millis;
+    }
+    
+    public double getLatencyP99Millis() {
+        return latencyP99Millis;
+    }
+    
+    public double getLatencyMaxMillis() {
+        return latencyMaxMillis;
+    }
+    
+    public double getTimeToFirstByteP50Millis() {
+        return timeToFirstByteP50Millis;
+    }
+    
+    public double getTimeToFirstByteP95Millis() {
+        return timeToFirstByteP95Millis;
+    }
+    
+    public double getTimeToFirstByteP99Millis() {
+        return timeToFirstByteP99Millis;
+    }
+    
+    /**
+     * @return Number of responses per HTTP status code
+     */
+    public Map<String, Long> getStatusCodeCounts() {
+        return statusCodeCounts;
+    }
+    
+    /**
+     * @return The snapshot as a JSON object
+     */
+    public String toJson() {
+        StringBuilder sb = new StringBuilder(512);
+        sb.append("{\"endpoint\":\"").append(escapeJson(endpoint)).append('"')
+          .append(",\"requests\":").append(requestCount)
+          .append(",\"successes\":").append(successCount)
+          .append(",\"failures\":").append(failureCount)
+          .append(",\"timeouts\":").append(timeoutCount)
+          .append(",\"retries\":").append(retryCount)
+          .append(",\"rejected\":").append(rejectedCount)
+          .append(",\"cacheHits\":").append(cacheHitCount)
+          .append(",\"cacheMisses\":").append(cacheMissCount)
+          .append(",\"coalesced\":").append(coalescedCount)
+          .append(",\"batched\":").append(batchedCount)
+          .append(",\"hedges\":").append(hedgeCount)
+          .append(",\"hedgeWins\":").append(hedgeWinCount)
+          .append(",\"circuitState\":\"").append(circuitState).append('"')
+          .append(",\"inFlight\":").append(inFlight)
+          .append(",\"requestBytes\":").append(requestBytes)
+          .append(",\"responseBytes\":").append(responseBytes)
+          .append(",\"requestBytesSaved\":").append(requestBytesSaved)
+          .append(",\"responseBytesSaved\":").append(responseBytesSaved)
+          .append(",\"latencyMs\":{\"mean\":").append(latencyMeanMillis)
+          .append(",\"p50\":").append(latencyP50Millis)
+          .append(",\"p95\":").append(latencyP95Millis)
+          .append(",\"p99\":").append(latencyP99Millis)
+          .append(",\"max\":").append(latencyMaxMillis).append('}')
+          .append(",\"timeToFirstByteMs\":{\"p50\":").append(timeToFirstByteP50Millis)
+          .append(",\"p95\":").append(timeToFirstByteP95Millis)
+          .append(",\"p99\":").append(timeToFirstByteP99Millis).append('}')
+          .append(",\"statusCodes\":{");
+        boolean first = true;
+        for (Map.Entry<String, Long> entry : statusCodeCounts.entrySet()) {
+            if (!first) {
+                sb.append(',');
+            }
+            sb.append('"').append(entry.getKey()).append("\":").append(entry.getValue());
+            first = false;
+        }
+        return sb.append("}}").toString();
+    }
+    
+    @Override
+    public String toString() {
+        return toJson();
+    }
+    
+    static String escapeJson(String text) {
+        return text.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+}
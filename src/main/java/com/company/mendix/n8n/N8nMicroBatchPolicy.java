@@ -0,0 +1,270 @@
+package com.company.mendix.n8n;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Micro-batching of small calls to one webhook endpoint
+ * 
+ * Every webhook call costs an HTTP round trip and a full n8n workflow execution, which
+ * dominates for tiny payloads such as audit lines or sensor readings. With a
+ * micro-batch policy, calls to the endpoint are held back for up to maxDelay and sent
+ * together as one JSON array of up to maxItems bodies:
+ * 
+ *   N8nMicroBatchPolicy.setForEndpoint("https://n8n.example.com/webhook/audit",
+ *       new N8nMicroBatchPolicy(100, Duration.ofMillis(50)));
+ * 
+ *   POST /webhook/audit   x-batch-size: 3
+ *   [{"event":"login"},{"event":"view"},{"message":"logout"}]
+ * 
+ * The workflow must answer with an array of the same length, in the same order (e.g.
+ * Split Out on the body, then Respond to Webhook with all incoming items); element i
+ * is the result of call i and is processed like a normal response. If the batch
+ * request fails, or the answer is not such an array, every call of the batch fails.
+ * 
+ * Only calls that can be combined are batched: the same webhook URL, API key, session
+ * ID and content type, a JSON content type and a JSON body that is not streamed. The
+ * batch is sent with the longest timeout of its calls and retried as a whole. Each
+ * caller waits up to maxDelay longer for its result, so batching suits high-volume
+ * calls whose latency matters less than the n8n execution count.
+ */
+public final class N8nMicroBatchPolicy {
+    
+    /**
+     * Header carrying the number of calls in a batch request
+     */
+    public static final String BATCH_SIZE_HEADER = "x-batch-size";
+    
+    private static final Map<String, N8nMicroBatchPolicy> ENDPOINT_POLICIES = new ConcurrentHashMap<>();
+    // Batches still accepting calls, by batch key
+    private static final Map<String, Batch> OPEN_BATCHES = new ConcurrentHashMap<>();
+    
+    private final int maxItems;
+    private final Duration maxDelay;
+    
+    /**
+     * Create a policy
+     * 
+     * @param maxItems Calls after which a batch is sent at once
+     * @param maxDelay Time after the first call of a batch at which it is sent anyway
+     */
+    public N8nMicroBatchPolicy(int maxItems, Duration maxDelay) {
+        if (maxItems < 1) {
+            throw new IllegalArgumentException("Maximum batch items must be at least 1");
+        }
+        if (maxDelay == null || maxDelay.isNegative()) {
+            throw new IllegalArgumentException("Maximum batch delay must be a non-negative duration");
+        }
+        this.maxItems = maxItems;
+        this.maxDelay = maxDelay;
+    }
+    
+    /**
+     * Set the micro-batch policy of one endpoint (scheme, host, port and path of the webhook URL)
+     * 
+     * @param webhookEndpoint The webhook URL
+     * @param policy The policy, or null to send calls to the endpoint one by one again
+     */
+    public static void setForEndpoint(String webhookEndpoint, N8nMicroBatchPolicy policy) {
+        String key = N8nMetrics.endpointKey(webhookEndpoint);
+        if (policy == null) {
+            ENDPOINT_POLICIES.remove(key);
+        } else {
+            ENDPOINT_POLICIES.put(key, policy);
+        }
+    }
+    
+    /**
+     * @param webhookEndpoint The webhook URL
+     * @return The micro-batch policy of the endpoint, or null if its calls are sent one by one
+     */
+    public static N8nMicroBatchPolicy forEndpoint(String webhookEndpoint) {
+        if (ENDPOINT_POLICIES.isEmpty()) {
+            return null;
+        }
+        return ENDPOINT_POLICIES.get(N8nMetrics.endpointKey(webhookEndpoint));
+    }
+    
+    /**
+     * @return The number of calls waiting in batches that have not been sent yet
+     */
+    public static int getWaitingCount() {
+        int waiting = 0;
+        for (Batch batch : OPEN_BATCHES.values()) {
+            waiting += batch.size();
+        }
+        return waiting;
+    }
+    
+    public int getMaxItems() {
+        return maxItems;
+    }
+    
+    public Duration getMaxDelay() {
+        return maxDelay;
+    }
+    
+    /**
+     * Add a call to the open batch of its endpoint, starting a batch if there is none
+     * 
+     * @param body The JSON request body of the call
+     * @return A future of the call's element of the batch response; JSON string
+     *         elements are decoded, other elements are returned as JSON text
+     */
+    CompletableFuture<String> add(String apiKey, String webhookEndpoint, String sessionId, String contentType,
+                                  int timeoutMinutes, String body) {
+        String key = N8nRequestHash.of(webhookEndpoint, apiKey, sessionId, contentType, null);
+        CompletableFuture<String> result = new CompletableFuture<>();
+        for (;;) {
+            Batch batch = OPEN_BATCHES.computeIfAbsent(key,
+                k -> new Batch(k, apiKey, webhookEndpoint, sessionId, contentType));
+            int added = batch.add(body, timeoutMinutes, result, maxItems);
+            if (added < 0) {
+                // Full or sent meanwhile; it has already left OPEN_BATCHES
+                continue;
+            }
+            if (added == maxItems) {
+                batch.send();
+            } else if (added == 1) {
+                schedule(batch);
+            }
+            return result;
+        }
+    }
+    
+    private void schedule(Batch batch) {
+        try {
+            CompletableFuture.delayedExecutor(maxDelay.toMillis(), TimeUnit.MILLISECONDS, N8nExecutors.asyncExecutor())
+                .execute(batch::send);
+        } catch (RejectedExecutionException e) {
+            batch.send();
+        }
+    }
+    
+    /**
+     * @return The result of one call: a decoded JSON string, or the element's JSON text
+     */
+    private static String decodeElement(String element) {
+        if (element.length() >= 2 && element.charAt(0) == '"' && element.charAt(element.length() - 1) == '"') {
+            return N8nJsonScanner.unescape(element, 1, element.length() - 1);
+        }
+        return element;
+    }
+    
+    @Override
+    public String toString() {
+        return "N8nMicroBatchPolicy[maxItems=" + maxItems + ", maxDelay=" + maxDelay + "]";
+    }
+    
+    /**
+     * Calls collected for one request
+     */
+    private static final class Batch {
+        private final String key;
+        private final String apiKey;
+        private final String webhookEndpoint;
+        private final String sessionId;
+        private final String contentType;
+        // Guarded by this
+        private final List<String> bodies = new ArrayList<>();
+        private final List<CompletableFuture<String>> results = new ArrayList<>();
+        private int timeoutMinutes;
+        private boolean sent;
+        
+        Batch(String key, String apiKey, String webhookEndpoint, String sessionId, String contentType) {
+            this.key = key;
+            this.apiKey = apiKey;
+            this.webhookEndpoint = webhookEndpoint;
+            this.sessionId = sessionId;
+            this.contentType = contentType;
+        }
+        
+        /**
+         * @return The number of calls in the batch including this one, or -1 if the
+         *         batch was already sent
+         */
+        synchronized int add(String body, int timeout, CompletableFuture<String> result, int maxItems) {
+            if (sent || bodies.size() >= maxItems) {
+                return -1;
+            }
+            bodies.add(body);
+            results.add(result);
+            timeoutMinutes = Math.max(timeoutMinutes, timeout);
+            if (bodies.size() == maxItems) {
+                // Full: later calls start a new batch while this one is being sent
+                OPEN_BATCHES.remove(key, this);
+            }
+            return bodies.size();
+        }
+        
+        synchronized int size() {
+            return sent ? 0 : bodies.size();
+        }
+        
+        /**
+         * Send the batch unless it has been sent already (by the timer or by reaching maxItems)
+         */
+        void send() {
+            synchronized (this) {
+                if (sent) {
+                    return;
+                }
+                sent = true;
+            }
+            OPEN_BATCHES.remove(key, this);
+            
+            int count = bodies.size();
+            StringBuilder payload = new StringBuilder(count * 64);
+            payload.append('[');
+            for (int i = 0; i < count; i++) {
+                if (i > 0) {
+                    payload.append(',');
+                }
+                payload.append(bodies.get(i).trim());
+            }
+            payload.append(']');
+            N8nMetrics.forEndpoint(webhookEndpoint).requestsBatched(count);
+            N8nLog.debug(() -> "Sending micro-batch of " + count + " calls to endpoint: " + webhookEndpoint);
+            
+            new N8nAction(apiKey, webhookEndpoint, payload.toString(), sessionId, contentType, timeoutMinutes)
+                .withHeader(BATCH_SIZE_HEADER, String.valueOf(count))
+                .withRawResponse()
+                .executeUncachedAsync()
+                .whenComplete((response, error) -> {
+                    if (error != null) {
+                        for (CompletableFuture<String> result : results) {
+                            result.completeExceptionally(error);
+                        }
+                    } else {
+                        demultiplex(response, count);
+                    }
+                });
+        }
+        
+        /**
+         * Complete each call with its element of the batch response
+         */
+        private void demultiplex(String response, int count) {
+            List<String> elements = N8nJsonScanner.splitArray(response);
+            if (elements == null || elements.size() != count) {
+                Exception failure = new Exception("n8n answered a batch of " + count + " calls with "
+                    + (elements == null ? "no JSON array" : "an array of " + elements.size() + " elements")
+                    + "; the workflow must respond with one array element per call. Response: "
+                    + N8nLog.truncate(response, 200));
+                for (CompletableFuture<String> result : results) {
+                    result.completeExceptionally(failure);
+                }
+                return;
+            }
+            for (int i = 0; i < count; i++) {
+                results.get(i).complete(decodeElement(elements.get(i)));
+            }
+        }
+    }
+}
@@ -0,0 +1,931 @@
+package com.company.mendix.n8n;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32C;
+
+/**
+ * Durable outbox for fire-and-forget webhook calls
+ * 
+ * Notification-style workflows do not need a response, but execute(...) blocks until
+ * n8n answers and the call is lost if n8n is down or the Mendix node restarts. An
+ * outbox call is appended to a journal on local disk instead and the caller returns
+ * within microseconds; a background dispatcher delivers it later:
+ * 
+ *   N8nOutbox.open(Paths.get("/var/lib/mendix/n8n-outbox"));   // once at startup
+ *   N8nOutbox.enqueue(apiKey, webhookUrl, input, sessionId);
+ * 
+ * The journal is a set of memory-mapped segment files (see N8nOutboxJournal): an
+ * enqueued call survives a crash of the JVM at once, and a crash of the machine once
+ * the future returned by enqueue(...) has completed (group commit forces many calls
+ * with one fsync). The dispatcher reads calls in order and keeps up to batchSize of
+ * them in flight, starting the next call as soon as one completes, so a slow or hanging
+ * endpoint only occupies its own slots. A call that fails is appended to a second
+ * journal in the retry subdirectory with the time of its next attempt, following the
+ * outbox retry policy (by default for up to 24 hours, so n8n may be down for a while);
+ * the dispatcher moves on meanwhile, so one failing endpoint does not hold back the
+ * others. The journals are checkpointed past the calls that are settled (delivered,
+ * retry on disk or dead-lettered) without a gap before them. Calls are delivered at
+ * least once: after a restart the calls behind the checkpoint are sent again, so each
+ * call carries a unique x-outbox-id header for deduplication. Calls that fail
+ * permanently (non-retryable status) or exhaust their retries are moved to the
+ * dead-letter file, from where replayDeadLetters() enqueues them again.
+ * 
+ * The journal stores API keys and inputs in plain text: keep its directory private.
+ */
+public final class N8nOutbox {
+    
+    /**
+     * Header carrying the unique ID of an outbox call
+     */
+    public static final String CALL_ID_HEADER = "x-outbox-id";
+    
+    /**
+     * Default retry policy: 20 attempts, backoff from 1 second up to 5 minutes, 24 hours budget
+     */
+    public static final N8nRetryPolicy DEFAULT_RETRY_POLICY =
+        new N8nRetryPolicy(20, Duration.ofSeconds(1), Duration.ofMinutes(5), Duration.ofHours(24));
+    
+    private static final String DEAD_LETTER_FILE = "dead-letter.log";
+    private static final String RETRY_DIRECTORY = "retry";
+    // Due time, attempts and time of the first attempt in front of a retried call
+    private static final int RETRY_HEADER_BYTES = 20;
+    // Retries, and new calls not checkpointed yet, held in memory; beyond it new calls wait in the journal
+    private static final int MAX_SCHEDULED = 10_000;
+    private static final int DEFAULT_SEGMENT_BYTES = 16 * 1024 * 1024;
+    private static final long DEFAULT_MAX_BYTES = 1024L * 1024 * 1024;
+    private static final byte FORMAT_VERSION = 1;
+    
+    private static final AtomicLong DELIVERED = new AtomicLong();
+    private static final AtomicLong DEAD_LETTERS = new AtomicLong();
+    // Guards the dead-letter file
+    private static final Object DEAD_LETTER_LOCK = new Object();
+    
+    private static volatile N8nRetryPolicy retryPolicy = DEFAULT_RETRY_POLICY;
+    private static volatile int batchSize = 32;
+    
+    // Guarded by the class lock
+    private static N8nOutboxJournal journal;
+    private static N8nOutboxJournal retryJournal;
+    private static Thread dispatcher;
+    private static volatile N8nOutboxJournal openJournal;
+    private static volatile N8nOutboxJournal openRetryJournal;
+    // Journal records settled but not checkpointed yet
+    private static volatile int settledCalls;
+    private static volatile int settledRetries;
+    private static volatile Path deadLetterFile;
+    
+    private N8nOutbox() {
+    }
+    
+    /**
+     * Open the outbox with 16 MB segments and at most 1 GB of journal, and start delivering
+     * the calls recovered from the directory
+     * 
+     * @param directory The journal directory, on a local disk; created if missing
+     * @throws IOException If the journal cannot be opened
+     */
+    public static void open(Path directory) throws IOException {
+        open(directory, DEFAULT_SEGMENT_BYTES, DEFAULT_MAX_BYTES);
+    }
+    
+    /**
+     * Open the outbox and start delivering the calls recovered from the directory
+     * 
+     * @param directory The journal directory, on a local disk; created if missing
+     * @param segmentBytes The size of each segment file, which is also the largest call
+     * @param maxBytes The disk space of the journal; enqueue(...) is rejected beyond it
+     * @throws IOException If the journal cannot be opened
+     * @throws IllegalStateException If the outbox is already open
+     */
+    public static synchronized void open(Path directory, int segmentBytes, long maxBytes) throws IOException {
+        if (journal != null) {
+            throw new IllegalStateException("n8n outbox is already open");
+        }
+        if (segmentBytes < 4096 || maxBytes < segmentBytes) {
+            throw new IllegalArgumentException("Segments must be at least 4096 bytes and fit into the maximum size");
+        }
+        N8nOutboxJournal opened = N8nOutboxJournal.open(directory, segmentBytes, maxBytes);
+        N8nOutboxJournal retries = null;
+        try {
+            // Room for the retry header of the largest call
+            retries = N8nOutboxJournal.open(directory.resolve(RETRY_DIRECTORY), segmentBytes + RETRY_HEADER_BYTES,
+                                            maxBytes);
+            Path deadLetters = directory.resolve(DEAD_LETTER_FILE);
+            synchronized (DEAD_LETTER_LOCK) {
+                DEAD_LETTERS.set(Files.exists(deadLetters) ? readDeadLetters(deadLetters).size() : 0);
+            }
+            deadLetterFile = deadLetters;
+        } catch (IOException | RuntimeException e) {
+            closeQuietly(opened);
+            if (retries != null) {
+                closeQuietly(retries);
+            }
+            throw e;
+        }
+        N8nOutboxJournal openedRetries = retries;
+        journal = opened;
+        retryJournal = openedRetries;
+        settledCalls = 0;
+        settledRetries = 0;
+        openJournal = opened;
+        openRetryJournal = openedRetries;
+        dispatcher = N8nExecutors.daemonThreadFactory("n8n-outbox")
+            .newThread(new Dispatcher(opened, openedRetries));
+        dispatcher.start();
+        N8nLog.info(() -> "n8n outbox opened in " + directory + " with " + getPendingCount() + " pending calls");
+    }
+    
+    /**
+     * Stop the dispatcher and close the journal; calls not delivered yet are delivered
+     * after the next open(...)
+     */
+    public static synchronized void close() {
+        if (journal == null) {
+            return;
+        }
+        openJournal = null;
+        openRetryJournal = null;
+        dispatcher.interrupt();
+        try {
+            dispatcher.join();
+            journal.close();
+            retryJournal.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        journal = null;
+        retryJournal = null;
+        dispatcher = null;
+        N8nLog.info(() -> "n8n outbox closed");
+    }
+    
+    private static void closeQuietly(N8nOutboxJournal opened) {
+        try {
+            opened.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    public static boolean isOpen() {
+        return openJournal != null;
+    }
+    
+    /**
+     * Enqueue a JSON webhook call; plain text input is wrapped as {"message": "..."}
+     * 
+     * @return A future completed once the call has been forced to disk
+     * @throws Exception If the outbox is not open or full, or the inputs are invalid
+     */
+    public static CompletableFuture<Void> enqueue(String apiKey, String webhookEndpoint, String inputData,
+                                                  String sessionId) throws Exception {
+        return enqueue(apiKey, webhookEndpoint, N8nAction.ensureJsonFormat(inputData), sessionId,
+                       "application/json", 10);
+    }
+    
+    /**
+     * Enqueue a webhook call
+     * 
+     * @param apiKey The n8n API key for authentication (optional, can be null)
+     * @param webhookEndpoint The n8n webhook URL
+     * @param inputData The request body, sent as-is
+     * @param sessionId The session ID for n8n Simple Memory (required)
+     * @param contentType The content type of the request body
+     * @param timeoutMinutes Timeout in minutes for each delivery attempt
+     * @return A future completed once the call has been forced to disk
+     * @throws Exception If the outbox is not open or full, or the inputs are invalid
+     */
+    public static CompletableFuture<Void> enqueue(String apiKey, String webhookEndpoint, String inputData,
+                                                  String sessionId, String contentType,
+                                                  int timeoutMinutes) throws Exception {
+        N8nOutboxJournal current = openJournal;
+        if (current == null) {
+            throw new N8nRejectedException("n8n outbox is not open");
+        }
+        if (webhookEndpoint == null || webhookEndpoint.trim().isEmpty()) {
+            throw new Exception("Webhook endpoint is required and cannot be empty");
+        }
+        if (!webhookEndpoint.startsWith("http://") && !webhookEndpoint.startsWith("https://")
+                && !N8nEndpointGroup.isGroupUrl(webhookEndpoint)) {
+            throw new Exception("Webhook endpoint must be a valid URL starting with http:// or https://");
+        }
+        if (sessionId == null || sessionId.trim().isEmpty()) {
+            throw new Exception("Session ID is required for n8n Simple Memory functionality");
+        }
+        Call call = new Call(UUID.randomUUID().toString(), System.currentTimeMillis(), apiKey, webhookEndpoint,
+                             sessionId, contentType, timeoutMinutes, inputData != null ? inputData : "");
+        return current.append(call.toBytes());
+    }
+    
+    /**
+     * Set the retry policy of outbox deliveries
+     * 
+     * Each attempt is a complete call, including the quick retries of the endpoint's
+     * own retry policy. Locally rejected attempts (circuit breaker, limits) are
+     * retried until the retry budget runs out, whatever the maximum number of attempts.
+     * 
+     * @param policy The policy, or null to restore DEFAULT_RETRY_POLICY
+     */
+    public static void setRetryPolicy(N8nRetryPolicy policy) {
+        retryPolicy = policy != null ? policy : DEFAULT_RETRY_POLICY;
+    }
+    
+    /**
+     * Set how many calls the dispatcher sends concurrently (default: 32)
+     */
+    public static void setBatchSize(int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Batch size must be at least 1");
+        }
+        batchSize = size;
+    }
+    
+    /**
+     * @return Calls enqueued and not yet delivered or dead-lettered, including calls
+     *         waiting for a retry, or 0 if the outbox is not open
+     */
+    public static long getPendingCount() {
+        N8nOutboxJournal current = openJournal;
+        N8nOutboxJournal retries = openRetryJournal;
+        if (current == null || retries == null) {
+            return 0;
+        }
+        return Math.max(0, current.getPendingCount() - settledCalls)
+            + Math.max(0, retries.getPendingCount() - settledRetries);
+    }
+    
+    /**
+     * @return Calls that failed and wait for their next attempt, or 0 if the outbox is not open
+     */
+    public static long getRetryingCount() {
+        N8nOutboxJournal retries = openRetryJournal;
+        return retries != null ? Math.max(0, retries.getPendingCount() - settledRetries) : 0;
+    }
+    
+    /**
+     * @return Calls delivered since the JVM started
+     */
+    public static long getDeliveredCount() {
+        return DELIVERED.get();
+    }
+    
+    /**
+     * @return Calls in the dead-letter file
+     */
+    public static long getDeadLetterCount() {
+        return DEAD_LETTERS.get();
+    }
+    
+    /**
+     * Enqueue all calls of the dead-letter file again and empty it
+     * 
+     * If the outbox fills up part-way, the calls enqueued so far are removed from the
+     * dead-letter file before the exception is thrown, so a later replay does not
+     * enqueue them twice.
+     * 
+     * @return The number of calls enqueued
+     * @throws Exception If the outbox is not open or full, or the file cannot be read
+     */
+    public static int replayDeadLetters() throws Exception {
+        Path file = deadLetterFile;
+        N8nOutboxJournal current = openJournal;
+        if (file == null || current == null) {
+            throw new N8nRejectedException("n8n outbox is not open");
+        }
+        synchronized (DEAD_LETTER_LOCK) {
+            if (!Files.exists(file)) {
+                return 0;
+            }
+            List<byte[]> entries = readDeadLetters(file);
+            int replayed = 0;
+            try {
+                for (; replayed < entries.size(); replayed++) {
+                    current.append(deadLetterCall(entries.get(replayed)));
+                }
+            } catch (IOException | N8nRejectedException e) {
+                List<byte[]> remaining = entries.subList(replayed, entries.size());
+                rewriteDeadLetters(file, remaining);
+                DEAD_LETTERS.set(remaining.size());
+                N8nLog.warn("Replayed " + replayed + " of " + entries.size() + " dead-lettered n8n outbox calls: "
+                            + e.getMessage());
+                throw e;
+            }
+            Files.delete(file);
+            DEAD_LETTERS.set(0);
+            N8nLog.info(() -> "Replayed " + entries.size() + " dead-lettered n8n outbox calls");
+            return entries.size();
+        }
+    }
+    
+    /**
+     * The dispatcher thread
+     * 
+     * Up to batchSize calls are in flight, and each completion is handled as it arrives,
+     * so a call that hangs only occupies its own slot. A completed call is settled once it
+     * is delivered, its retry is on disk or it is dead-lettered. Each step is recorded on
+     * the Delivery, so after an I/O error only the missing steps are repeated and a
+     * delivered call is not sent again. The journals are checkpointed in journal order,
+     * up to the first call that is not settled yet.
+     */
+    private static final class Dispatcher implements Runnable {
+        private final N8nOutboxJournal source;
+        private final N8nOutboxJournal retries;
+        private final Schedule schedule;
+        // New calls in journal order, from the checkpoint on
+        private final ArrayDeque<Delivery> sourceOrder = new ArrayDeque<>();
+        // Settled calls in sourceOrder, behind one that is not settled yet
+        private int settledAhead;
+        // Filled by the completions of the calls in flight
+        private final BlockingQueue<Delivery> completed = new LinkedBlockingQueue<>();
+        // Completed calls that are not settled yet
+        private final List<Delivery> unsettled = new ArrayList<>();
+        private int inFlight;
+        
+        Dispatcher(N8nOutboxJournal source, N8nOutboxJournal retries) {
+            this.source = source;
+            this.retries = retries;
+            this.schedule = new Schedule(retries);
+        }
+        
+        @Override
+        public void run() {
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    settleCompleted();
+                    checkpoint();
+                    if (!startCalls()) {
+                        await();
+                    }
+                } catch (InterruptedException e) {
+                    // Closed; calls not settled yet are sent again after the next open
+                    return;
+                } catch (IOException | RuntimeException e) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        // Interrupted file I/O on close
+                        return;
+                    }
+                    N8nLog.error("n8n outbox dispatcher failed, retrying in 1 second", e);
+                    try {
+                        Thread.sleep(1000);
+                    } catch (InterruptedException interrupted) {
+                        return;
+                    }
+                }
+            }
+        }
+        
+        private void settleCompleted() throws IOException, InterruptedException {
+            takeCompleted(completed.poll());
+            Iterator<Delivery> pending = unsettled.iterator();
+            while (pending.hasNext()) {
+                settle(pending.next());
+                pending.remove();
+            }
+        }
+        
+        /**
+         * Move a completed call and all others completed meanwhile to the unsettled calls
+         */
+        private void takeCompleted(Delivery delivery) {
+            for (; delivery != null; delivery = completed.poll()) {
+                unsettled.add(delivery);
+                inFlight--;
+            }
+        }
+        
+        private void settle(Delivery delivery) throws IOException, InterruptedException {
+            if (delivery.failure == null) {
+                DELIVERED.incrementAndGet();
+            } else {
+                if (delivery.nextAttemptAtMillis == Delivery.UNDECIDED) {
+                    decideNextAttempt(delivery);
+                }
+                if (delivery.nextAttemptAtMillis != Delivery.DEAD_LETTER) {
+                    appendRetry(delivery);
+                }
+                if (delivery.nextAttemptAtMillis == Delivery.DEAD_LETTER) {
+                    deadLetter(delivery.call, delivery.attempts + 1, delivery.failure);
+                }
+            }
+            delivery.call = null;
+            delivery.settled = true;
+            if (delivery.retry) {
+                schedule.settled();
+            } else {
+                settledAhead++;
+                settledCalls = settledAhead;
+            }
+        }
+        
+        private void decideNextAttempt(Delivery delivery) {
+            N8nRetryPolicy policy = retryPolicy;
+            int attempt = delivery.attempts + 1;
+            // A call held back locally (e.g. open circuit) never reached n8n: its backoff
+            // grows, but only the budget limits its retries, or a breaker that stays open
+            // longer than the backoff would use up the attempts of every waiting call
+            boolean rejected = isRejected(delivery.failure);
+            int counted = rejected ? Math.max(1, Math.min(attempt, policy.getMaxAttempts() - 1)) : attempt;
+            // The budget counts from the first attempt, also across restarts
+            long firstAttemptNanos = System.nanoTime()
+                - (System.currentTimeMillis() - delivery.firstAttemptAtMillis) * 1_000_000;
+            long delay = retryDelayMillis(policy, counted, delivery.failure, firstAttemptNanos);
+            if (delay < 0) {
+                delivery.nextAttemptAtMillis = Delivery.DEAD_LETTER;
+                return;
+            }
+            delivery.nextAttemptAtMillis = System.currentTimeMillis() + delay;
+            if (rejected) {
+                N8nLog.debug(() -> "n8n outbox call to " + delivery.webhookEndpoint + " rejected locally, retrying in "
+                                   + delay + " ms");
+                return;
+            }
+            N8nLog.warn("n8n outbox call to " + delivery.webhookEndpoint + " failed (attempt " + attempt + ": "
+                        + N8nLog.truncate(delivery.failure.getMessage(), 200) + "), retrying in " + delay + " ms");
+        }
+        
+        /**
+         * Append the call's next attempt to the retry journal and wait until it is on disk,
+         * or mark the call for the dead-letter file if the retry journal is full
+         */
+        private void appendRetry(Delivery delivery) throws IOException, InterruptedException {
+            if (delivery.retryWritten == null) {
+                try {
+                    delivery.retryWritten = retries.append(
+                        Delivery.toRetryBytes(delivery.nextAttemptAtMillis, delivery.attempts + 1,
+                                              delivery.firstAttemptAtMillis, delivery.call));
+                } catch (N8nRejectedException full) {
+                    delivery.failure = full;
+                    delivery.nextAttemptAtMillis = Delivery.DEAD_LETTER;
+                    return;
+                }
+            }
+            try {
+                delivery.retryWritten.get();
+            } catch (ExecutionException e) {
+                // Appended again next time; the retry may then be attempted twice
+                delivery.retryWritten = null;
+                throw new IOException("Could not force n8n outbox retry journal to disk", e.getCause());
+            }
+        }
+        
+        private void checkpoint() throws IOException {
+            int count = checkpointSettled(source, sourceOrder);
+            if (count > 0) {
+                settledAhead -= count;
+                settledCalls = settledAhead;
+            }
+            schedule.checkpoint();
+        }
+        
+        /**
+         * Send due retries, then new calls, while slots are free
+         * 
+         * @return Whether a call was sent
+         */
+        private boolean startCalls() throws IOException {
+            schedule.load();
+            long now = System.currentTimeMillis();
+            boolean started = false;
+            while (inFlight < batchSize) {
+                Delivery delivery = schedule.pollDue(now);
+                if (delivery == null && canReadSource()) {
+                    N8nOutboxJournal.Record record = source.next();
+                    if (record != null) {
+                        delivery = new Delivery(record.payload, 0, now, now, record, false);
+                        sourceOrder.add(delivery);
+                    }
+                }
+                if (delivery == null) {
+                    break;
+                }
+                send(delivery);
+                started = true;
+            }
+            return started;
+        }
+        
+        /**
+         * @return Whether new calls may be read; past MAX_SCHEDULED calls held in memory
+         *         they wait in the journal
+         */
+        private boolean canReadSource() {
+            return schedule.size() < MAX_SCHEDULED && sourceOrder.size() < MAX_SCHEDULED;
+        }
+        
+        private void send(Delivery delivery) {
+            inFlight++;
+            CompletableFuture<String> sent;
+            try {
+                Call call = Call.fromBytes(delivery.call);
+                delivery.webhookEndpoint = N8nLog.truncate(call.webhookEndpoint, 200);
+                sent = new N8nAction(call.apiKey, call.webhookEndpoint, call.body, call.sessionId, call.contentType,
+                                     call.timeoutMinutes)
+                    .withHeader(CALL_ID_HEADER, call.id)
+                    .withRawResponse()
+                    .executeUncachedAsync();
+            } catch (Exception e) {
+                sent = CompletableFuture.failedFuture(e);
+            }
+            sent.whenComplete((response, error) -> {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null
+                    ? error.getCause() : error;
+                if (cause != null) {
+                    delivery.failure = cause instanceof Exception ? (Exception) cause : new Exception(cause);
+                }
+                completed.add(delivery);
+                source.wakeReader();
+            });
+        }
+        
+        /**
+         * Wait for a completion, a new call or the next due retry
+         */
+        private void await() throws InterruptedException {
+            long timeout = Math.max(1, Math.min(1000, schedule.nextDueMillis() - System.currentTimeMillis()));
+            if (inFlight < batchSize && canReadSource()) {
+                // Completions wake the reader as well
+                source.awaitRecords(timeout);
+            } else {
+                takeCompleted(completed.poll(timeout, TimeUnit.MILLISECONDS));
+            }
+        }
+    }
+    
+    /**
+     * Checkpoint a journal past the settled calls at the head of its journal order and
+     * remove them
+     * 
+     * @return The number of calls checkpointed
+     */
+    private static int checkpointSettled(N8nOutboxJournal journal, ArrayDeque<Delivery> journalOrder)
+            throws IOException {
+        Delivery last = null;
+        int count = 0;
+        for (Delivery delivery : journalOrder) {
+            if (!delivery.settled) {
+                break;
+            }
+            last = delivery;
+            count++;
+        }
+        if (last == null) {
+            return 0;
+        }
+        journal.checkpoint(last.record, count);
+        for (int i = 0; i < count; i++) {
+            journalOrder.pollFirst();
+        }
+        return count;
+    }
+    
+    /**
+     * @return The delay before the next attempt, or -1 if the call fails permanently
+     */
+    private static long retryDelayMillis(N8nRetryPolicy policy, int attempt, Exception failure,
+                                         long firstAttemptNanos) {
+        Exception cause = failure;
+        for (Throwable t = failure; t != null; t = t.getCause()) {
+            if (t instanceof N8nHttpException || t instanceof N8nRejectedException) {
+                cause = (Exception) t;
+                break;
+            }
+            if (t instanceof IOException) {
+                cause = (Exception) t;
+            }
+        }
+        if (cause instanceof N8nRejectedException) {
+            // Held back locally (e.g. open circuit), so n8n may well accept it later
+            cause = new IOException(cause.getMessage(), cause);
+        }
+        return policy.retryDelayMillis(attempt, cause, firstAttemptNanos);
+    }
+    
+    /**
+     * @return Whether the call was rejected locally, without contacting n8n
+     */
+    private static boolean isRejected(Exception failure) {
+        for (Throwable t = failure; t != null; t = t.getCause()) {
+            if (t instanceof N8nRejectedException) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private static void deadLetter(byte[] call, int attempts, Exception failure) throws IOException {
+        String reason = failure.getMessage();
+        N8nLog.warn("n8n outbox call dead-lettered after " + attempts + " attempts: " + N8nLog.truncate(reason, 200));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(call.length);
+        out.write(call);
+        out.writeLong(System.currentTimeMillis());
+        out.writeInt(attempts);
+        writeString(out, reason);
+        ByteBuffer framed = frameDeadLetter(bytes.toByteArray());
+        synchronized (DEAD_LETTER_LOCK) {
+            try (FileChannel channel = FileChannel.open(deadLetterFile, StandardOpenOption.CREATE,
+                                                        StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                while (framed.hasRemaining()) {
+                    channel.write(framed);
+                }
+                channel.force(false);
+            }
+            DEAD_LETTERS.incrementAndGet();
+        }
+    }
+    
+    /**
+     * @return A dead-letter entry with its length and CRC-32C, ready to write
+     */
+    private static ByteBuffer frameDeadLetter(byte[] entry) {
+        CRC32C crc = new CRC32C();
+        crc.update(entry);
+        ByteBuffer framed = ByteBuffer.allocate(8 + entry.length);
+        framed.putInt(entry.length).putInt((int) crc.getValue()).put(entry).flip();
+        return framed;
+    }
+    
+    /**
+     * Replace the dead-letter file with the given entries, or delete it if there are none
+     */
+    private static void rewriteDeadLetters(Path file, List<byte[]> entries) throws IOException {
+        if (entries.isEmpty()) {
+            Files.deleteIfExists(file);
+            return;
+        }
+        Path temporary = file.resolveSibling(DEAD_LETTER_FILE + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                    StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (byte[] entry : entries) {
+                ByteBuffer framed = frameDeadLetter(entry);
+                while (framed.hasRemaining()) {
+                    channel.write(framed);
+                }
+            }
+            channel.force(false);
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    
+    /**
+     * @return The complete entries of a dead-letter file, without their length and CRC-32C
+     */
+    private static List<byte[]> readDeadLetters(Path file) throws IOException {
+        ByteBuffer content = ByteBuffer.wrap(Files.readAllBytes(file));
+        List<byte[]> entries = new ArrayList<>();
+        CRC32C crc = new CRC32C();
+        while (content.remaining() >= 8) {
+            int length = content.getInt();
+            int checksum = content.getInt();
+            if (length <= 0 || length > content.remaining()) {
+                break;
+            }
+            byte[] entry = new byte[length];
+            content.get(entry);
+            crc.reset();
+            crc.update(entry);
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            entries.add(entry);
+        }
+        return entries;
+    }
+    
+    /**
+     * @return The journal payload of the call in a dead-letter entry
+     */
+    private static byte[] deadLetterCall(byte[] entry) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(entry));
+        byte[] call = new byte[in.readInt()];
+        in.readFully(call);
+        return call;
+    }
+    
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+    
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+    
+    /**
+     * A webhook call as stored in the journal
+     */
+    private static final class Call {
+        final String id;
+        final long enqueuedAtMillis;
+        final String apiKey;
+        final String webhookEndpoint;
+        final String sessionId;
+        final String contentType;
+        final int timeoutMinutes;
+        final String body;
+        
+        Call(String id, long enqueuedAtMillis, String apiKey, String webhookEndpoint, String sessionId,
+             String contentType, int timeoutMinutes, String body) {
+            this.id = id;
+            this.enqueuedAtMillis = enqueuedAtMillis;
+            this.apiKey = apiKey;
+            this.webhookEndpoint = webhookEndpoint;
+            this.sessionId = sessionId;
+            this.contentType = contentType;
+            this.timeoutMinutes = timeoutMinutes;
+            this.body = body;
+        }
+        
+        byte[] toBytes() throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(128 + body.length());
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(FORMAT_VERSION);
+            writeString(out, id);
+            out.writeLong(enqueuedAtMillis);
+            writeString(out, apiKey);
+            writeString(out, webhookEndpoint);
+            writeString(out, sessionId);
+            writeString(out, contentType);
+            out.writeInt(timeoutMinutes);
+            writeString(out, body);
+            return bytes.toByteArray();
+        }
+        
+        static Call fromBytes(byte[] payload) throws IOException {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+            byte version = in.readByte();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Unsupported n8n outbox record version " + version);
+            }
+            return new Call(readString(in), in.readLong(), readString(in), readString(in), readString(in),
+                            readString(in), in.readInt(), readString(in));
+        }
+    }
+    
+    /**
+     * One delivery attempt of a call, a new call from the journal or a due retry, and the
+     * progress of settling it
+     * 
+     * Only touched by the dispatcher, apart from failure, which the completion sets
+     * before handing the delivery over.
+     */
+    private static final class Delivery {
+        static final long UNDECIDED = Long.MIN_VALUE;
+        static final long DEAD_LETTER = -1;
+        
+        // Dropped once settled
+        byte[] call;
+        final int attempts;
+        final long firstAttemptAtMillis;
+        final long dueAtMillis;
+        // The position of the call's journal record, without its payload
+        final N8nOutboxJournal.Record record;
+        // Whether the record is in the retry journal
+        final boolean retry;
+        String webhookEndpoint;
+        // Null once delivered
+        Exception failure;
+        long nextAttemptAtMillis = UNDECIDED;
+        // Completed once the next attempt is on disk
+        CompletableFuture<Void> retryWritten;
+        boolean settled;
+        
+        Delivery(byte[] call, int attempts, long firstAttemptAtMillis, long dueAtMillis,
+                 N8nOutboxJournal.Record record, boolean retry) {
+            this.call = call;
+            this.attempts = attempts;
+            this.firstAttemptAtMillis = firstAttemptAtMillis;
+            this.dueAtMillis = dueAtMillis;
+            this.record = new N8nOutboxJournal.Record(null, record.segment, record.endOffset);
+            this.retry = retry;
+        }
+        
+        static byte[] toRetryBytes(long dueAtMillis, int attempts, long firstAttemptAtMillis, byte[] call)
+                throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(RETRY_HEADER_BYTES + call.length);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeLong(dueAtMillis);
+            out.writeInt(attempts);
+            out.writeLong(firstAttemptAtMillis);
+            out.write(call);
+            return bytes.toByteArray();
+        }
+        
+        static Delivery fromRetry(N8nOutboxJournal.Record record) {
+            ByteBuffer in = ByteBuffer.wrap(record.payload);
+            long dueAtMillis = in.getLong();
+            int attempts = in.getInt();
+            long firstAttemptAtMillis = in.getLong();
+            byte[] call = new byte[in.remaining()];
+            in.get(call);
+            return new Delivery(call, attempts, firstAttemptAtMillis, dueAtMillis, record, true);
+        }
+    }
+    
+    /**
+     * The calls of the retry journal, ordered by the time of their next attempt
+     * 
+     * Only touched by the dispatcher. The retry journal is checkpointed up to the first
+     * retry that is not settled yet.
+     */
+    private static final class Schedule {
+        private final N8nOutboxJournal retries;
+        private final PriorityQueue<Delivery> waiting =
+            new PriorityQueue<>(Comparator.comparingLong(delivery -> delivery.dueAtMillis));
+        // Retries in journal order, from the checkpoint on
+        private final ArrayDeque<Delivery> journalOrder = new ArrayDeque<>();
+        // Settled retries in journalOrder, behind one that is not settled yet
+        private int settledAhead;
+        
+        Schedule(N8nOutboxJournal retries) {
+            this.retries = retries;
+        }
+        
+        /**
+         * Read the retries appended since the previous call
+         */
+        void load() {
+            N8nOutboxJournal.Record record;
+            while ((record = retries.next()) != null) {
+                Delivery delivery = Delivery.fromRetry(record);
+                waiting.add(delivery);
+                journalOrder.add(delivery);
+            }
+        }
+        
+        /**
+         * @return The earliest retry if it is due, or null
+         */
+        Delivery pollDue(long nowMillis) {
+            return !waiting.isEmpty() && waiting.peek().dueAtMillis <= nowMillis ? waiting.poll() : null;
+        }
+        
+        int size() {
+            return waiting.size();
+        }
+        
+        /**
+         * @return The time of the earliest retry, or Long.MAX_VALUE if none is waiting
+         */
+        long nextDueMillis() {
+            return waiting.isEmpty() ? Long.MAX_VALUE : waiting.peek().dueAtMillis;
+        }
+        
+        /**
+         * Count a retry that was settled
+         */
+        void settled() {
+            settledAhead++;
+            settledRetries = settledAhead;
+        }
+        
+        /**
+         * Checkpoint past the settled retries at the head of the journal order
+         */
+        void checkpoint() throws IOException {
+            int count = checkpointSettled(retries, journalOrder);
+            if (count > 0) {
+                settledAhead -= count;
+                settledRetries = settledAhead;
+            }
+        }
+    }
+}
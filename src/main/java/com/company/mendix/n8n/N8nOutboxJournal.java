@@ -0,0 +1,422 @@
+package com.company.mendix.n8n;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only, memory-mapped journal of the outbox (see N8nOutbox)
+ * 
+ * The journal is a directory of fixed-size segment files, each mapped into memory
+ * once. A record is a length, a CRC-32C and the payload; appending one is a copy into
+ * the mapped segment, so it survives a crash of the JVM as soon as append(...)
+ * returns. A committer thread forces written segments to disk and then completes
+ * the futures of all records appended since its previous force (group commit): under
+ * load one fsync covers many records.
+ * 
+ * The single reader (the dispatcher) reads records in append order. Its checkpoint,
+ * the position up to which records are handled, is stored in a small file; segments
+ * entirely before the checkpoint are deleted. After a restart reading resumes at the
+ * checkpoint, so records handled after the last checkpoint are read again
+ * (at-least-once). A torn record at the end of the journal fails its CRC and is
+ * discarded on recovery.
+ */
+final class N8nOutboxJournal {
+    
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+    private static final int HEADER_BYTES = 8;
+    
+    private final Path directory;
+    private final int segmentBytes;
+    private final int maxSegments;
+    private final AtomicLong pending = new AtomicLong();
+    // Guarded by this
+    private final TreeMap<Long, Segment> segments = new TreeMap<>();
+    private Segment active;
+    private List<Segment> dirty = new ArrayList<>();
+    private List<CompletableFuture<Void>> awaitingCommit = new ArrayList<>();
+    private final Thread committer;
+    private volatile boolean closed;
+    // Only touched by the reader
+    private Segment readSegment;
+    private int readOffset;
+    // Guarded by this
+    private boolean readerWoken;
+    
+    private N8nOutboxJournal(Path directory, int segmentBytes, int maxSegments) {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.maxSegments = maxSegments;
+        this.committer = N8nExecutors.daemonThreadFactory("n8n-outbox-commit").newThread(this::commitLoop);
+    }
+    
+    /**
+     * Open the journal in a directory, recovering the records after the checkpoint
+     * 
+     * @param directory The journal directory; created if missing
+     * @param segmentBytes The size of each segment file
+     * @param maxBytes The disk space the journal may use; appends beyond it are rejected
+     */
+    static N8nOutboxJournal open(Path directory, int segmentBytes, long maxBytes) throws IOException {
+        Files.createDirectories(directory);
+        N8nOutboxJournal journal = new N8nOutboxJournal(directory, segmentBytes,
+                                                        (int) Math.max(2, Math.min(Integer.MAX_VALUE, maxBytes / segmentBytes)));
+        journal.recover();
+        journal.committer.start();
+        return journal;
+    }
+    
+    private synchronized void recover() throws IOException {
+        long checkpointSegment = 1;
+        int checkpointOffset = 0;
+        Path checkpoint = directory.resolve(CHECKPOINT_FILE);
+        if (Files.exists(checkpoint)) {
+            ByteBuffer stored = ByteBuffer.wrap(Files.readAllBytes(checkpoint));
+            checkpointSegment = stored.getLong();
+            checkpointOffset = stored.getInt();
+        }
+        
+        List<Long> numbers = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                numbers.add(Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+            }
+        }
+        numbers.sort(null);
+        for (long number : numbers) {
+            if (number < checkpointSegment) {
+                Files.deleteIfExists(segmentFile(number));
+                continue;
+            }
+            Segment segment = Segment.map(segmentFile(number), number, segmentBytes);
+            segment.recover(segment.number == checkpointSegment ? checkpointOffset : 0, pending);
+            if (active != null) {
+                active.sealed = true;
+            }
+            segments.put(number, segment);
+            active = segment;
+        }
+        if (active == null) {
+            active = Segment.map(segmentFile(checkpointSegment), checkpointSegment, segmentBytes);
+            segments.put(checkpointSegment, active);
+        }
+        readSegment = segments.firstEntry().getValue();
+        readOffset = readSegment.number == checkpointSegment ? checkpointOffset : 0;
+        if (pending.get() > 0) {
+            N8nLog.info(() -> "Recovered " + pending.get() + " pending n8n outbox calls from " + directory);
+        }
+    }
+    
+    /**
+     * Append a record
+     * 
+     * @return A future completed once the record has been forced to disk
+     * @throws N8nRejectedException If the journal has no space left
+     */
+    synchronized CompletableFuture<Void> append(byte[] payload) throws IOException, N8nRejectedException {
+        if (closed) {
+            throw new IOException("n8n outbox is closed");
+        }
+        int size = HEADER_BYTES + payload.length;
+        if (size > segmentBytes) {
+            throw new N8nRejectedException("n8n outbox call of " + payload.length + " bytes exceeds the segment size of "
+                                           + segmentBytes + " bytes");
+        }
+        if (active.written + size > active.buffer.capacity()) {
+            if (segments.size() >= maxSegments) {
+                throw new N8nRejectedException("n8n outbox is full (" + segments.size() + " segments of "
+                                               + segmentBytes + " bytes)");
+            }
+            roll();
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(payload);
+        int offset = active.written;
+        ByteBuffer target = active.buffer.duplicate();
+        target.position(offset + HEADER_BYTES);
+        target.put(payload);
+        target.putInt(offset + 4, (int) crc.getValue());
+        // The length goes last: a record is only readable once it is complete
+        target.putInt(offset, payload.length);
+        active.written = offset + size;
+        if (dirty.isEmpty() || dirty.get(dirty.size() - 1) != active) {
+            dirty.add(active);
+        }
+        CompletableFuture<Void> committed = new CompletableFuture<>();
+        awaitingCommit.add(committed);
+        pending.incrementAndGet();
+        notifyAll();
+        return committed;
+    }
+    
+    private void roll() throws IOException {
+        long number = active.number + 1;
+        Segment next = Segment.map(segmentFile(number), number, segmentBytes);
+        segments.put(number, next);
+        active.sealed = true;
+        active = next;
+    }
+    
+    /**
+     * @return The next unread record, or null if the reader has caught up
+     */
+    Record next() {
+        for (;;) {
+            Segment segment = readSegment;
+            // Read sealed before written: a sealed segment's length is final
+            boolean sealed = segment.sealed;
+            if (readOffset < segment.written) {
+                ByteBuffer source = segment.buffer.duplicate();
+                source.position(readOffset);
+                int length = source.getInt();
+                source.getInt();
+                byte[] payload = new byte[length];
+                source.get(payload);
+                readOffset += HEADER_BYTES + length;
+                return new Record(payload, segment.number, readOffset);
+            }
+            if (!sealed) {
+                return null;
+            }
+            synchronized (this) {
+                Map.Entry<Long, Segment> following = segments.higherEntry(segment.number);
+                if (following == null) {
+                    return null;
+                }
+                readSegment = following.getValue();
+                readOffset = 0;
+            }
+        }
+    }
+    
+    /**
+     * Wait until a record is appended after the reader's position, wakeReader() is
+     * called or the timeout passes
+     */
+    synchronized void awaitRecords(long timeoutMillis) throws InterruptedException {
+        if (!closed && !readerWoken && readOffset >= readSegment.written && readSegment == active) {
+            wait(timeoutMillis);
+        }
+        readerWoken = false;
+    }
+    
+    /**
+     * End the reader's current or next awaitRecords(...) early
+     */
+    synchronized void wakeReader() {
+        readerWoken = true;
+        notifyAll();
+    }
+    
+    /**
+     * Store the reader's progress: all records up to and including the record are handled
+     * 
+     * @param handled The number of records handled since the previous checkpoint
+     */
+    void checkpoint(Record record, int handled) throws IOException {
+        ByteBuffer stored = ByteBuffer.allocate(12);
+        stored.putLong(record.segment).putInt(record.endOffset).flip();
+        Path temporary = directory.resolve(CHECKPOINT_FILE + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                    StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.write(stored);
+            channel.force(false);
+        }
+        Files.move(temporary, directory.resolve(CHECKPOINT_FILE), StandardCopyOption.REPLACE_EXISTING,
+                   StandardCopyOption.ATOMIC_MOVE);
+        pending.addAndGet(-handled);
+        
+        List<Segment> obsolete = new ArrayList<>();
+        synchronized (this) {
+            while (segments.firstKey() < record.segment) {
+                obsolete.add(segments.pollFirstEntry().getValue());
+            }
+        }
+        for (Segment segment : obsolete) {
+            segment.close();
+            try {
+                Files.deleteIfExists(segmentFile(segment.number));
+            } catch (IOException e) {
+                // E.g. Windows refuses to delete files that are still mapped
+                N8nLog.warn("Could not delete n8n outbox segment " + segmentFile(segment.number) + ": " + e.getMessage());
+            }
+        }
+    }
+    
+    /**
+     * @return The number of records appended and not yet checkpointed
+     */
+    long getPendingCount() {
+        return pending.get();
+    }
+    
+    boolean isClosed() {
+        return closed;
+    }
+    
+    /**
+     * Stop the committer after a final force and close the segment files
+     */
+    void close() throws InterruptedException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            notifyAll();
+        }
+        committer.join();
+        synchronized (this) {
+            for (Segment segment : segments.values()) {
+                segment.close();
+            }
+        }
+    }
+    
+    /**
+     * Force the segments written since the previous force and complete their records' futures
+     */
+    private void commitLoop() {
+        for (;;) {
+            List<Segment> toForce;
+            List<CompletableFuture<Void>> committed;
+            synchronized (this) {
+                while (dirty.isEmpty() && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+                if (dirty.isEmpty()) {
+                    return;
+                }
+                toForce = dirty;
+                committed = awaitingCommit;
+                dirty = new ArrayList<>();
+                awaitingCommit = new ArrayList<>();
+            }
+            try {
+                for (Segment segment : toForce) {
+                    segment.buffer.force();
+                }
+                for (CompletableFuture<Void> future : committed) {
+                    future.complete(null);
+                }
+            } catch (RuntimeException e) {
+                // force() reports I/O errors as UncheckedIOException
+                N8nLog.error("Could not force n8n outbox journal to disk", e);
+                for (CompletableFuture<Void> future : committed) {
+                    future.completeExceptionally(e);
+                }
+            }
+        }
+    }
+    
+    private Path segmentFile(long number) {
+        return directory.resolve(String.format("%s%019d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+    }
+    
+    /**
+     * A record read from the journal
+     */
+    static final class Record {
+        final byte[] payload;
+        final long segment;
+        final int endOffset;
+        
+        Record(byte[] payload, long segment, int endOffset) {
+            this.payload = payload;
+            this.segment = segment;
+            this.endOffset = endOffset;
+        }
+    }
+    
+    /**
+     * One mapped segment file
+     */
+    private static final class Segment {
+        final long number;
+        final FileChannel channel;
+        final MappedByteBuffer buffer;
+        // End of the complete records; published to the reader by the volatile write
+        volatile int written;
+        volatile boolean sealed;
+        
+        private Segment(long number, FileChannel channel, MappedByteBuffer buffer) {
+            this.number = number;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+        
+        static Segment map(Path file, long number, int size) throws IOException {
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                                                   StandardOpenOption.WRITE);
+            try {
+                // Segments keep the size they were created with
+                long length = Math.max(channel.size(), size);
+                return new Segment(number, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, length));
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+        }
+        
+        /**
+         * Find the end of the valid records, count those from the offset on and clear a torn tail
+         */
+        void recover(int fromOffset, AtomicLong pending) {
+            int capacity = buffer.capacity();
+            int position = 0;
+            CRC32C crc = new CRC32C();
+            while (position + HEADER_BYTES <= capacity) {
+                int length = buffer.getInt(position);
+                if (length <= 0 || length > capacity - position - HEADER_BYTES) {
+                    break;
+                }
+                ByteBuffer payload = buffer.duplicate();
+                payload.position(position + HEADER_BYTES).limit(position + HEADER_BYTES + length);
+                crc.reset();
+                crc.update(payload);
+                if ((int) crc.getValue() != buffer.getInt(position + 4)) {
+                    break;
+                }
+                if (position >= fromOffset) {
+                    pending.incrementAndGet();
+                }
+                position += HEADER_BYTES + length;
+            }
+            written = position;
+            if (position + 4 <= capacity && buffer.getInt(position) != 0) {
+                for (int i = position; i < capacity; i++) {
+                    buffer.put(i, (byte) 0);
+                }
+            }
+        }
+        
+        void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                N8nLog.debug(() -> "Could not close n8n outbox segment " + number + ": " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.company.mendix.n8n;
+
+/**
+ * What happens to a webhook call that exceeds the rate or concurrency limit of its endpoint
+ */
+public enum N8nOverflowPolicy {
+    /**
+     * Wait for capacity, up to the maximum wait of the limits, then reject
+     */
+    QUEUE,
+    /**
+     * Reject immediately with N8nRejectedException
+     */
+    REJECT
+}
@@ -0,0 +1,140 @@
+package com.company.mendix.n8n;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * How the status webhook of a submitted job is polled (see N8nJob)
+ * 
+ * Polls back off exponentially from initialInterval up to maxInterval, and every
+ * delay is randomized between half and all of its value, so jobs submitted together
+ * do not poll in lockstep. The backoff adapts to the workflow: while a job is
+ * younger than the typical duration of earlier jobs with the same status webhook,
+ * the next poll waits until that duration (at most maxInterval) instead of asking
+ * early. A job that has not finished within the job timeout fails.
+ * 
+ * Policies are immutable. The default policy applies to all status webhooks unless
+ * a policy is registered for a specific one:
+ * 
+ *   N8nPollingPolicy.setForEndpoint("https://n8n.example.com/webhook/report-status",
+ *       new N8nPollingPolicy(Duration.ofSeconds(5), Duration.ofMinutes(1), Duration.ofHours(2)));
+ */
+public final class N8nPollingPolicy {
+    
+    /**
+     * Default policy: first poll after 1 second, at most every 30 seconds, 60 minutes job timeout
+     */
+    public static final N8nPollingPolicy DEFAULT =
+        new N8nPollingPolicy(Duration.ofSeconds(1), Duration.ofSeconds(30), Duration.ofMinutes(60));
+    
+    private static volatile N8nPollingPolicy defaultPolicy = DEFAULT;
+    private static final Map<String, N8nPollingPolicy> ENDPOINT_POLICIES = new ConcurrentHashMap<>();
+    
+    private final Duration initialInterval;
+    private final Duration maxInterval;
+    private final Duration jobTimeout;
+    
+    /**
+     * @param initialInterval Upper bound of the delay before the first poll
+     * @param maxInterval Upper bound of the delay between any two polls
+     * @param jobTimeout Time from submission after which the job fails
+     */
+    public N8nPollingPolicy(Duration initialInterval, Duration maxInterval, Duration jobTimeout) {
+        if (initialInterval == null || initialInterval.isNegative() || initialInterval.isZero()
+                || maxInterval == null || maxInterval.compareTo(initialInterval) < 0) {
+            throw new IllegalArgumentException("Poll intervals must be positive, with the maximum at least the initial interval");
+        }
+        if (jobTimeout == null || jobTimeout.isNegative() || jobTimeout.isZero()) {
+            throw new IllegalArgumentException("Job timeout must be a positive duration");
+        }
+        this.initialInterval = initialInterval;
+        this.maxInterval = maxInterval;
+        this.jobTimeout = jobTimeout;
+    }
+    
+    /**
+     * Set the policy used for status webhooks without their own policy
+     * 
+     * @param policy The policy, or null to restore DEFAULT
+     */
+    public static void setDefault(N8nPollingPolicy policy) {
+        defaultPolicy = policy != null ? policy : DEFAULT;
+    }
+    
+    /**
+     * @return The policy used for status webhooks without their own policy
+     */
+    public static N8nPollingPolicy getDefault() {
+        return defaultPolicy;
+    }
+    
+    /**
+     * Set the policy of one status webhook (scheme, host, port and path of the URL)
+     * 
+     * @param statusWebhook The status webhook URL
+     * @param policy The policy, or null to use the default policy again
+     */
+    public static void setForEndpoint(String statusWebhook, N8nPollingPolicy policy) {
+        String key = N8nMetrics.endpointKey(statusWebhook);
+        if (policy == null) {
+            ENDPOINT_POLICIES.remove(key);
+        } else {
+            ENDPOINT_POLICIES.put(key, policy);
+        }
+    }
+    
+    /**
+     * @param statusWebhook The status webhook URL
+     * @return The policy applied to jobs polling the status webhook
+     */
+    public static N8nPollingPolicy forEndpoint(String statusWebhook) {
+        N8nPollingPolicy policy = ENDPOINT_POLICIES.get(N8nMetrics.endpointKey(statusWebhook));
+        return policy != null ? policy : defaultPolicy;
+    }
+    
+    public Duration getInitialInterval() {
+        return initialInterval;
+    }
+    
+    public Duration getMaxInterval() {
+        return maxInterval;
+    }
+    
+    public Duration getJobTimeout() {
+        return jobTimeout;
+    }
+    
+    /**
+     * Compute the delay before the next poll of a job
+     * 
+     * @param poll The number of the next poll, starting at 1
+     * @param elapsedMillis Time since the job was submitted
+     * @param typicalMillis Typical duration of earlier jobs, or 0 if unknown
+     * @return The delay in milliseconds, or -1 if the job has timed out
+     */
+    long pollDelayMillis(int poll, long elapsedMillis, double typicalMillis) {
+        long remaining = jobTimeout.toMillis() - elapsedMillis;
+        if (remaining <= 0) {
+            return -1;
+        }
+        long ceiling = initialInterval.toMillis() << Math.min(poll - 1, 30);
+        if (ceiling < 0 || ceiling > maxInterval.toMillis()) {
+            ceiling = maxInterval.toMillis();
+        }
+        // Equal jitter: uniform in [ceiling / 2, ceiling]
+        long delay = ceiling / 2 + ThreadLocalRandom.current().nextLong(ceiling / 2 + 1);
+        long untilTypical = (long) typicalMillis - elapsedMillis;
+        if (untilTypical > delay) {
+            delay = Math.min(untilTypical, maxInterval.toMillis());
+        }
+        return Math.min(delay, remaining);
+    }
+    
+    @Override
+    public String toString() {
+        return "N8nPollingPolicy[initialInterval=" + initialInterval + ", maxInterval=" + maxInterval
+            + ", jobTimeout=" + jobTimeout + "]";
+    }
+}
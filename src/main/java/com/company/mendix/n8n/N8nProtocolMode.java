@@ -0,0 +1,32 @@
+package com.company.mendix.n8n;
+
+import java.net.http.HttpClient;
+
+/**
+ * HTTP protocol used for calls to an n8n host (see N8nHttpClientPool.setProtocolMode)
+ */
+public enum N8nProtocolMode {
+    /**
+     * HTTP/1.1 only: every concurrent call needs its own keep-alive connection
+     */
+    HTTP_1_1(HttpClient.Version.HTTP_1_1),
+    
+    /**
+     * HTTP/2 where the server supports it, multiplexing concurrent calls over a
+     * single connection per host. Over TLS the protocol is negotiated with ALPN;
+     * for plain http:// endpoints the first request asks for an h2c upgrade. Either
+     * way the call falls back to HTTP/1.1 when the server (or a proxy in between)
+     * does not speak HTTP/2.
+     */
+    HTTP_2(HttpClient.Version.HTTP_2);
+    
+    private final HttpClient.Version version;
+    
+    N8nProtocolMode(HttpClient.Version version) {
+        this.version = version;
+    }
+    
+    HttpClient.Version getVersion() {
+        return version;
+    }
+}
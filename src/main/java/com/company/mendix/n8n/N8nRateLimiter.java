@@ -0,0 +1,55 @@
+package com.company.mendix.n8n;
+
+/**
+ * Token-bucket rate limiter
+ * 
+ * Tokens are added continuously at the configured rate up to the burst size.
+ * Callers reserve a token and are told how long to wait for it; reservations can
+ * drive the bucket negative, so waiting callers are served in order without
+ * holding a lock while they wait.
+ */
+final class N8nRateLimiter {
+    
+    private final double permitsPerNano;
+    private final double burst;
+    private double storedPermits;
+    private long lastRefillNanos;
+    
+    /**
+     * @param permitsPerSecond Sustained rate
+     * @param burst Maximum number of calls that can be made at once after an idle period
+     */
+    N8nRateLimiter(double permitsPerSecond, int burst) {
+        this.permitsPerNano = permitsPerSecond / 1_000_000_000.0;
+        this.burst = burst;
+        this.storedPermits = burst;
+        this.lastRefillNanos = System.nanoTime();
+    }
+    
+    /**
+     * Reserve one permit
+     * 
+     * @param maxWaitNanos The longest acceptable wait
+     * @return Nanoseconds to wait before the permit may be used, or -1 if the wait
+     *         would exceed maxWaitNanos (nothing is reserved then)
+     */
+    synchronized long reserve(long maxWaitNanos) {
+        long now = System.nanoTime();
+        storedPermits = Math.min(burst, storedPermits + (now - lastRefillNanos) * permitsPerNano);
+        lastRefillNanos = now;
+        
+        long waitNanos = storedPermits >= 1 ? 0 : (long) Math.ceil((1 - storedPermits) / permitsPerNano);
+        if (waitNanos > maxWaitNanos) {
+            return -1;
+        }
+        storedPermits -= 1;
+        return waitNanos;
+    }
+    
+    /**
+     * Give back a reserved permit that was not used, e.g. because the bulkhead rejected the call
+     */
+    synchronized void refund() {
+        storedPermits = Math.min(burst, storedPermits + 1);
+    }
+}
@@ -0,0 +1,16 @@
+package com.company.mendix.n8n;
+
+/**
+ * Thrown when a webhook call is rejected locally, without contacting n8n
+ * 
+ * For example while the circuit breaker of the endpoint is open. Rejected calls
+ * are never retried.
+ */
+public class N8nRejectedException extends Exception {
+    
+    private static final long serialVersionUID = 1L;
+    
+    public N8nRejectedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,184 @@
+package com.company.mendix.n8n;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.http.HttpRequest;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.LongConsumer;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Request body of a webhook call: an in-memory string, a file or an input stream
+ * 
+ * File and stream bodies are published to the HTTP client in chunks, so large
+ * payloads are never materialized as a String. When JSON wrapping is requested,
+ * plain text is turned into the {"message": "..."} envelope on the fly by
+ * N8nStreams.JsonEnvelopeInputStream, mirroring what ensureJsonFormat does for strings.
+ * Bodies can also be published gzip-compressed (see N8nCompression).
+ */
+final class N8nRequestBody {
+    
+    private final String text;
+    private final Path file;
+    private final InputStream stream;
+    private final boolean wrapAsJson;
+    
+    private N8nRequestBody(String text, Path file, InputStream stream, boolean wrapAsJson) {
+        this.text = text;
+        this.file = file;
+        this.stream = stream;
+        this.wrapAsJson = wrapAsJson;
+    }
+    
+    static N8nRequestBody ofText(String text) {
+        return new N8nRequestBody(text, null, null, false);
+    }
+    
+    static N8nRequestBody ofFile(Path file, boolean wrapAsJson) {
+        return new N8nRequestBody(null, file, null, wrapAsJson);
+    }
+    
+    static N8nRequestBody ofStream(InputStream stream, boolean wrapAsJson) {
+        return new N8nRequestBody(null, null, stream, wrapAsJson);
+    }
+    
+    /**
+     * Check that the body can be sent
+     */
+    void validate() throws Exception {
+        // A missing string body is sent as "{}"; only files need checking up front
+        if (file != null && !Files.isReadable(file)) {
+            throw new Exception("Input file does not exist or is not readable: " + file);
+        }
+    }
+    
+    /**
+     * Create a publisher for this body
+     * 
+     * String and file bodies can be published repeatedly; a stream body can only
+     * be read once.
+     */
+    HttpRequest.BodyPublisher publisher() throws IOException {
+        if (file != null) {
+            if (!wrapAsJson) {
+                return HttpRequest.BodyPublishers.ofFile(file);
+            }
+            return HttpRequest.BodyPublishers.ofInputStream(() -> {
+                try {
+                    return new N8nStreams.JsonEnvelopeInputStream(Files.newInputStream(file));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+        if (stream != null) {
+            InputStream source = wrapAsJson
+                ? new N8nStreams.JsonEnvelopeInputStream(stream)
+                : new BufferedInputStream(stream);
+            return HttpRequest.BodyPublishers.ofInputStream(() -> source);
+        }
+        return HttpRequest.BodyPublishers.ofString(text != null ? text : "{}");
+    }
+    
+    /**
+     * @param threshold The request compression threshold, or N8nCompression.DISABLED
+     * @return True if the body is large enough to be gzipped; stream bodies of
+     *         unknown size always are
+     */
+    boolean shouldCompress(int threshold) {
+        if (threshold == N8nCompression.DISABLED) {
+            return false;
+        }
+        if (file != null) {
+            try {
+                return Files.size(file) >= threshold;
+            } catch (IOException e) {
+                return true;
+            }
+        }
+        if (stream != null) {
+            return true;
+        }
+        return (text != null ? text.length() : 2) >= threshold;
+    }
+    
+    /**
+     * Create a publisher for this body, gzip-compressed
+     * 
+     * String bodies are compressed once, up front; file and stream bodies are
+     * compressed while they are read, like publisher() reads them uncompressed.
+     * 
+     * @param savedBytes Receives the number of bytes saved once compression is done
+     */
+    HttpRequest.BodyPublisher gzipPublisher(LongConsumer savedBytes) throws IOException {
+        if (file != null) {
+            return HttpRequest.BodyPublishers.ofInputStream(() -> {
+                try {
+                    InputStream source = Files.newInputStream(file);
+                    return new N8nStreams.GzipCompressingInputStream(
+                        wrapAsJson ? new N8nStreams.JsonEnvelopeInputStream(source) : source, savedBytes);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+        if (stream != null) {
+            InputStream source = new N8nStreams.GzipCompressingInputStream(wrapAsJson
+                ? new N8nStreams.JsonEnvelopeInputStream(stream)
+                : stream, savedBytes);
+            return HttpRequest.BodyPublishers.ofInputStream(() -> source);
+        }
+        byte[] bytes = (text != null ? text : "{}").getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(Math.max(64, bytes.length / 4));
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed, 8192)) {
+            gzip.write(bytes);
+        }
+        savedBytes.accept(bytes.length - compressed.size());
+        return HttpRequest.BodyPublishers.ofByteArray(compressed.toByteArray());
+    }
+    
+    /**
+     * @return The body text, or null for file and stream bodies
+     */
+    String getText() {
+        return text;
+    }
+    
+    /**
+     * @return True if the body is read from a file or stream instead of memory
+     */
+    boolean isStreamed() {
+        return file != null || stream != null;
+    }
+    
+    /**
+     * @return True if the body can be sent more than once
+     */
+    boolean isReplayable() {
+        return stream == null;
+    }
+    
+    /**
+     * Short description of the body size and source for logging
+     */
+    String describe() {
+        if (file != null) {
+            String size;
+            try {
+                size = Files.size(file) + " bytes";
+            } catch (IOException e) {
+                size = "unknown size";
+            }
+            return "file " + file + " (" + size + (wrapAsJson ? ", JSON-wrapped" : "") + ")";
+        }
+        if (stream != null) {
+            return "input stream" + (wrapAsJson ? " (JSON-wrapped)" : "");
+        }
+        return (text != null ? text.length() : 0) + " characters";
+    }
+}
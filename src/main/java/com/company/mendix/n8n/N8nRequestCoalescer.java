@@ -0,0 +1,131 @@
+package com.company.mendix.n8n;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * Single-flight coalescing of identical concurrent webhook calls
+ * 
+ * When coalescing is enabled for an endpoint and a call is made while an identical
+ * call (same webhook URL including its query string, API key, session ID, content
+ * type and body) is still in flight, the new call does not go to n8n but waits for
+ * the first one and gets the same result or the same error. A burst of identical
+ * calls therefore turns into a single n8n execution. Calls are only merged while
+ * they overlap; nothing is remembered once the first call completes (see
+ * N8nResponseCache for that). Calls with extra headers (e.g. job submissions) are
+ * never merged.
+ * 
+ * Coalescing is off by default, because merging is only correct for workflows
+ * without side effects, where one execution can stand in for several.
+ */
+public final class N8nRequestCoalescer {
+    
+    private static final Set<String> ENDPOINTS = ConcurrentHashMap.newKeySet();
+    private static final Map<String, CompletableFuture<String>> IN_FLIGHT = new ConcurrentHashMap<>();
+    
+    private N8nRequestCoalescer() {
+    }
+    
+    /**
+     * Enable or disable coalescing for an endpoint
+     * 
+     * @param webhookEndpoint The webhook URL
+     * @param enabled True to merge identical concurrent calls to the endpoint
+     */
+    public static void setEnabled(String webhookEndpoint, boolean enabled) {
+        String endpoint = N8nMetrics.endpointKey(webhookEndpoint);
+        if (enabled) {
+            ENDPOINTS.add(endpoint);
+        } else {
+            ENDPOINTS.remove(endpoint);
+        }
+    }
+    
+    /**
+     * @param webhookEndpoint The webhook URL
+     * @return True if identical concurrent calls to the endpoint are merged
+     */
+    public static boolean isEnabled(String webhookEndpoint) {
+        return ENDPOINTS.contains(N8nMetrics.endpointKey(webhookEndpoint));
+    }
+    
+    /**
+     * @return The number of distinct calls currently in flight through the coalescer
+     */
+    public static int getInFlightCount() {
+        return IN_FLIGHT.size();
+    }
+    
+    /**
+     * Compute the coalescing key of a call
+     * 
+     * @return The key, or null if coalescing is not enabled for the endpoint
+     */
+    static String keyFor(String webhookEndpoint, String apiKey, String contentType, 
+                         String body, String sessionId) {
+        String endpoint = N8nMetrics.endpointKey(webhookEndpoint);
+        if (!ENDPOINTS.contains(endpoint)) {
+            return null;
+        }
+        // The full URL: calls that differ only in their query string are different calls
+        return N8nRequestHash.of(endpoint, webhookEndpoint.trim(), apiKey, sessionId, contentType, 
+                                 body != null ? N8nJsonScanner.stripWhitespace(body) : null);
+    }
+    
+    /**
+     * Run a call on the calling thread, or wait for an identical call already in flight
+     */
+    static String execute(String webhookEndpoint, String key, Callable<String> call) throws Exception {
+        CompletableFuture<String> flight = new CompletableFuture<>();
+        CompletableFuture<String> existing = IN_FLIGHT.putIfAbsent(key, flight);
+        if (existing != null) {
+            N8nMetrics.forEndpoint(webhookEndpoint).requestCoalesced();
+            try {
+                return existing.get();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                throw cause instanceof Exception ? (Exception) cause : new Exception(cause);
+            }
+        }
+        try {
+            String result = call.call();
+            IN_FLIGHT.remove(key, flight);
+            flight.complete(result);
+            return result;
+        } catch (Exception e) {
+            IN_FLIGHT.remove(key, flight);
+            flight.completeExceptionally(e);
+            throw e;
+        }
+    }
+    
+    /**
+     * Start an asynchronous call, or join an identical call already in flight
+     * 
+     * @return A future of the result; every caller gets its own copy, so cancelling
+     *         or completing it does not affect the other callers
+     */
+    static CompletableFuture<String> executeAsync(String webhookEndpoint, String key, 
+                                                  Supplier<CompletableFuture<String>> call) {
+        CompletableFuture<String> flight = new CompletableFuture<>();
+        CompletableFuture<String> existing = IN_FLIGHT.putIfAbsent(key, flight);
+        if (existing != null) {
+            N8nMetrics.forEndpoint(webhookEndpoint).requestCoalesced();
+            return existing.copy();
+        }
+        call.get().whenComplete((result, error) -> {
+            IN_FLIGHT.remove(key, flight);
+            if (error != null) {
+                flight.completeExceptionally(error);
+            } else {
+                flight.complete(result);
+            }
+        });
+        return flight.copy();
+    }
+}
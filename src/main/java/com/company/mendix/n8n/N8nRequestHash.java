@@ -0,0 +1,45 @@
+package com.company.mendix.n8n;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Identity of a webhook request for caching and coalescing
+ * 
+ * Hashes the parts of a request (API key, content type, body, ...) with SHA-256,
+ * so secrets and payloads are never kept as map keys. JSON bodies should be
+ * normalized with N8nJsonScanner.stripWhitespace first.
+ */
+final class N8nRequestHash {
+    
+    private N8nRequestHash() {
+    }
+    
+    /**
+     * @param endpoint The normalized endpoint (N8nMetrics.endpointKey), kept readable as prefix
+     * @param parts The request parts; null parts are allowed
+     * @return endpoint + "#" + hex SHA-256 of the parts
+     */
+    static String of(String endpoint, String... parts) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+        for (String part : parts) {
+            if (part != null) {
+                digest.update(part.getBytes(StandardCharsets.UTF_8));
+            }
+            // Separator, so ("ab", "c") and ("a", "bc") hash differently
+            digest.update((byte) 0);
+        }
+        StringBuilder key = new StringBuilder(endpoint.length() + 65).append(endpoint).append('#');
+        for (byte b : digest.digest()) {
+            key.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return key.toString();
+    }
+}
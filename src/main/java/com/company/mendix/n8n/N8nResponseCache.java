@@ -0,0 +1,231 @@
+package com.company.mendix.n8n;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Opt-in cache of successful webhook responses
+ * 
+ * Caching is enabled per endpoint with an N8nCachePolicy. A cache hit returns the
+ * processed result of an earlier identical call without contacting n8n. Calls are
+ * identical when they go to the same endpoint with the same API key, content type
+ * and request body (JSON bodies are compared ignoring formatting whitespace), and
+ * with the same session ID if the policy is per session. Keys are SHA-256 hashes,
+ * so neither request bodies nor API keys are kept in the cache.
+ * 
+ * The cache is bounded by an entry count and an approximate byte budget; the least
+ * recently used entries are evicted first. Within the stale-while-revalidate window
+ * after expiry an entry is still returned while one background call refreshes it.
+ * 
+ * Only string bodies are cached; calls that stream their request or response
+ * bypass the cache. Hits and misses are recorded in the endpoint metrics.
+ */
+public final class N8nResponseCache {
+    
+    private static final int DEFAULT_MAX_ENTRIES = 10_000;
+    private static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+    
+    // Approximate per-entry overhead of the map node, entry object and key string
+    private static final int ENTRY_OVERHEAD_BYTES = 200;
+    
+    private static final Map<String, N8nCachePolicy> POLICIES = new ConcurrentHashMap<>();
+    private static final LinkedHashMap<String, Entry> ENTRIES = new LinkedHashMap<>(256, 0.75f, true);
+    
+    private static int maxEntries = DEFAULT_MAX_ENTRIES;
+    private static long maxBytes = DEFAULT_MAX_BYTES;
+    private static long bytes;
+    
+    private N8nResponseCache() {
+    }
+    
+    /**
+     * Enable, change or disable caching for an endpoint
+     * 
+     * @param webhookEndpoint The webhook URL
+     * @param policy The caching policy, or null to disable caching (cached responses are dropped)
+     */
+    public static void setForEndpoint(String webhookEndpoint, N8nCachePolicy policy) {
+        String endpoint = N8nMetrics.endpointKey(webhookEndpoint);
+        if (policy != null) {
+            POLICIES.put(endpoint, policy);
+            return;
+        }
+        POLICIES.remove(endpoint);
+        synchronized (ENTRIES) {
+            Iterator<Entry> it = ENTRIES.values().iterator();
+            while (it.hasNext()) {
+                Entry entry = it.next();
+                if (entry.endpoint.equals(endpoint)) {
+                    bytes -= entry.size;
+                    it.remove();
+                }
+            }
+        }
+    }
+    
+    /**
+     * Bound the cache size
+     * 
+     * @param entries Maximum number of cached responses (default: 10000)
+     * @param byteBudget Approximate maximum memory used by cached responses (default: 64 MB)
+     */
+    public static void setMaxSize(int entries, long byteBudget) {
+        if (entries < 1 || byteBudget < 1) {
+            throw new IllegalArgumentException("Cache size bounds must be positive");
+        }
+        synchronized (ENTRIES) {
+            maxEntries = entries;
+            maxBytes = byteBudget;
+            evict();
+        }
+    }
+    
+    /**
+     * Remove all cached responses
+     */
+    public static void clear() {
+        synchronized (ENTRIES) {
+            ENTRIES.clear();
+            bytes = 0;
+        }
+    }
+    
+    /**
+     * @return The number of cached responses
+     */
+    public static int size() {
+        synchronized (ENTRIES) {
+            return ENTRIES.size();
+        }
+    }
+    
+    /**
+     * @return The approximate memory used by cached responses, in bytes
+     */
+    public static long getBytes() {
+        synchronized (ENTRIES) {
+            return bytes;
+        }
+    }
+    
+    /**
+     * Compute the cache key of a call
+     * 
+     * @return The key, or null if caching is not enabled for the endpoint
+     */
+    static String keyFor(String webhookEndpoint, String apiKey, String contentType, 
+                         String body, String sessionId) {
+        String endpoint = N8nMetrics.endpointKey(webhookEndpoint);
+        N8nCachePolicy policy = POLICIES.get(endpoint);
+        if (policy == null) {
+            return null;
+        }
+        String normalizedBody = body != null ? N8nJsonScanner.stripWhitespace(body) : null;
+        // The endpoint key drops the query string, but ?id=1 and ?id=2 are different lookups
+        String url = webhookEndpoint.trim();
+        return policy.isPerSession() 
+            ? N8nRequestHash.of(endpoint, url, apiKey, contentType, normalizedBody, sessionId) 
+            : N8nRequestHash.of(endpoint, url, apiKey, contentType, normalizedBody);
+    }
+    
+    /**
+     * Look up a cached response
+     * 
+     * @param key The key from keyFor(...)
+     * @param revalidate Started (once) when a stale response is returned, to refresh it
+     * @return The cached result, or null on a miss
+     */
+    static String lookup(String webhookEndpoint, String key, Runnable revalidate) {
+        N8nEndpointMetrics metrics = N8nMetrics.forEndpoint(webhookEndpoint);
+        long now = System.nanoTime();
+        Entry entry;
+        boolean startRevalidation = false;
+        synchronized (ENTRIES) {
+            entry = ENTRIES.get(key);
+            if (entry != null && now - entry.staleUntilNanos >= 0) {
+                ENTRIES.remove(key);
+                bytes -= entry.size;
+                entry = null;
+            }
+            if (entry != null && now - entry.expiresNanos >= 0 && !entry.revalidating) {
+                entry.revalidating = true;
+                startRevalidation = true;
+            }
+        }
+        if (entry == null) {
+            metrics.cacheMiss();
+            return null;
+        }
+        metrics.cacheHit();
+        if (startRevalidation) {
+            N8nLog.debug(() -> "Serving stale cached n8n response and revalidating for " + N8nMetrics.endpointKey(webhookEndpoint));
+            revalidate.run();
+        }
+        return entry.value;
+    }
+    
+    /**
+     * Cache the result of a successful call
+     */
+    static void store(String webhookEndpoint, String key, String value) {
+        String endpoint = N8nMetrics.endpointKey(webhookEndpoint);
+        N8nCachePolicy policy = POLICIES.get(endpoint);
+        if (policy == null || value == null) {
+            return;
+        }
+        long now = System.nanoTime();
+        long expires = now + policy.getTimeToLive().toNanos();
+        Entry entry = new Entry(endpoint, value, expires, expires + policy.getStaleWhileRevalidate().toNanos(), 
+                                ENTRY_OVERHEAD_BYTES + 2L * value.length());
+        synchronized (ENTRIES) {
+            if (entry.size > maxBytes) {
+                return;
+            }
+            Entry previous = ENTRIES.put(key, entry);
+            if (previous != null) {
+                bytes -= previous.size;
+            }
+            bytes += entry.size;
+            evict();
+        }
+    }
+    
+    /**
+     * Allow a new revalidation after a failed one
+     */
+    static void revalidationFailed(String key) {
+        synchronized (ENTRIES) {
+            Entry entry = ENTRIES.get(key);
+            if (entry != null) {
+                entry.revalidating = false;
+            }
+        }
+    }
+    
+    private static void evict() {
+        Iterator<Entry> it = ENTRIES.values().iterator();
+        while ((ENTRIES.size() > maxEntries || bytes > maxBytes) && it.hasNext()) {
+            bytes -= it.next().size;
+            it.remove();
+        }
+    }
+    
+    private static final class Entry {
+        final String endpoint;
+        final String value;
+        final long expiresNanos;
+        final long staleUntilNanos;
+        final long size;
+        boolean revalidating;
+        
+        Entry(String endpoint, String value, long expiresNanos, long staleUntilNanos, long size) {
+            this.endpoint = endpoint;
+            this.value = value;
+            this.expiresNanos = expiresNanos;
+            this.staleUntilNanos = staleUntilNanos;
+            this.size = size;
+        }
+    }
+}
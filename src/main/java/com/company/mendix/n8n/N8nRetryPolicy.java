@@ -0,0 +1,246 @@
+package com.company.mendix.n8n;
+
+import java.io.IOException;
+import java.net.http.HttpHeaders;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Retry policy for transient webhook failures
+ * 
+ * Failed calls are retried with exponential backoff and full jitter (a random
+ * delay between 0 and min(maxBackoff, initialBackoff * 2^(attempt - 1))), so
+ * many Mendix instances retrying at once spread out instead of hitting a
+ * restarting n8n worker in lockstep. A Retry-After header on the response takes
+ * precedence over the computed delay.
+ * 
+ * Retried failures:
+ * - HTTP 408, 429, 502, 503 and 504 (configurable)
+ * - I/O errors such as refused connections, resets and request timeouts
+ * 
+ * No retry is attempted once maxAttempts is reached or when the next attempt
+ * would start after the retry budget (measured from the first attempt) runs out.
+ * Request bodies read from an input stream are never retried, because the
+ * stream cannot be replayed.
+ * 
+ * Policies are immutable. The default policy applies to all endpoints unless a
+ * policy is registered for a specific endpoint:
+ * 
+ *   N8nRetryPolicy.setDefault(new N8nRetryPolicy(5, Duration.ofMillis(200),
+ *       Duration.ofSeconds(5), Duration.ofSeconds(30)));
+ *   N8nRetryPolicy.setForEndpoint("https://n8n.example.com/webhook/report", N8nRetryPolicy.NONE);
+ */
+public final class N8nRetryPolicy {
+    
+    /**
+     * Status codes that are retried unless configured otherwise
+     */
+    public static final Set<Integer> DEFAULT_RETRYABLE_STATUS_CODES = 
+        Collections.unmodifiableSet(new HashSet<>(Arrays.asList(408, 429, 502, 503, 504)));
+    
+    /**
+     * Policy that never retries
+     */
+    public static final N8nRetryPolicy NONE = 
+        new N8nRetryPolicy(1, Duration.ZERO, Duration.ZERO, Duration.ZERO);
+    
+    /**
+     * Default policy: 3 attempts, backoff from 500 ms up to 10 seconds, 60 seconds budget
+     */
+    public static final N8nRetryPolicy DEFAULT = 
+        new N8nRetryPolicy(3, Duration.ofMillis(500), Duration.ofSeconds(10), Duration.ofSeconds(60));
+    
+    private static volatile N8nRetryPolicy defaultPolicy = DEFAULT;
+    private static final Map<String, N8nRetryPolicy> ENDPOINT_POLICIES = new ConcurrentHashMap<>();
+    
+    private final int maxAttempts;
+    private final Duration initialBackoff;
+    private final Duration maxBackoff;
+    private final Duration retryBudget;
+    private final Set<Integer> retryableStatusCodes;
+    
+    /**
+     * Create a retry policy for the default retryable status codes
+     * 
+     * @param maxAttempts Maximum number of attempts including the first (1 disables retries)
+     * @param initialBackoff Upper bound of the delay before the first retry
+     * @param maxBackoff Upper bound of the delay before any retry
+     * @param retryBudget Maximum time from the first attempt during which retries may start
+     */
+    public N8nRetryPolicy(int maxAttempts, Duration initialBackoff, Duration maxBackoff, 
+                          Duration retryBudget) {
+        this(maxAttempts, initialBackoff, maxBackoff, retryBudget, DEFAULT_RETRYABLE_STATUS_CODES);
+    }
+    
+    /**
+     * Create a retry policy
+     * 
+     * @param maxAttempts Maximum number of attempts including the first (1 disables retries)
+     * @param initialBackoff Upper bound of the delay before the first retry
+     * @param maxBackoff Upper bound of the delay before any retry
+     * @param retryBudget Maximum time from the first attempt during which retries may start
+     * @param retryableStatusCodes HTTP status codes that are retried
+     */
+    public N8nRetryPolicy(int maxAttempts, Duration initialBackoff, Duration maxBackoff, 
+                          Duration retryBudget, Set<Integer> retryableStatusCodes) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("Maximum attempts must be at least 1");
+        }
+        if (initialBackoff == null || initialBackoff.isNegative() 
+                || maxBackoff == null || maxBackoff.isNegative() 
+                || retryBudget == null || retryBudget.isNegative()) {
+            throw new IllegalArgumentException("Backoff and retry budget must be non-negative durations");
+        }
+        this.maxAttempts = maxAttempts;
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+        this.retryBudget = retryBudget;
+        this.retryableStatusCodes = Collections.unmodifiableSet(new HashSet<>(retryableStatusCodes));
+    }
+    
+    /**
+     * Set the policy used for endpoints without their own policy
+     * 
+     * @param policy The policy, or null to restore DEFAULT
+     */
+    public static void setDefault(N8nRetryPolicy policy) {
+        defaultPolicy = policy != null ? policy : DEFAULT;
+    }
+    
+    /**
+     * @return The policy used for endpoints without their own policy
+     */
+    public static N8nRetryPolicy getDefault() {
+        return defaultPolicy;
+    }
+    
+    /**
+     * Set the policy of one endpoint (scheme, host, port and path of the webhook URL)
+     * 
+     * @param webhookEndpoint The webhook URL
+     * @param policy The policy, or null to use the default policy again
+     */
+    public static void setForEndpoint(String webhookEndpoint, N8nRetryPolicy policy) {
+        String key = N8nMetrics.endpointKey(webhookEndpoint);
+        if (policy == null) {
+            ENDPOINT_POLICIES.remove(key);
+        } else {
+            ENDPOINT_POLICIES.put(key, policy);
+        }
+    }
+    
+    /**
+     * @param webhookEndpoint The webhook URL
+     * @return The policy applied to calls to the endpoint
+     */
+    public static N8nRetryPolicy forEndpoint(String webhookEndpoint) {
+        N8nRetryPolicy policy = ENDPOINT_POLICIES.get(N8nMetrics.endpointKey(webhookEndpoint));
+        return policy != null ? policy : defaultPolicy;
+    }
+    
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+    
+    public Duration getInitialBackoff() {
+        return initialBackoff;
+    }
+    
+    public Duration getMaxBackoff() {
+        return maxBackoff;
+    }
+    
+    public Duration getRetryBudget() {
+        return retryBudget;
+    }
+    
+    public Set<Integer> getRetryableStatusCodes() {
+        return retryableStatusCodes;
+    }
+    
+    /**
+     * @param failure The failure of an attempt
+     * @return True if the failure is transient and worth retrying
+     */
+    public boolean isRetryable(Exception failure) {
+        if (failure instanceof N8nHttpException) {
+            return retryableStatusCodes.contains(((N8nHttpException) failure).getStatusCode());
+        }
+        return failure instanceof IOException;
+    }
+    
+    /**
+     * Decide whether and when to retry a failed attempt
+     * 
+     * @param attempt The number of the attempt that failed, starting at 1
+     * @param failure The failure of the attempt
+     * @param firstAttemptNanos System.nanoTime() when the first attempt started
+     * @return The delay in milliseconds before the next attempt, or -1 to give up
+     */
+    long retryDelayMillis(int attempt, Exception failure, long firstAttemptNanos) {
+        if (attempt >= maxAttempts || !isRetryable(failure)) {
+            return -1;
+        }
+        long delay;
+        Duration retryAfter = failure instanceof N8nHttpException 
+            ? ((N8nHttpException) failure).getRetryAfter() : null;
+        if (retryAfter != null) {
+            delay = retryAfter.toMillis();
+        } else {
+            // Full jitter: uniform in [0, min(maxBackoff, initialBackoff * 2^(attempt - 1))]
+            long ceiling = initialBackoff.toMillis() << Math.min(attempt - 1, 30);
+            if (ceiling < 0 || ceiling > maxBackoff.toMillis()) {
+                ceiling = maxBackoff.toMillis();
+            }
+            delay = ceiling > 0 ? ThreadLocalRandom.current().nextLong(ceiling + 1) : 0;
+        }
+        long elapsedMillis = (System.nanoTime() - firstAttemptNanos) / 1_000_000;
+        if (elapsedMillis + delay > retryBudget.toMillis()) {
+            return -1;
+        }
+        return delay;
+    }
+    
+    /**
+     * Parse a Retry-After header given in seconds or as an HTTP date
+     * 
+     * @return The requested delay, or null if the header is absent or invalid
+     */
+    static Duration retryAfter(HttpHeaders headers) {
+        Optional<String> value = headers.firstValue("Retry-After");
+        if (!value.isPresent()) {
+            return null;
+        }
+        String text = value.get().trim();
+        try {
+            return Duration.ofSeconds(Math.max(0, Long.parseLong(text)));
+        } catch (NumberFormatException e) {
+            // Not delta-seconds, try an HTTP date
+        }
+        try {
+            Instant at = ZonedDateTime.parse(text, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+            Duration delay = Duration.between(Instant.now(), at);
+            return delay.isNegative() ? Duration.ZERO : delay;
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+    
+    @Override
+    public String toString() {
+        return "N8nRetryPolicy[maxAttempts=" + maxAttempts + ", initialBackoff=" + initialBackoff 
+            + ", maxBackoff=" + maxBackoff + ", retryBudget=" + retryBudget 
+            + ", retryableStatusCodes=" + retryableStatusCodes + "]";
+    }
+}
@@ -0,0 +1,71 @@
+package com.company.mendix.n8n;
+
+/**
+ * One event of an incrementally streamed n8n response (see N8nAction.executeActionEvents)
+ * 
+ * For text/event-stream responses an event is one server-sent event; for any other
+ * response it is one JSON value, e.g. one line of NDJSON such as the chunks n8n's
+ * streaming response mode writes:
+ * 
+ *   {"type":"begin","metadata":{...}}
+ *   {"type":"item","content":"Hel","metadata":{...}}
+ *   {"type":"item","content":"lo","metadata":{...}}
+ *   {"type":"end","metadata":{...}}
+ */
+public final class N8nStreamEvent {
+    
+    /**
+     * Type of server-sent events without an event field and of JSON values without a "type" field
+     */
+    public static final String DEFAULT_TYPE = "message";
+    
+    private final String type;
+    private final String data;
+    private final String id;
+    
+    N8nStreamEvent(String type, String data, String id) {
+        this.type = type;
+        this.data = data;
+        this.id = id;
+    }
+    
+    /**
+     * @return The event field of a server-sent event, or the "type" field of a JSON
+     *         value (e.g. begin, item, end or error for n8n chunks); DEFAULT_TYPE if absent
+     */
+    public String getType() {
+        return type;
+    }
+    
+    /**
+     * @return The data of a server-sent event (multiple data lines joined by newlines),
+     *         or the JSON text of a JSON value
+     */
+    public String getData() {
+        return data;
+    }
+    
+    /**
+     * @return The last event ID of a server-sent event stream, or null
+     */
+    public String getId() {
+        return id;
+    }
+    
+    /**
+     * @return The incremental text of the event: the "content" field of JSON data, or
+     *         the data itself if it is not a JSON object; null if JSON data has no content
+     */
+    public String getContent() {
+        String trimmed = data.trim();
+        if (!trimmed.startsWith("{")) {
+            return data;
+        }
+        return N8nJsonScanner.findFirstStringValue(trimmed, "content");
+    }
+    
+    @Override
+    public String toString() {
+        return "N8nStreamEvent[type=" + type + ", id=" + id + ", data=" + N8nLog.truncate(data, 200) + "]";
+    }
+}
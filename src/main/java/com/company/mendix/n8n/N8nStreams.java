@@ -0,0 +1,334 @@
+package com.company.mendix.n8n;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.function.LongConsumer;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Stream helpers for webhook calls that must not hold whole payloads in memory
+ */
+final class N8nStreams {
+    
+    // Maximum number of bytes of an error response included in exception messages
+    static final int MAX_ERROR_BODY_BYTES = 8192;
+    
+    private N8nStreams() {
+    }
+    
+    /**
+     * Read at most maxBytes from the stream as UTF-8 text, for error messages
+     */
+    static String readPrefix(InputStream in, int maxBytes) throws IOException {
+        byte[] bytes = in.readNBytes(maxBytes);
+        String text = new String(bytes, StandardCharsets.UTF_8);
+        return in.read() >= 0 ? text + "... (truncated)" : text;
+    }
+    
+    /**
+     * Output stream that counts the bytes written through it and leaves the target open
+     */
+    static final class CountingOutputStream extends FilterOutputStream {
+        private long count;
+        
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+        
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+        
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+        
+        @Override
+        public void close() throws IOException {
+            // The caller owns the target stream
+            flush();
+        }
+        
+        long getCount() {
+            return count;
+        }
+    }
+    
+    /**
+     * Input stream that gzips its source on the fly
+     * 
+     * Compresses one 8 KB block at a time (gzip header, raw deflate data, CRC-32 and
+     * size trailer), so a large file or stream is compressed while it is sent instead
+     * of being buffered. When the source is exhausted the number of bytes saved by
+     * compression (source bytes minus gzip bytes) is reported to onFinished.
+     */
+    static final class GzipCompressingInputStream extends InputStream {
+        private static final byte[] HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+        private static final int TRAILER_LENGTH = 8;
+        
+        private final InputStream source;
+        private final LongConsumer onFinished;
+        private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        private final CRC32 crc = new CRC32();
+        private final byte[] input = new byte[8192];
+        private byte[] pending = HEADER;
+        private int pendingPos;
+        private long bytesIn;
+        private long bytesOut;
+        private boolean sourceDone;
+        private boolean trailerWritten;
+        
+        GzipCompressingInputStream(InputStream source, LongConsumer onFinished) {
+            this.source = source;
+            this.onFinished = onFinished;
+        }
+        
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+        }
+        
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (true) {
+                if (pending != null) {
+                    int count = Math.min(len, pending.length - pendingPos);
+                    System.arraycopy(pending, pendingPos, b, off, count);
+                    pendingPos += count;
+                    if (pendingPos == pending.length) {
+                        pending = null;
+                    }
+                    bytesOut += count;
+                    return count;
+                }
+                if (trailerWritten) {
+                    return -1;
+                }
+                if (deflater.finished()) {
+                    finish();
+                    continue;
+                }
+                if (deflater.needsInput() && !sourceDone) {
+                    int read = source.read(input);
+                    if (read < 0) {
+                        sourceDone = true;
+                        deflater.finish();
+                    } else if (read > 0) {
+                        crc.update(input, 0, read);
+                        bytesIn += read;
+                        deflater.setInput(input, 0, read);
+                    }
+                }
+                int count = deflater.deflate(b, off, len);
+                if (count > 0) {
+                    bytesOut += count;
+                    return count;
+                }
+            }
+        }
+        
+        @Override
+        public void close() throws IOException {
+            deflater.end();
+            source.close();
+        }
+        
+        private void finish() {
+            long checksum = crc.getValue();
+            pending = new byte[TRAILER_LENGTH];
+            for (int i = 0; i < 4; i++) {
+                pending[i] = (byte) (checksum >>> (8 * i));
+                pending[4 + i] = (byte) (bytesIn >>> (8 * i));
+            }
+            pendingPos = 0;
+            trailerWritten = true;
+            deflater.end();
+            onFinished.accept(bytesIn - bytesOut - TRAILER_LENGTH);
+        }
+    }
+    
+    /**
+     * Input stream that wraps plain text in the {"message": "..."} JSON envelope on the fly
+     * 
+     * Streaming counterpart of N8nAction.ensureJsonFormat: if the first non-whitespace
+     * byte is '{' or '[' the source is passed through unchanged, blank input becomes
+     * {"message": ""}, and anything else is escaped byte by byte inside the envelope.
+     * Escaping works on UTF-8 bytes directly because every byte that needs escaping is
+     * ASCII, while multi-byte sequences never contain ASCII bytes.
+     */
+    static final class JsonEnvelopeInputStream extends InputStream {
+        private static final byte[] PREFIX = "{\"message\": \"".getBytes(StandardCharsets.UTF_8);
+        private static final byte[] SUFFIX = "\"}".getBytes(StandardCharsets.UTF_8);
+        private static final byte[] EMPTY_ENVELOPE = "{\"message\": \"\"}".getBytes(StandardCharsets.UTF_8);
+        private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+        
+        private final InputStream source;
+        private final byte[] escape = new byte[6];
+        private byte[] pending = new byte[0];
+        private int pendingPos;
+        private int pendingEnd;
+        private boolean started;
+        private boolean passThrough;
+        private boolean sourceDone;
+        
+        JsonEnvelopeInputStream(InputStream source) {
+            this.source = source instanceof BufferedInputStream ? source : new BufferedInputStream(source);
+        }
+        
+        @Override
+        public int read() throws IOException {
+            while (true) {
+                if (pendingPos < pendingEnd) {
+                    return pending[pendingPos++] & 0xff;
+                }
+                if (!started) {
+                    start();
+                    continue;
+                }
+                if (sourceDone) {
+                    return -1;
+                }
+                int b = source.read();
+                if (passThrough) {
+                    return b;
+                }
+                if (b < 0) {
+                    sourceDone = true;
+                    setPending(SUFFIX, SUFFIX.length);
+                    continue;
+                }
+                int escapedLength = escape(b);
+                if (escapedLength == 0) {
+                    return b;
+                }
+                setPending(escape, escapedLength);
+            }
+        }
+        
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (started && passThrough && pendingPos >= pendingEnd) {
+                return source.read(b, off, len);
+            }
+            int count = 0;
+            while (count < len) {
+                int next = read();
+                if (next < 0) {
+                    break;
+                }
+                b[off + count++] = (byte) next;
+                if (passThrough && pendingPos >= pendingEnd) {
+                    break;
+                }
+            }
+            return count == 0 ? -1 : count;
+        }
+        
+        @Override
+        public void close() throws IOException {
+            source.close();
+        }
+        
+        /**
+         * Look at the leading bytes to decide between pass-through and wrapping
+         */
+        private void start() throws IOException {
+            started = true;
+            ByteArrayOutputStream leading = new ByteArrayOutputStream();
+            int b = source.read();
+            while (b == ' ' || b == '\t' || b == '\n' || b == '\r') {
+                leading.write(b);
+                b = source.read();
+            }
+            
+            if (b < 0) {
+                sourceDone = true;
+                setPending(EMPTY_ENVELOPE, EMPTY_ENVELOPE.length);
+                return;
+            }
+            if (b == '{' || b == '[') {
+                passThrough = true;
+                leading.write(b);
+                byte[] bytes = leading.toByteArray();
+                setPending(bytes, bytes.length);
+                return;
+            }
+            
+            ByteArrayOutputStream head = new ByteArrayOutputStream();
+            head.write(PREFIX);
+            for (byte ws : leading.toByteArray()) {
+                writeEscaped(head, ws);
+            }
+            writeEscaped(head, b);
+            byte[] bytes = head.toByteArray();
+            setPending(bytes, bytes.length);
+        }
+        
+        /**
+         * Write the JSON escape sequence for a byte into the escape buffer
+         * 
+         * @return The length of the escape sequence, or 0 if the byte needs no escaping
+         */
+        private int escape(int b) {
+            switch (b) {
+                case '"': return escapeChar('"');
+                case '\\': return escapeChar('\\');
+                case '\n': return escapeChar('n');
+                case '\r': return escapeChar('r');
+                case '\t': return escapeChar('t');
+                default:
+                    if (b >= 0x20 || b < 0) {
+                        return 0;
+                    }
+                    escape[0] = '\\';
+                    escape[1] = 'u';
+                    escape[2] = '0';
+                    escape[3] = '0';
+                    escape[4] = HEX[b >> 4];
+                    escape[5] = HEX[b & 0xf];
+                    return 6;
+            }
+        }
+        
+        private void writeEscaped(ByteArrayOutputStream out, int b) {
+            int escapedLength = escape(b);
+            if (escapedLength == 0) {
+                out.write(b);
+            } else {
+                out.write(escape, 0, escapedLength);
+            }
+        }
+        
+        private int escapeChar(char c) {
+            escape[0] = '\\';
+            escape[1] = (byte) c;
+            return 2;
+        }
+        
+        private void setPending(byte[] bytes, int length) {
+            if (pending.length < length) {
+                pending = new byte[Math.max(length, 16)];
+            }
+            System.arraycopy(bytes, 0, pending, 0, length);
+            pendingPos = 0;
+            pendingEnd = length;
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.company.mendix.n8n;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Restart and recovery of the outbox journal
+ * 
+ * Each test writes a journal, closes it and opens the same directory again, as the
+ * outbox does after a restart of the Mendix node.
+ */
+class N8nOutboxJournalTest {
+    
+    private static final int SEGMENT_BYTES = 4096;
+    private static final long MAX_BYTES = 64 * SEGMENT_BYTES;
+    
+    @TempDir
+    Path directory;
+    
+    @Test
+    void recoversAllRecordsAfterRestart() throws Exception {
+        N8nOutboxJournal journal = open();
+        appendAll(journal, "a", "b", "c");
+        journal.close();
+        
+        journal = open();
+        assertEquals(3, journal.getPendingCount());
+        assertEquals(Arrays.asList("a", "b", "c"), readAll(journal));
+        journal.close();
+    }
+    
+    @Test
+    void discardsTornTailOnRecovery() throws Exception {
+        N8nOutboxJournal journal = open();
+        appendAll(journal, "a", "b", "c");
+        journal.close();
+        
+        // A record whose payload was only partly written when the machine crashed
+        int end = 3 * (8 + 1);
+        try (FileChannel channel = FileChannel.open(segmentFile(1), StandardOpenOption.WRITE)) {
+            ByteBuffer torn = ByteBuffer.allocate(8 + 20);
+            torn.putInt(100).putInt(0x12345678).put("partly written".getBytes(StandardCharsets.UTF_8)).flip();
+            channel.write(torn, end);
+        }
+        
+        journal = open();
+        assertEquals(3, journal.getPendingCount());
+        assertEquals(Arrays.asList("a", "b", "c"), readAll(journal));
+        // Appends go where the torn record was
+        appendAll(journal, "d");
+        assertEquals(Arrays.asList("d"), readAll(journal));
+        journal.close();
+        
+        journal = open();
+        assertEquals(Arrays.asList("a", "b", "c", "d"), readAll(journal));
+        journal.close();
+    }
+    
+    @Test
+    void recoversRecordsAcrossSegmentRoll() throws Exception {
+        N8nOutboxJournal journal = open();
+        // Four records of 1008 bytes fill a segment of 4096 bytes
+        List<String> records = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            records.add(String.format("%03d", i) + "x".repeat(997));
+        }
+        appendAll(journal, records.toArray(new String[0]));
+        journal.close();
+        assertTrue(Files.exists(segmentFile(3)));
+        
+        journal = open();
+        assertEquals(10, journal.getPendingCount());
+        assertEquals(records, readAll(journal));
+        journal.close();
+    }
+    
+    @Test
+    void resumesAfterCheckpointOnRestart() throws Exception {
+        N8nOutboxJournal journal = open();
+        appendAll(journal, "a", "b", "c", "d", "e");
+        journal.next();
+        journal.next();
+        N8nOutboxJournal.Record third = journal.next();
+        journal.checkpoint(third, 3);
+        assertEquals(2, journal.getPendingCount());
+        // Read, but not checkpointed
+        journal.next();
+        journal.close();
+        
+        journal = open();
+        assertEquals(2, journal.getPendingCount());
+        assertEquals(Arrays.asList("d", "e"), readAll(journal));
+        journal.close();
+    }
+    
+    @Test
+    void deletesSegmentsBeforeCheckpoint() throws Exception {
+        N8nOutboxJournal journal = open();
+        for (int i = 0; i < 8; i++) {
+            appendAll(journal, Integer.toString(i) + "x".repeat(999));
+        }
+        N8nOutboxJournal.Record record = null;
+        for (int i = 0; i < 5; i++) {
+            record = journal.next();
+        }
+        // The fifth record is in the second segment
+        journal.checkpoint(record, 5);
+        assertFalse(Files.exists(segmentFile(1)));
+        journal.close();
+        
+        journal = open();
+        assertEquals(3, journal.getPendingCount());
+        List<String> rest = readAll(journal);
+        assertEquals(3, rest.size());
+        assertTrue(rest.get(0).startsWith("5"));
+        journal.close();
+    }
+    
+    @Test
+    void rejectsAppendsBeyondMaximumSize() throws Exception {
+        N8nOutboxJournal journal = N8nOutboxJournal.open(directory, SEGMENT_BYTES, 2 * SEGMENT_BYTES);
+        byte[] record = new byte[1000];
+        assertThrows(N8nRejectedException.class, () -> {
+            for (int i = 0; i < 10; i++) {
+                journal.append(record);
+            }
+        });
+        assertThrows(N8nRejectedException.class, () -> journal.append(new byte[SEGMENT_BYTES]));
+        journal.close();
+    }
+    
+    private N8nOutboxJournal open() throws Exception {
+        return N8nOutboxJournal.open(directory, SEGMENT_BYTES, MAX_BYTES);
+    }
+    
+    private Path segmentFile(long number) {
+        return directory.resolve(String.format("journal-%019d.seg", number));
+    }
+    
+    /**
+     * Append the records and wait until they are on disk
+     */
+    private static void appendAll(N8nOutboxJournal journal, String... records) throws Exception {
+        for (String record : records) {
+            journal.append(record.getBytes(StandardCharsets.UTF_8)).get();
+        }
+    }
+    
+    private static List<String> readAll(N8nOutboxJournal journal) {
+        List<String> records = new ArrayList<>();
+        N8nOutboxJournal.Record record;
+        while ((record = journal.next()) != null) {
+            records.add(new String(record.payload, StandardCharsets.UTF_8));
+        }
+        assertNull(journal.next());
+        return records;
+    }
+}
@@ -0,0 +1,170 @@
+package com.company.mendix.n8n;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Restart and recovery of the outbox against an in-process webhook
+ */
+class N8nOutboxTest {
+    
+    private static final int SEGMENT_BYTES = 64 * 1024;
+    private static final long MAX_BYTES = 1024 * 1024;
+    
+    @TempDir
+    Path directory;
+    
+    private HttpServer server;
+    // Status codes to answer per path, in order; 200 once used up
+    private final Map<String, Deque<Integer>> statuses = new ConcurrentHashMap<>();
+    // Retry-After seconds sent with the 503 answers per path
+    private final Map<String, Integer> retryAfterSeconds = new ConcurrentHashMap<>();
+    // x-outbox-id of each request per path
+    private final Map<String, List<String>> requests = new ConcurrentHashMap<>();
+    
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", this::handle);
+        server.start();
+        N8nOutbox.setRetryPolicy(new N8nRetryPolicy(5, Duration.ofMillis(10), Duration.ofMillis(10),
+                                                    Duration.ofMinutes(1)));
+    }
+    
+    @AfterEach
+    void stop() {
+        N8nOutbox.close();
+        N8nOutbox.setRetryPolicy(null);
+        for (String path : statuses.keySet()) {
+            N8nRetryPolicy.setForEndpoint(url(path), null);
+        }
+        server.stop(0);
+    }
+    
+    @Test
+    void keepsRetryBehindCheckpointWhenLaterRetryIsSettled() throws Exception {
+        respondWithRetryAfter("/late", 3);
+        respondWithRetryAfter("/early", 0);
+        N8nOutbox.open(directory, SEGMENT_BYTES, MAX_BYTES);
+        
+        // /late is first in the retry journal but due after /early
+        N8nOutbox.enqueue(null, url("/late"), "{}", "s").get();
+        await(() -> N8nOutbox.getRetryingCount() == 1);
+        N8nOutbox.enqueue(null, url("/early"), "{}", "s").get();
+        await(() -> requests("/early").size() == 2);
+        // The checkpoint cannot pass /late, but /early no longer counts as retrying
+        await(() -> N8nOutbox.getPendingCount() == 1);
+        assertEquals(1, N8nOutbox.getRetryingCount());
+        assertEquals(1, requests("/late").size());
+        
+        N8nOutbox.close();
+        N8nOutbox.open(directory, SEGMENT_BYTES, MAX_BYTES);
+        // /late keeps its due time across the restart and is delivered, once
+        await(() -> requests("/late").size() == 2);
+        await(() -> N8nOutbox.getPendingCount() == 0);
+        assertEquals(requests("/late").get(0), requests("/late").get(1));
+        assertEquals(2, requests("/late").size());
+        // /early was behind the checkpoint, so it is delivered again (at least once)
+        assertEquals(3, requests("/early").size());
+        assertEquals(0, N8nOutbox.getDeadLetterCount());
+    }
+    
+    @Test
+    void replaysDeadLettersAfterRestart() throws Exception {
+        respond("/hook", 400);
+        N8nOutbox.open(directory, SEGMENT_BYTES, MAX_BYTES);
+        N8nOutbox.enqueue(null, url("/hook"), "{}", "s").get();
+        await(() -> N8nOutbox.getDeadLetterCount() == 1);
+        assertEquals(0, N8nOutbox.getPendingCount());
+        assertTrue(Files.exists(directory.resolve("dead-letter.log")));
+        
+        N8nOutbox.close();
+        N8nOutbox.open(directory, SEGMENT_BYTES, MAX_BYTES);
+        assertEquals(1, N8nOutbox.getDeadLetterCount());
+        assertEquals(1, N8nOutbox.replayDeadLetters());
+        assertEquals(0, N8nOutbox.getDeadLetterCount());
+        assertFalse(Files.exists(directory.resolve("dead-letter.log")));
+        await(() -> requests("/hook").size() == 2);
+        await(() -> N8nOutbox.getPendingCount() == 0);
+        // The same call, so workflows can still deduplicate it
+        assertEquals(requests("/hook").get(0), requests("/hook").get(1));
+        assertEquals(0, N8nOutbox.replayDeadLetters());
+    }
+    
+    private void handle(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        exchange.getRequestBody().readAllBytes();
+        requests(path).add(exchange.getRequestHeaders().getFirst(N8nOutbox.CALL_ID_HEADER));
+        Deque<Integer> answers = statuses.get(path);
+        Integer status = answers != null ? answers.pollFirst() : null;
+        int code = status != null ? status : 200;
+        if (code == 503 && retryAfterSeconds.containsKey(path)) {
+            exchange.getResponseHeaders().set("Retry-After", Integer.toString(retryAfterSeconds.get(path)));
+        }
+        byte[] body = "{}".getBytes();
+        exchange.sendResponseHeaders(code, body.length);
+        exchange.getResponseBody().write(body);
+        exchange.close();
+    }
+    
+    /**
+     * Answer the next requests to a path with the status codes, and 200 afterwards
+     */
+    private void respond(String path, int... codes) {
+        Deque<Integer> answers = new ArrayDeque<>();
+        for (int code : codes) {
+            answers.add(code);
+        }
+        statuses.put(path, answers);
+        // Leave retries to the outbox
+        N8nRetryPolicy.setForEndpoint(url(path), new N8nRetryPolicy(1, Duration.ZERO, Duration.ZERO, Duration.ZERO));
+    }
+    
+    /**
+     * Answer the first request to a path with 503 and a Retry-After header, and 200 afterwards
+     */
+    private void respondWithRetryAfter(String path, int seconds) {
+        respond(path, 503);
+        retryAfterSeconds.put(path, seconds);
+    }
+    
+    private List<String> requests(String path) {
+        return requests.computeIfAbsent(path, key -> new CopyOnWriteArrayList<>());
+    }
+    
+    private String url(String path) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+    }
+    
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(20).toNanos();
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                fail("Condition not met within 20 seconds, " + N8nOutbox.getPendingCount() + " calls pending");
+            }
+            Thread.sleep(10);
+        }
+    }
+}